@@ -0,0 +1,60 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the standard JMH main does, except that unless told otherwise the results are
+ * written as JSON to jmh-result.json and the GC profiler is on, so allocation is measured too.
+ * @author Rick Brown
+ */
+public final class BenchmarkRunner
+{
+	public static final String RESULT_FILE = "jmh-result.json";
+
+	private BenchmarkRunner()
+	{
+	}
+
+	/**
+	 * @param args The usual JMH command line options, run with -h to see them.
+	 * @throws Exception If the options are wrong or a benchmark fails.
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		CommandLineOptions cmdLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdLine);
+		if(!cmdLine.getResultFormat().hasValue())
+		{
+			options.resultFormat(ResultFormatType.JSON);
+			if(!cmdLine.getResult().hasValue())
+			{
+				options.result(RESULT_FILE);
+			}
+		}
+		if(cmdLine.getProfilers().isEmpty())
+		{
+			options.addProfiler(GCProfiler.class);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,182 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how fast tracefiles are read: the whole of CoverageReport's parsing, TestCaseSourceFile.processLine
+ * and JGenHtmlUtils.extractLineValues. The records and bytes counters are reported per second, divide
+ * gc.alloc.rate.norm by the number of records in the tracefile for the allocation per record.
+ * @author Rick Brown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark
+{
+	@Param({"LINES", "BRANCHES", "FUNCTIONS", "TEST_NAMES"})
+	public TraceFileGenerator.Mix mix;
+
+	@Param({"100"})
+	public int sourceFiles;
+
+	private File dir;
+	private File traceFile;
+	private long records;
+	private long bytes;
+	private List<String> record;
+	private Config config;
+
+	@Setup(Level.Trial)
+	public void writeTraceFile() throws IOException, ParseException
+	{
+		dir = Files.createTempDirectory("jgenhtml-bench").toFile();
+		traceFile = new File(dir, mix.name().toLowerCase() + ".info");
+		TraceFileGenerator generator = new TraceFileGenerator(42).setMix(mix).setSourceFiles(sourceFiles);
+		generator.write(traceFile);
+		records = generator.getRecords();
+		bytes = traceFile.length();
+		record = readFirstRecord(traceFile);
+		config = new Config();
+		config.initializeUserPrefs(new String[]{"--quiet", "--summary-only", "-o", dir.getAbsolutePath(), traceFile.getAbsolutePath()});
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTraceFile() throws IOException
+	{
+		FileUtils.deleteDirectory(dir);
+	}
+
+	/**
+	 * @return The data lines of the first SF: record, which the line level benchmarks replay.
+	 */
+	private static List<String> readFirstRecord(final File traceFile) throws IOException
+	{
+		List<String> result = new ArrayList<>();
+		for(String line : FileUtils.readLines(traceFile, "UTF-8"))
+		{
+			if(line.startsWith("end_of_record"))
+			{
+				break;
+			}
+			else if(!line.startsWith("TN:") && !line.startsWith("SF:"))
+			{
+				result.add(line);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts what was read, JMH reports each counter per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput
+	{
+		public long records;
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			records = 0;
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * A fresh source file for each invocation of processLine, so the data does not just pile up.
+	 */
+	@State(Scope.Thread)
+	public static class SourceFile
+	{
+		TestCaseSourceFile sourceFile;
+
+		@Setup(Level.Invocation)
+		public void create() throws ParserConfigurationException
+		{
+			sourceFile = new TestCaseSourceFile("bench", "file.c");
+		}
+	}
+
+	/**
+	 * Reads the whole tracefile, as the command line does without writing the report.
+	 */
+	@Benchmark
+	public CoverageReport parseTraceFile(final Throughput throughput) throws IOException, ParserConfigurationException
+	{
+		CoverageReport result = new CoverageReport.Builder(config).build();
+		throughput.records += records;
+		throughput.bytes += bytes;
+		return result;
+	}
+
+	/**
+	 * Adds one record's data lines to a source file.
+	 */
+	@Benchmark
+	public TestCaseSourceFile processLine(final SourceFile state, final Throughput throughput)
+	{
+		TestCaseSourceFile result = state.sourceFile;
+		for(String line : record)
+		{
+			result.processLine("bench", line, false);
+		}
+		throughput.records += record.size();
+		return result;
+	}
+
+	/**
+	 * Splits one record's data lines into their values.
+	 */
+	@Benchmark
+	public void extractLineValues(final Blackhole blackhole, final Throughput throughput)
+	{
+		for(String line : record)
+		{
+			blackhole.consume(JGenHtmlUtils.extractLineValues(line));
+		}
+		throughput.records += record.size();
+	}
+}
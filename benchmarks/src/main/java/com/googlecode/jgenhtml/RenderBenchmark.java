@@ -0,0 +1,172 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the time to write a page, with the XSLT or stream engine and with or without gzip, for source files
+ * of different sizes covered by different numbers of tests. Pages are written to /dev/shm where there is one, so
+ * the disk is left out of it. Scores are per page, divide gc.alloc.rate.norm by PAGES for the allocation per page
+ * of the benchmarks which write every page.
+ * @author Rick Brown
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark
+{
+	/**
+	 * The number of source files, and so source pages, in the report.
+	 */
+	public static final int PAGES = 20;
+
+	@Param({"xslt", "stream"})
+	public String engine;
+
+	@Param({"false", "true"})
+	public boolean gzip;
+
+	@Param({"100", "2000"})
+	public int linesPerFile;
+
+	@Param({"1", "20"})
+	public int testNames;
+
+	private File dir;
+	private File outDir;
+	private Config config;
+	private List<TestCaseSourceFile> sourceFiles;
+	private Document pageDoc;
+	private File transformTarget;
+
+	@Setup(Level.Trial)
+	public void parseReport() throws IOException, ParseException, ParserConfigurationException
+	{
+		dir = Files.createTempDirectory("jgenhtml-bench").toFile();
+		File shm = new File("/dev/shm");
+		outDir = shm.isDirectory()? Files.createTempDirectory(shm.toPath(), "jgenhtml-bench").toFile() : new File(dir, "out");
+		File traceFile = new File(dir, "render.info");
+		new TraceFileGenerator(42).setSourceDir(new File(dir, "src")).setSourceFiles(PAGES).setLinesPerFile(linesPerFile)
+				.setTestNames(testNames).write(traceFile);
+		List<String> argv = new ArrayList<>();
+		argv.add("--quiet");
+		argv.add("--html-engine");
+		argv.add(engine);
+		if(gzip)
+		{
+			argv.add("--html-gzip");
+		}
+		argv.add("-o");
+		argv.add(outDir.getAbsolutePath());
+		argv.add(traceFile.getAbsolutePath());
+		config = new Config();
+		config.initializeUserPrefs(argv.toArray(new String[argv.size()]));
+		CoverageReport report = new CoverageReport.Builder(config).build();
+		report.generateReports();  // so that the directories and resources exist
+		sourceFiles = new ArrayList<>(report.getParsedFiles());
+		TestCaseSourceFile page = sourceFiles.get(0);
+		pageDoc = page.getDoc();
+		page.appendContent(pageDoc, pageDoc.getDocumentElement());
+		pageDoc.getDocumentElement().appendChild(config.toXml(pageDoc));
+		transformTarget = new File(outDir, "transformed.html");
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteReport() throws IOException
+	{
+		FileUtils.deleteDirectory(dir);
+		FileUtils.deleteDirectory(outDir);
+	}
+
+	/**
+	 * Writes every source page, with its function page, as the report does.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PAGES)
+	public void writeSourcePages() throws TransformerException, IOException
+	{
+		for(TestCaseSourceFile sourceFile : sourceFiles)
+		{
+			sourceFile.writeToFileSystem(config);
+		}
+	}
+
+	/**
+	 * Transforms the XML of one source page to HTML, without building the XML.
+	 */
+	@Benchmark
+	public File transformToFile() throws TransformerException, IOException
+	{
+		JGenHtmlUtils.transformToFile(transformTarget, false, pageDoc, config);
+		return transformTarget;
+	}
+
+	/**
+	 * Adds every source page to a directory index page.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PAGES)
+	public TestCaseIndexPage addSourceFile() throws ParserConfigurationException
+	{
+		TestCaseSourceFile first = sourceFiles.get(0);  // they are all in the same directory
+		TestCaseIndexPage result = new TestCaseIndexPage(first.getTestName(), first.getPath());
+		result.setPrefix(first.getPrefix());
+		for(TestCaseSourceFile sourceFile : sourceFiles)
+		{
+			result.addSourceFile(sourceFile);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds every source page to a directory index page and writes it.
+	 */
+	@Benchmark
+	public TestCaseIndexPage writeIndexPage() throws ParserConfigurationException, TransformerException, IOException
+	{
+		TestCaseIndexPage result = addSourceFile();
+		result.writeToFileSystem(config);
+		return result;
+	}
+}
@@ -24,14 +24,39 @@ import org.w3c.dom.Element;
  */
 public class Branch extends SourceCode
 {
-	private String block = null;
-	private String number = null;
+	private int block = 0;
+	private int number = 0;
 
 	public Branch()
 	{
 		super(true);
 	}
 
+	/**
+	 * Create a new branch.
+	 * @param block The block number.
+	 * @param number The branch number.
+	 */
+	public Branch(final int block, final int number)
+	{
+		this();
+		this.block = block;
+		this.number = number;
+	}
+
+	/**
+	 * Create a new branch in a report.
+	 * @param block The block number.
+	 * @param number The branch number.
+	 * @param testNames The test names of the report.
+	 */
+	Branch(final int block, final int number, final TestNames testNames)
+	{
+		super(true, testNames);
+		this.block = block;
+		this.number = number;
+	}
+
 	@Override
 	public Element toXml(Document document)
 	{
@@ -46,23 +71,50 @@ public class Branch extends SourceCode
 		return branchElement;
 	}
 
+	@Override
+	void digest(final PageDigest digest)
+	{
+		super.digest(digest);
+		digest.add(block).add(number);
+	}
+
 	public String getBlock()
 	{
-		return block;
+		return String.valueOf(block);
 	}
 
-	public void setBlock(final String block)
+	/**
+	 * Set the block number, before the branch is added to a line (which indexes its branches by number).
+	 * @param block The block number.
+	 * @throws NumberFormatException If the block is not a number.
+	 */
+	void setBlock(final String block)
 	{
-		this.block = block;
+		this.block = Integer.parseInt(block);
 	}
 
 	public String getNumber()
 	{
-		return number;
+		return String.valueOf(number);
 	}
 
-	public void setNumber(final String number)
+	/**
+	 * Set the branch number, before the branch is added to a line (which indexes its branches by number).
+	 * @param number The branch number.
+	 * @throws NumberFormatException If the number is not a number.
+	 */
+	void setNumber(final String number)
 	{
-		this.number = number;
+		this.number = Integer.parseInt(number);
+	}
+
+	public int getBlockNumber()
+	{
+		return block;
+	}
+
+	public int getBranchNumber()
+	{
+		return number;
 	}
 }
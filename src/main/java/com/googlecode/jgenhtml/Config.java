@@ -21,6 +21,7 @@ import java.io.StringReader;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -63,11 +64,28 @@ public final class Config
 	private boolean help = false;
 	private boolean version = false;
 	private boolean gzip = false;
+	private int gzipLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean gzipStatic = false;
+	private boolean incremental = false;
+	private File parseCacheDir = null;
+	private int parseCacheSize = 256;  // megabytes
+	private boolean summaryOnly = false;
+	private boolean summaryJson = false;
+	private CoverageThreshold threshold = null;
+	private CoverageThreshold dirThreshold = null;
+	private boolean failFast = false;
+	private boolean metrics = false;
+	private boolean daemon = false;
+	private boolean daemonStop = false;
+	private File workingDir = null;
 	private boolean quiet = false;
+	private boolean verbose = false;
 	private boolean showDetails = false;
+	private int threads = 1;
 	private String[] traceFiles;
 	private final Options options;
 	private boolean htmlOnly;
+	private HtmlEngine htmlEngine = HtmlEngine.XSLT;
 
 	/**
 	 * Command line argument constants.
@@ -103,7 +121,22 @@ public final class Config
 		SORT("sort"),  // what the heck point is this?
 		NOSORT("no-sort"),
 		CONFFILE("config-file"),
-		DEMANGLE("demangle-cpp");
+		DEMANGLE("demangle-cpp"),
+		THREADS("threads"),
+		HTML_ENGINE("html-engine"),
+		GZIP_LEVEL("html-gzip-level"),
+		GZIP_STATIC("html-gzip-static"),
+		INCREMENTAL("incremental"),
+		PARSE_CACHE("parse-cache"),
+		PARSE_CACHE_SIZE("parse-cache-size"),
+		SUMMARY_ONLY("summary-only"),
+		SUMMARY_JSON("summary-json"),
+		FAIL_UNDER("fail-under"),
+		FAIL_UNDER_DIR("fail-under-dir"),
+		FAIL_FAST("fail-fast"),
+		METRICS("metrics"),
+		DAEMON("daemon"),
+		DAEMON_STOP("daemon-stop");
 
 		CmdLineArg(final String text) {
 			this.text = text;
@@ -135,7 +168,20 @@ public final class Config
 		GZIP("genhtml_html_gzip"),
 		HTML_EXT("genhtml_html_extension"),
 		HTMLONLY("jgenhtml_html_only"),
-		VERBOSE("jgenhtml_verbose");
+		VERBOSE("jgenhtml_verbose"),
+		THREADS("jgenhtml_threads"),
+		HTML_ENGINE("jgenhtml_html_engine"),
+		GZIP_LEVEL("jgenhtml_html_gzip_level"),
+		GZIP_STATIC("jgenhtml_html_gzip_static"),
+		INCREMENTAL("jgenhtml_incremental"),
+		PARSE_CACHE("jgenhtml_parse_cache"),
+		PARSE_CACHE_SIZE("jgenhtml_parse_cache_size"),
+		SUMMARY_ONLY("jgenhtml_summary_only"),
+		SUMMARY_JSON("jgenhtml_summary_json"),
+		FAIL_UNDER("jgenhtml_fail_under"),
+		FAIL_UNDER_DIR("jgenhtml_fail_under_dir"),
+		FAIL_FAST("jgenhtml_fail_fast"),
+		METRICS("jgenhtml_metrics");
 
 		private ConfFileArg(final String text) {
 			this.text = text;
@@ -149,6 +195,25 @@ public final class Config
 		}
 	}
 
+	/**
+	 * The ways source code pages can be turned into HTML.
+	 */
+	public enum HtmlEngine {
+		XSLT("xslt"),  // build a DOM and transform it with the stylesheet
+		STREAM("stream");  // write the HTML directly, see SourcePageRenderer
+
+		HtmlEngine(final String text) {
+			this.text = text;
+		}
+
+		private final String text;
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+
 	/**
 	 * Creates a config object in a default, uninitialized state.
 	 * Can be used for show help or parsing a command line.
@@ -229,6 +294,21 @@ public final class Config
 		addOption(options, CmdLineArg.NOFUNCOV, false, "Disable function coverage display", false);
 		addOption(options, CmdLineArg.BRANCOV, false, "Enable branch coverage display", false);
 		addOption(options, CmdLineArg.NOBRANCOV, false, "Disable branch coverage display", false);
+		addOption(options, CmdLineArg.THREADS, true, "Read tracefiles and write pages using num threads (0 for one per processor)", false);
+		addOption(options, CmdLineArg.HTML_ENGINE, true, "Write source pages with engine xslt (default) or stream", false);
+		addOption(options, CmdLineArg.GZIP_LEVEL, true, "Compress gzipped output at level (0 fastest to 9 smallest)", false);
+		addOption(options, CmdLineArg.GZIP_STATIC, false, "Write a gzipped .gz copy next to every page and resource", false);
+		addOption(options, CmdLineArg.INCREMENTAL, false, "Only rewrite pages which have changed since the last run", false);
+		addOption(options, CmdLineArg.PARSE_CACHE, true, "Cache parsed tracefiles in dir and reuse them while they are unchanged", false);
+		addOption(options, CmdLineArg.PARSE_CACHE_SIZE, true, "Limit the parse cache to size megabytes (default 256)", false);
+		addOption(options, CmdLineArg.SUMMARY_ONLY, false, "Print the overall coverage rate without generating the report", false);
+		addOption(options, CmdLineArg.SUMMARY_JSON, false, "Also print the overall coverage rate as JSON on standard output", false);
+		addOption(options, CmdLineArg.FAIL_UNDER, true, "Fail if overall coverage is below thresholds, e.g. line=80,function=75,branch=50", false);
+		addOption(options, CmdLineArg.FAIL_UNDER_DIR, true, "Fail if the coverage of any directory is below thresholds", false);
+		addOption(options, CmdLineArg.FAIL_FAST, false, "Do not generate the report when coverage is below the thresholds", false);
+		addOption(options, CmdLineArg.METRICS, false, "Write the time and counts of each phase to " + ReportMetrics.FILE_NAME, false);
+		addOption(options, CmdLineArg.DAEMON, false, "Stay running and generate reports for the jgenhtml wrapper script", false);
+		addOption(options, CmdLineArg.DAEMON_STOP, false, "Stop the running daemon", false);
 	}
 
 	/**
@@ -238,6 +318,23 @@ public final class Config
 	 */
 	public void initializeUserPrefs(String[] argv) throws ParseException
 	{
+		initializeUserPrefs(argv, null);
+	}
+
+	/**
+	 * Load command line args and config file properties into this config instance, as if jgenhtml had been
+	 * started in another directory. The daemon uses this to run reports for wrapper scripts started anywhere.
+	 * @param argv Command line args.
+	 * @param workingDir Relative paths are resolved against this directory, if null the current directory.
+	 * @throws ParseException If the config file could not be parsed.
+	 */
+	public void initializeUserPrefs(String[] argv, final File workingDir) throws ParseException
+	{
+		this.workingDir = workingDir;
+		if (workingDir != null)
+		{
+			this.outRootDir = workingDir;
+		}
 		CommandLineParser parser = new PosixParser();
 		CommandLine cmd = parser.parse(options, argv);
 
@@ -254,8 +351,6 @@ public final class Config
 			if (cmd.hasOption(Config.CmdLineArg.QUIET.toString()))
 			{
 				this.quiet = true;
-				Logger parent = Logger.getLogger("com.googlecode.jgenhtml");
-				parent.setLevel(Level.WARNING);
 			}
 			if (cmd.hasOption(CmdLineArg.SHOW_DETAILS.toString()))
 			{
@@ -329,6 +424,58 @@ public final class Config
 			{
 				this.setBranchCoverage(true);
 			}
+			if (cmd.hasOption(CmdLineArg.THREADS.toString()))
+			{
+				this.setThreads(cmd.getOptionValue(CmdLineArg.THREADS.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.HTML_ENGINE.toString()))
+			{
+				this.setHtmlEngine(cmd.getOptionValue(CmdLineArg.HTML_ENGINE.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.GZIP_LEVEL.toString()))
+			{
+				this.setGzipLevel(cmd.getOptionValue(CmdLineArg.GZIP_LEVEL.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.GZIP_STATIC.toString()))
+			{
+				this.setGzipStatic(true);
+			}
+			if (cmd.hasOption(CmdLineArg.INCREMENTAL.toString()))
+			{
+				this.setIncremental(true);
+			}
+			if (cmd.hasOption(CmdLineArg.PARSE_CACHE.toString()))
+			{
+				this.setParseCacheDir(cmd.getOptionValue(CmdLineArg.PARSE_CACHE.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.PARSE_CACHE_SIZE.toString()))
+			{
+				this.setParseCacheSize(cmd.getOptionValue(CmdLineArg.PARSE_CACHE_SIZE.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.SUMMARY_ONLY.toString()))
+			{
+				this.setSummaryOnly(true);
+			}
+			if (cmd.hasOption(CmdLineArg.SUMMARY_JSON.toString()))
+			{
+				this.setSummaryJson(true);
+			}
+			if (cmd.hasOption(CmdLineArg.FAIL_UNDER.toString()))
+			{
+				this.setThreshold(cmd.getOptionValue(CmdLineArg.FAIL_UNDER.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.FAIL_UNDER_DIR.toString()))
+			{
+				this.setDirThreshold(cmd.getOptionValue(CmdLineArg.FAIL_UNDER_DIR.toString()));
+			}
+			if (cmd.hasOption(CmdLineArg.FAIL_FAST.toString()))
+			{
+				this.setFailFast(true);
+			}
+			if (cmd.hasOption(CmdLineArg.METRICS.toString()))
+			{
+				this.setMetrics(true);
+			}
 			if (cmd.hasOption(CmdLineArg.NOPREFIX.toString()))
 			{
 				this.setNoPrefix(true);
@@ -337,7 +484,22 @@ public final class Config
 			{
 				this.setPrefix(cmd.getOptionValue(CmdLineArg.PREFIX.toString()));
 			}
+			if (cmd.hasOption(CmdLineArg.DAEMON.toString()))
+			{
+				this.daemon = true;
+			}
+			if (cmd.hasOption(CmdLineArg.DAEMON_STOP.toString()))
+			{
+				this.daemonStop = true;
+			}
 			traceFiles = cmd.getArgs();
+			if (traceFiles != null && workingDir != null)
+			{
+				for (int i = 0; i < traceFiles.length; i++)
+				{
+					traceFiles[i] = resolve(traceFiles[i]).getPath();
+				}
+			}
 			if (traceFiles != null && traceFiles.length > 0)
 			{
 				this.loadConfigFile(cmd.getOptionValue(CmdLineArg.CONFFILE.toString()));
@@ -359,11 +521,11 @@ public final class Config
 		{
 			// don't use FileUtils.getUserDirectoryPath() here, it was causing issues when run from Ant
 			String lcovrc = System.getProperty("user.home") + File.separatorChar + ".lcovrc";
-			Properties properties = loadFileToProperties(alternatePath);
+			Properties properties = loadFileToProperties((alternatePath != null)? resolve(alternatePath).getPath() : null);
 			if (properties != null || (properties = loadFileToProperties(lcovrc)) != null)
 			{
 
-				LOGGER.log(Level.INFO, "Loaded config file {0}.", lcovrc);
+				LOGGER.log(quiet? Level.FINE : Level.INFO, "Loaded config file {0}.", lcovrc);  // no report is logging at its level yet
 				if (properties.containsKey(ConfFileArg.CSS.toString()))
 				{
 					setCssFile(properties.getProperty(ConfFileArg.CSS.toString()));
@@ -432,12 +594,71 @@ public final class Config
 				{
 					setHtmlOnly(optionValue != 0);
 				}
+				optionValue = getNumericValue(properties, ConfFileArg.THREADS.toString());
+				if (optionValue != null)
+				{
+					setThreads(optionValue);
+				}
+				if (properties.containsKey(ConfFileArg.HTML_ENGINE.toString()))
+				{
+					setHtmlEngine(properties.getProperty(ConfFileArg.HTML_ENGINE.toString()));
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.GZIP_LEVEL.toString());
+				if (optionValue != null)
+				{
+					setGzipLevel(optionValue);
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.GZIP_STATIC.toString());
+				if (optionValue != null)
+				{
+					setGzipStatic(optionValue != 0);
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.INCREMENTAL.toString());
+				if (optionValue != null)
+				{
+					setIncremental(optionValue != 0);
+				}
+				if (properties.containsKey(ConfFileArg.PARSE_CACHE.toString()))
+				{
+					setParseCacheDir(properties.getProperty(ConfFileArg.PARSE_CACHE.toString()));
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.PARSE_CACHE_SIZE.toString());
+				if (optionValue != null)
+				{
+					setParseCacheSize(optionValue);
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.SUMMARY_ONLY.toString());
+				if (optionValue != null)
+				{
+					setSummaryOnly(optionValue != 0);
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.SUMMARY_JSON.toString());
+				if (optionValue != null)
+				{
+					setSummaryJson(optionValue != 0);
+				}
+				if (properties.containsKey(ConfFileArg.FAIL_UNDER.toString()))
+				{
+					setThreshold(properties.getProperty(ConfFileArg.FAIL_UNDER.toString()));
+				}
+				if (properties.containsKey(ConfFileArg.FAIL_UNDER_DIR.toString()))
+				{
+					setDirThreshold(properties.getProperty(ConfFileArg.FAIL_UNDER_DIR.toString()));
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.FAIL_FAST.toString());
+				if (optionValue != null)
+				{
+					setFailFast(optionValue != 0);
+				}
+				optionValue = getNumericValue(properties, ConfFileArg.METRICS.toString());
+				if (optionValue != null)
+				{
+					setMetrics(optionValue != 0);
+				}
 				optionValue = getNumericValue(properties, ConfFileArg.VERBOSE.toString());
 				if (optionValue != null && (optionValue != 0))
 				{
-						Logger parent = Logger.getLogger("com.googlecode.jgenhtml");
-						parent.setLevel(Level.ALL);
-
+					this.verbose = true;
 				}
 			}
 		}
@@ -466,7 +687,7 @@ public final class Config
 		String newPath = path.trim();
 		if (!newPath.isEmpty())
 		{
-			result = new File(newPath);
+			result = resolve(newPath);
 			if (!result.exists())
 			{
 				result = null;
@@ -475,6 +696,29 @@ public final class Config
 		return result;
 	}
 
+	/**
+	 * Get the directory relative paths are resolved against, the client's directory when run by the daemon.
+	 * @return The working directory or null for the current directory.
+	 */
+	public File getWorkingDir()
+	{
+		return workingDir;
+	}
+
+	/**
+	 * @param path A path given by the user.
+	 * @return The path, resolved against the working directory if it is relative and there is one.
+	 */
+	private File resolve(final String path)
+	{
+		File result = new File(path);
+		if (workingDir != null && !result.isAbsolute())
+		{
+			result = new File(workingDir, path);
+		}
+		return result;
+	}
+
 	/**
 	 * Get the path/s to the traceFile/s passed in on the command line.
 	 * @return An array of paths.
@@ -632,6 +876,279 @@ public final class Config
 		this.gzip = gzip;
 	}
 
+	/**
+	 * Get the compression level for gzipped output.
+	 * @return A level from 0 to 9 or Deflater.DEFAULT_COMPRESSION if the user has not set one.
+	 */
+	public int getGzipLevel()
+	{
+		return gzipLevel;
+	}
+
+	/**
+	 * Set the compression level for gzipped output.
+	 * @param gzipLevel The compression level.
+	 */
+	private void setGzipLevel(final String gzipLevel)
+	{
+		try
+		{
+			setGzipLevel(Integer.parseInt(gzipLevel));
+		}
+		catch(NumberFormatException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Set the compression level for gzipped output.
+	 * @param gzipLevel The compression level, anything outside 0 to 9 is ignored.
+	 */
+	private void setGzipLevel(final int gzipLevel)
+	{
+		if (gzipLevel >= Deflater.NO_COMPRESSION && gzipLevel <= Deflater.BEST_COMPRESSION)
+		{
+			this.gzipLevel = gzipLevel;
+		}
+		else
+		{
+			LOGGER.log(Level.WARNING, "Ignoring gzip level {0}", gzipLevel);
+		}
+	}
+
+	/**
+	 * Determine if a gzipped copy of each output file should be written next to it (e.g. for nginx gzip_static).
+	 * @return true if the user wants .gz copies and the output is not already gzipped by html-gzip.
+	 */
+	public boolean isGzipStatic()
+	{
+		return gzipStatic && !gzip;
+	}
+
+	/**
+	 * Set the user preference for writing gzipped copies of output files.
+	 * @param gzipStatic true to write a .gz copy next to every file.
+	 */
+	private void setGzipStatic(final boolean gzipStatic)
+	{
+		this.gzipStatic = gzipStatic;
+	}
+
+	/**
+	 * Determine if pages which have not changed since the last run should be left alone.
+	 * @return true if the user wants incremental output.
+	 */
+	public boolean isIncremental()
+	{
+		return incremental;
+	}
+
+	/**
+	 * Set the user preference for incremental output.
+	 * @param incremental true to only write pages which have changed since the last run.
+	 */
+	private void setIncremental(final boolean incremental)
+	{
+		this.incremental = incremental;
+	}
+
+	/**
+	 * The directory to cache parsed tracefiles in.
+	 * @return The cache directory or null if tracefiles should always be parsed.
+	 */
+	public File getParseCacheDir()
+	{
+		return parseCacheDir;
+	}
+
+	/**
+	 * Set the directory to cache parsed tracefiles in, it is created if it does not exist.
+	 * @param parseCacheDir The path to the cache directory.
+	 */
+	private void setParseCacheDir(final String parseCacheDir)
+	{
+		this.parseCacheDir = resolve(parseCacheDir.trim());
+	}
+
+	/**
+	 * The most disk space the parse cache may use.
+	 * @return The limit in megabytes.
+	 */
+	public int getParseCacheSize()
+	{
+		return parseCacheSize;
+	}
+
+	private void setParseCacheSize(final String parseCacheSize)
+	{
+		try
+		{
+			setParseCacheSize(Integer.parseInt(parseCacheSize));
+		}
+		catch(NumberFormatException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Determine if only the overall coverage rate is wanted, in which case no pages are written and no source
+	 * code is read.
+	 * @return true if the user only wants the summary.
+	 */
+	public boolean isSummaryOnly()
+	{
+		return summaryOnly;
+	}
+
+	/**
+	 * Set the user preference for skipping the report and only printing the summary.
+	 * @param summaryOnly true to only print the summary.
+	 */
+	private void setSummaryOnly(final boolean summaryOnly)
+	{
+		this.summaryOnly = summaryOnly;
+	}
+
+	/**
+	 * Determine if the overall coverage rate should be printed as JSON on standard output.
+	 * @return true if the user wants the summary as JSON.
+	 */
+	public boolean isSummaryJson()
+	{
+		return summaryJson;
+	}
+
+	/**
+	 * Set the user preference for printing the summary as JSON.
+	 * @param summaryJson true to print the summary as JSON.
+	 */
+	private void setSummaryJson(final boolean summaryJson)
+	{
+		this.summaryJson = summaryJson;
+	}
+
+	/**
+	 * The minimum coverage of the whole report.
+	 * @return The thresholds or null if overall coverage is not checked.
+	 */
+	public CoverageThreshold getThreshold()
+	{
+		return threshold;
+	}
+
+	/**
+	 * Set the minimum coverage of the whole report.
+	 * @param threshold The thresholds, for example "line=80,branch=50".
+	 */
+	private void setThreshold(final String threshold)
+	{
+		this.threshold = parseThreshold(threshold, this.threshold);
+	}
+
+	/**
+	 * The minimum coverage of each directory in the report.
+	 * @return The thresholds or null if the coverage of directories is not checked.
+	 */
+	public CoverageThreshold getDirThreshold()
+	{
+		return dirThreshold;
+	}
+
+	/**
+	 * Set the minimum coverage of each directory in the report.
+	 * @param dirThreshold The thresholds, for example "line=60".
+	 */
+	private void setDirThreshold(final String dirThreshold)
+	{
+		this.dirThreshold = parseThreshold(dirThreshold, this.dirThreshold);
+	}
+
+	private static CoverageThreshold parseThreshold(final String spec, final CoverageThreshold current)
+	{
+		CoverageThreshold result = current;
+		try
+		{
+			result = CoverageThreshold.parse(spec);
+		}
+		catch(IllegalArgumentException ex)
+		{
+			LOGGER.log(Level.WARNING, "Ignoring coverage threshold {0}: {1}", new Object[]{spec, ex.getLocalizedMessage()});
+		}
+		return result;
+	}
+
+	/**
+	 * Determine if the report should be skipped when coverage is below the thresholds.
+	 * @return true if the user wants to stop as soon as the thresholds are not met.
+	 */
+	public boolean isFailFast()
+	{
+		return failFast;
+	}
+
+	/**
+	 * Determine if the time and counts of each phase of the report should be written to the output directory.
+	 * @return true if the user wants metrics.
+	 */
+	public boolean isMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Set the user preference for writing metrics.
+	 * @param metrics true to write the time and counts of each phase of the report.
+	 */
+	private void setMetrics(final boolean metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Determine if the user wants jgenhtml to stay running as a daemon.
+	 * @return true if running as a daemon.
+	 */
+	public boolean isDaemon()
+	{
+		return daemon;
+	}
+
+	/**
+	 * Determine if the user wants to stop the running daemon.
+	 * @return true if stopping the daemon.
+	 */
+	public boolean isDaemonStop()
+	{
+		return daemonStop;
+	}
+
+	/**
+	 * Set the user preference for stopping when coverage is below the thresholds.
+	 * @param failFast true to skip the report when the thresholds are not met.
+	 */
+	private void setFailFast(final boolean failFast)
+	{
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Set the most disk space the parse cache may use.
+	 * @param parseCacheSize The limit in megabytes, negative values are ignored.
+	 */
+	private void setParseCacheSize(final int parseCacheSize)
+	{
+		if (parseCacheSize >= 0)
+		{
+			this.parseCacheSize = parseCacheSize;
+		}
+		else
+		{
+			LOGGER.log(Level.WARNING, "Ignoring parse cache size {0}", parseCacheSize);
+		}
+	}
+
 	/**
 	 * Determine source code page generation is on or off.
 	 * @return true if source code page generation turned off
@@ -718,7 +1235,7 @@ public final class Config
 	 */
 	private void setOutRootDir(final String outRootDir)
 	{
-		File file = new File(outRootDir);
+		File file = resolve(outRootDir);
 		if (!file.exists())
 		{
 			file.mkdirs();
@@ -857,6 +1374,77 @@ public final class Config
 		}
 	}
 
+	/**
+	 * Get the number of threads to use when writing pages.
+	 * @return The number of threads, always at least one.
+	 */
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads to use when writing pages.
+	 * @param threads The number of threads.
+	 */
+	private void setThreads(final String threads)
+	{
+		try
+		{
+			setThreads(Integer.parseInt(threads));
+		}
+		catch(NumberFormatException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Set the number of threads to use when writing pages.
+	 * @param threads The number of threads, zero means one thread per available processor.
+	 */
+	private void setThreads(final int threads)
+	{
+		if (threads == 0)
+		{
+			this.threads = Runtime.getRuntime().availableProcessors();
+		}
+		else if (threads > 0)
+		{
+			this.threads = threads;
+		}
+	}
+
+	/**
+	 * Get the engine to use when writing source code pages as HTML.
+	 * @return The engine, XSLT unless the user has chosen otherwise.
+	 */
+	public HtmlEngine getHtmlEngine()
+	{
+		return htmlEngine;
+	}
+
+	/**
+	 * Set the engine to use when writing source code pages as HTML.
+	 * @param htmlEngine The name of the engine, unknown names are ignored.
+	 */
+	private void setHtmlEngine(final String htmlEngine)
+	{
+		boolean found = false;
+		for(HtmlEngine engine : HtmlEngine.values())
+		{
+			if(engine.toString().equalsIgnoreCase(htmlEngine.trim()))
+			{
+				this.htmlEngine = engine;
+				found = true;
+			}
+		}
+		if(!found)
+		{
+			LOGGER.log(Level.WARNING, "Unknown html engine {0}", htmlEngine);
+		}
+	}
+
 	/**
 	 * Gets the "high pass mark" for percentage of lines covered.
 	 * @return The user defined high pass mark otherwise the default value.
@@ -925,6 +1513,33 @@ public final class Config
 		return quiet;
 	}
 
+	/**
+	 * Determine if the user has requested verbose logging, with jgenhtml_verbose in lcovrc.
+	 * @return true if verbose has been specified.
+	 */
+	public boolean isVerbose()
+	{
+		return verbose;
+	}
+
+	/**
+	 * The level the report logs at, the loggers themselves are shared with other reports so are left alone.
+	 * @return WARNING if quiet, ALL if verbose (and not quiet) otherwise INFO.
+	 */
+	Level getLogLevel()
+	{
+		Level result = Level.INFO;
+		if(quiet)
+		{
+			result = Level.WARNING;
+		}
+		else if(verbose)
+		{
+			result = Level.ALL;
+		}
+		return result;
+	}
+
 	/**
 	 * Determine if we are producing HTML report only (ie exclude XML version).
 	 * @return true if producing html version only.
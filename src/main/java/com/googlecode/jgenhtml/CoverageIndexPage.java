@@ -15,6 +15,9 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -25,7 +28,8 @@ import org.w3c.dom.Element;
  */
 public abstract class CoverageIndexPage extends CoveragePage
 {
-	private final Element sources;
+	private final List<CoveragePage> pages;
+	private final List<Boolean> usePaths;
 
 	/**
 	 * Create a new instance.
@@ -35,23 +39,66 @@ public abstract class CoverageIndexPage extends CoveragePage
 	protected CoverageIndexPage(final String testName) throws ParserConfigurationException
 	{
 		super(testName, "index");
-		Document doc = this.getDoc();
-		this.sources = doc.createElement("sources");
-		Element root = doc.getDocumentElement();
-		root.appendChild(this.sources);
+		this.pages = new ArrayList<>();
+		this.usePaths = new ArrayList<>();
 	}
 
 	/**
 	 * Add a page which this page will index.
+	 * The numbers are added to this page straight away, the rows of the index are not built until this page is written.
 	 * @param page The page to add.
 	 * @param usePath If true "pathname" will be referenced, otherwise "filename".
 	 */
 	void addSourceFile(final CoveragePage page, final boolean usePath)
 	{
 		this.addValuesFromPage(page);  // add the values from the page to this index page
-		Document document = this.getDoc();
+		pages.add(page);
+		usePaths.add(usePath);
+	}
+
+	@Override
+	void appendContent(final Document document, final Element root)
+	{
+		Element sources = document.createElement("sources");
+		root.appendChild(sources);
+		for(int i = 0; i < pages.size(); i++)
+		{
+			sources.appendChild(createSource(document, pages.get(i), usePaths.get(i)));
+		}
+	}
+
+	@Override
+	void digest(final PageDigest digest)
+	{
+		super.digest(digest);
+		digest.add(pages.size());
+		for(int i = 0; i < pages.size(); i++)
+		{
+			CoveragePage page = pages.get(i);
+			digest.add(usePaths.get(i));
+			page.digestSummary(digest);
+			if(page instanceof TestCaseSourceFile)
+			{
+				Collection<TestCaseSourceFile.TestCaseHits> testCases = ((TestCaseSourceFile)page).getTestCaseHits();  // in name order
+				digest.add(testCases.size());
+				for(TestCaseSourceFile.TestCaseHits hits : testCases)
+				{
+					digest.add(hits.getTestCaseName()).add(hits.getLineHit()).add(hits.getBranchHit()).add(hits.getFuncHit());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the element for a row of this index.
+	 * @param document The document for this page.
+	 * @param page The page the row represents.
+	 * @param usePath If true "pathname" will be referenced, otherwise "filename".
+	 * @return A "source" element.
+	 */
+	private static Element createSource(final Document document, final CoveragePage page, final boolean usePath)
+	{
 		Element source = document.createElement("source");
-		sources.appendChild(source);
 		if(usePath)
 		{
 			source.setAttribute("pathname", page.getPath());
@@ -74,15 +121,16 @@ public abstract class CoverageIndexPage extends CoveragePage
 		if(page instanceof TestCaseSourceFile)
 		{
 			TestCaseSourceFile sourceFile = (TestCaseSourceFile)page;
-			for(String testCaseName : sourceFile.getTestCaseNames())
+			for(TestCaseSourceFile.TestCaseHits hits : sourceFile.getTestCaseHits())
 			{
 				Element testCase = document.createElement("testCase");
-				testCase.setAttribute("name", testCaseName);
-				testCase.setAttribute("lines-hit", String.valueOf(sourceFile.getLineHit(testCaseName)));
-				testCase.setAttribute("branches-hit", String.valueOf(sourceFile.getBranchHit(testCaseName)));
-				testCase.setAttribute("functions-hit", String.valueOf(sourceFile.getFuncHit(testCaseName)));
+				testCase.setAttribute("name", hits.getTestCaseName());
+				testCase.setAttribute("lines-hit", String.valueOf(hits.getLineHit()));
+				testCase.setAttribute("branches-hit", String.valueOf(hits.getBranchHit()));
+				testCase.setAttribute("functions-hit", String.valueOf(hits.getFuncHit()));
 				source.appendChild(testCase);
 			}
 		}
+		return source;
 	}
 }
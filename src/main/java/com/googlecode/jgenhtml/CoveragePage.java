@@ -29,17 +29,20 @@ import org.w3c.dom.Element;
 
 /**
  * Functionality common to any of the pages with coverage information.
+ * The XML document for a page only exists while the page is being written, in between pages hold nothing but
+ * the numbers that other pages need, so memory use does not grow with the number of pages in the report.
  * @author Rick Brown
  */
 public abstract class CoveragePage
 {
 	private static final Logger LOGGER = Logger.getLogger(CoveragePage.class.getName());
+	private static final ThreadLocal<DocumentBuilder> DOC_BUILDER = new ThreadLocal<>();
 	private int lineCount;
 	private int lineHit;
 	private String path;
 	private final String testName;
 	private String pageName;
-	private final Document doc;
+	private Document doc;  // null unless the page is being written
 	private String prefix;
 	private int funcCount;
 	private int funcHit;
@@ -58,12 +61,24 @@ public abstract class CoveragePage
 		this.testName = testName;
 		this.pageName = pageName;
 		this.prefix = null;
-		DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder;
-		docBuilder = dbfac.newDocumentBuilder();
-		this.doc = docBuilder.newDocument();
-		Element root = this.doc.createElement("coverage");
-		this.doc.appendChild(root);
+		this.doc = null;
+		getDocumentBuilder();  // fail early, not half way through writing the report
+	}
+
+	/**
+	 * Gets a document builder for the calling thread.
+	 * @return A document builder owned by the calling thread.
+	 * @throws ParserConfigurationException If a document builder could not be created.
+	 */
+	private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException
+	{
+		DocumentBuilder result = DOC_BUILDER.get();
+		if(result == null)
+		{
+			result = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			DOC_BUILDER.set(result);
+		}
+		return result;
 	}
 
 	/**
@@ -225,25 +240,109 @@ public abstract class CoveragePage
 		this.prefix = prefix;
 	}
 
+	/**
+	 * Gets the XML document for this page, creating it if it does not exist yet.
+	 * The document is released when the page has been written.
+	 * @return The document, the root element is "coverage".
+	 */
 	Document getDoc()
 	{
+		if(this.doc == null)
+		{
+			try
+			{
+				this.doc = getDocumentBuilder().newDocument();
+				this.doc.appendChild(this.doc.createElement("coverage"));
+			}
+			catch(ParserConfigurationException ex)
+			{
+				throw new IllegalStateException(ex);  // the constructor has already created a document builder
+			}
+		}
 		return this.doc;
 	}
 
+	/**
+	 * Adds the content of this page to its document, called every time the page is written.
+	 * @param document The document for the page.
+	 * @param root The root element of the document.
+	 */
+	void appendContent(final Document document, final Element root)
+	{
+		// most pages have nothing but the coverage numbers
+	}
+
 	/**
 	 * Writes this coverage page to the file system as XML/HTML.
 	 * @throws TransformerException If the XML could not be transformed to HTML.
 	 * @throws IOException If the files could not be created.
+	 * @deprecated Use writeToFileSystem(Config), this uses the config set with CoverageReport.setConfig.
 	 */
+	@Deprecated
 	public void writeToFileSystem() throws TransformerException, IOException
 	{
-		updateCoverageAttributes();
-		Config config = CoverageReport.getConfig();
-		doc.getDocumentElement().appendChild(config.toXml(doc));
-		writeToFileSystem(config.getOutRootDir(), false);
-		if(!config.isHtmlOnly())
+		writeToFileSystem(CoverageReport.getConfig());
+	}
+
+	/**
+	 * Writes this coverage page to the file system as XML/HTML.
+	 * @param config The user preferences of the report this page belongs to.
+	 * @throws TransformerException If the XML could not be transformed to HTML.
+	 * @throws IOException If the files could not be created.
+	 */
+	public void writeToFileSystem(final Config config) throws TransformerException, IOException
+	{
+		writeToFileSystem(config, (ReportMetrics)null);
+	}
+
+	/**
+	 * Writes this coverage page to the file system as XML/HTML.
+	 * @param config The user preferences of the report this page belongs to.
+	 * @param metrics The metrics of the report, which count the files written, null if the user does not want metrics.
+	 * @throws TransformerException If the XML could not be transformed to HTML.
+	 * @throws IOException If the files could not be created.
+	 */
+	void writeToFileSystem(final Config config, final ReportMetrics metrics) throws TransformerException, IOException
+	{
+		writeToFileSystem(config, metrics, true);
+	}
+
+	/**
+	 * Writes this coverage page to the file system as XML and, optionally, HTML.
+	 * @param config The user preferences of the report this page belongs to.
+	 * @param metrics The metrics of the report, null if the user does not want metrics.
+	 * @param withHtml If false the HTML page is not written, because it has already been written some other way.
+	 * @throws TransformerException If the XML could not be transformed to HTML.
+	 * @throws IOException If the files could not be created.
+	 */
+	void writeToFileSystem(final Config config, final ReportMetrics metrics, final boolean withHtml) throws TransformerException, IOException
+	{
+		try
+		{
+			Document document = getDoc();
+			Element root = document.getDocumentElement();
+			appendContent(document, root);
+			updateCoverageAttributes();
+			root.appendChild(config.toXml(document));
+			String basePath = getBasePath();
+			if(basePath.length() > 0)
+			{
+				Element baseElement = document.createElement("base");
+				baseElement.setAttribute("href", basePath);
+				root.appendChild(baseElement);
+			}
+			if(withHtml)
+			{
+				writeFile(config, metrics, false);
+			}
+			if(!config.isHtmlOnly())
+			{
+				writeFile(config, metrics, true);
+			}
+		}
+		finally
 		{
-			writeToFileSystem(config.getOutRootDir(), true);
+			this.doc = null;  // only the numbers are needed from now on
 		}
 	}
 
@@ -292,14 +391,32 @@ public abstract class CoveragePage
 
 	/**
 	 * Writes this instance to the filesystem as a report page (xml/html).
-	 * @param rootDir The root output directory.
+	 * @param config The user preferences, which include the root output directory.
+	 * @param metrics The metrics of the report, null if the user does not want metrics.
 	 * @param asXml If true, will write XML files (for client side transform) instead of HTML.
 	 * @throws TransformerConfigurationException
 	 * @throws TransformerException
 	 */
-	private void writeToFileSystem(final File rootDir, final boolean asXml) throws TransformerConfigurationException, TransformerException, IOException
+	private void writeFile(final Config config, final ReportMetrics metrics, final boolean asXml) throws TransformerConfigurationException, TransformerException, IOException
+	{
+		File out = getTargetFile(config, asXml);
+		if(asXml)
+		{
+			JGenHtmlUtils.linkToXsl(doc, getBasePath() + JGenHtmlUtils.XSLT_NAME);
+		}
+		LOGGER.log(Level.FINE, "Writing file: {0}", out.getAbsolutePath());
+		JGenHtmlUtils.transformToFile(out, asXml, doc, config, metrics);
+	}
+
+	/**
+	 * Works out where this page belongs in the report.
+	 * @param config The user preferences, which include the root output directory.
+	 * @param asXml If true, the XML file for client side transform, otherwise the HTML file.
+	 * @return The file this page is written to.
+	 */
+	File getTargetFile(final Config config, final boolean asXml)
 	{
-		Config config = CoverageReport.getConfig();
+		File rootDir = config.getOutRootDir();
 		String tagetFileName = pageName;
 		if(this instanceof FunctionPage)
 		{
@@ -309,26 +426,48 @@ public abstract class CoveragePage
 		{
 			tagetFileName += ".gcov";
 		}
-		String basePath = calculateRelativePathToRoot(path);
-		if(basePath.length() > 0)
-		{
-			Element baseElement = doc.createElement("base");
-			baseElement.setAttribute("href", basePath);
-			doc.getDocumentElement().appendChild(baseElement);
-		}
 		File outDir = config.isHtmlOnly()? JGenHtmlUtils.getTargetDir(rootDir, path) : JGenHtmlUtils.getTargetDir(rootDir, asXml, path);
-		File out;
-		if(asXml)
-		{
-			JGenHtmlUtils.linkToXsl(doc, basePath + JGenHtmlUtils.XSLT_NAME);
-			out = new File(outDir, tagetFileName + ".xml");
-		}
-		else
-		{
-			out = new File(outDir, tagetFileName + config.getHtmlExt());
-		}
-		LOGGER.log(Level.FINE, "Writing file: {0}", out.getAbsolutePath());
-		JGenHtmlUtils.transformToFile(out, asXml, doc);
+		return new File(outDir, tagetFileName + (asXml? ".xml" : config.getHtmlExt()));
+	}
+
+	/**
+	 * Adds everything that goes into this page to a hash, so that a page which has not changed since the last run
+	 * does not need to be written again.
+	 * @param digest The hash to add to.
+	 */
+	void digest(final PageDigest digest)
+	{
+		digestSummary(digest);
+	}
+
+	/**
+	 * Adds the names and numbers of this page, the things an index page shows about it, to a hash.
+	 * @param digest The hash to add to.
+	 */
+	final void digestSummary(final PageDigest digest)
+	{
+		digest.add(testName).add(path).add(pageName).add(prefix);
+		digest.add(getLineCount()).add(getLineHit());
+		digest.add(getFuncCount()).add(getFuncHit());
+		digest.add(getBranchCount()).add(getBranchHit());
+	}
+
+	/**
+	 * Determine if the files for this page are in the report, for example from a previous run.
+	 * @param config The user preferences, which include the root output directory.
+	 * @return true if every file this page writes exists.
+	 */
+	boolean isWritten(final Config config)
+	{
+		return getTargetFile(config, false).exists() && (config.isHtmlOnly() || getTargetFile(config, true).exists());
+	}
+
+	/**
+	 * @return The relative path from this page to the root of the report, e.g. "../../".
+	 */
+	String getBasePath()
+	{
+		return calculateRelativePathToRoot(path);
 	}
 
 	private static String calculateRelativePathToRoot(final String path)
@@ -17,95 +17,123 @@ package com.googlecode.jgenhtml;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 
 /**
  * Represents the entire coverage report.
  * Knows about the generation lifecycle of the whole report.
+ * Each report has its own config and data, so separate reports can be generated at the same time, see Builder.
  * @author Rick Brown
  */
 public final class CoverageReport
 {
 	private static final Logger LOGGER = Logger.getLogger(CoverageReport.class.getName());
-	private static Config config;
+	private static volatile Config defaultConfig;
 	public static final String DEFAULT_TEST_NAME = "<unnamed>";
+	private final Config config;
 	private String testTitle;
 	private final String[] traceFiles;
 	private final ParsedFiles parsedFiles;
+	private final ParseCache parseCache;
+	private final ExecutorService sharedPool;
+	private final ReportMetrics metrics;
+	private final Level logLevel;
 	private DescriptionsPage descriptionsPage;
 	private Collection<TestCaseIndexPage> indexPages;
 	private Set<String> runTestNames;
 
 	static {
 		JGenHtmlUtils.setLogFormatter(LOGGER);
-		config = new Config();
+		defaultConfig = new Config();
 	}
 
+	/**
+	 * Parses tracefiles using the config set with setConfig.
+	 * @param traceFiles Paths to the tracefiles.
+	 * @deprecated Use Builder, which does not share the config with other reports.
+	 */
+	@Deprecated
 	public CoverageReport(final String[] traceFiles) throws IOException, ParserConfigurationException
 	{
+		this(defaultConfig, traceFiles, null);
+	}
+
+	private CoverageReport(final Config config, final String[] traceFiles, final ExecutorService sharedPool) throws IOException, ParserConfigurationException
+	{
+		this.config = config;
+		this.sharedPool = sharedPool;
 		this.traceFiles = traceFiles;
 		this.descriptionsPage = null;
 		this.indexPages = null;
 		this.runTestNames = null;
 		this.testTitle = null;
-		this.parsedFiles = new ParsedFiles();
-		processTraceFiles();
-		checkProcessBaselineFile(config.getBaseFile());
-		checkGenerateDescriptions(config.getDescFile());
-		removePrefix();  // check if there is a common prefix and strip it
-	}
-
-	/**
-	 * Stores information about all the source code files parsed from the tracefile.
-	 * Basically a registry to manage parsed source file data.
-	 * Should be a singleton.
-	 */
-	private static class ParsedFiles
-	{
-		private final Map<String, TestCaseSourceFile> parsed;
-
-		public ParsedFiles()
-		{
-			this.parsed = new HashMap<>();
-		}
-
-		public TestCaseSourceFile get(final String filePath)
+		this.parsedFiles = new ParsedFiles(!config.isSummaryOnly(), config.getNumSpaces(), config.getWorkingDir());  // the numbers do not need the source code
+		File parseCacheDir = config.getParseCacheDir();
+		this.parseCache = (parseCacheDir != null)? new ParseCache(parseCacheDir, config.getParseCacheSize() * 1024L * 1024L) : null;
+		this.metrics = config.isMetrics()? new ReportMetrics() : null;
+		this.logLevel = config.getLogLevel();
+		Level previousLevel = ReportLogLevel.begin(logLevel);
+		try
 		{
-			TestCaseSourceFile result = null;
-			if(parsed.containsKey(filePath))
-			{
-				result = parsed.get(filePath);
-			}
-			return result;
+			startPhase("processTraceFiles");
+			processTraceFiles();
+			startPhase("processBaseline");
+			checkProcessBaselineFile(config.getBaseFile());
+			startPhase("generateDescriptions");
+			checkGenerateDescriptions(config.getDescFile());
+			startPhase("removePrefix");
+			removePrefix();  // check if there is a common prefix and strip it
+			endPhase();
 		}
-
-		public TestCaseSourceFile put(final String filePath, final TestCaseSourceFile parsedFile)
+		finally
 		{
-			return parsed.put(filePath, parsedFile);
+			ReportLogLevel.end(logLevel, previousLevel);
 		}
+	}
 
-		public Collection<TestCaseSourceFile> getAll()
+	/**
+	 * Starts timing a phase of the report, if the user wants metrics, ending the current phase.
+	 * @param name The name of the phase in the metrics file.
+	 */
+	private void startPhase(final String name)
+	{
+		if(metrics != null)
 		{
-			return this.parsed.values();
+			metrics.start(name);
 		}
+	}
 
-		public int getCount()
+	private void endPhase()
+	{
+		if(metrics != null)
 		{
-			return this.parsed.size();
+			metrics.end();
 		}
-
 	}
 
 	public int getPageCount()
@@ -113,6 +141,11 @@ public final class CoverageReport
 		return this.parsedFiles.getCount();
 	}
 
+	Collection<TestCaseSourceFile> getParsedFiles()
+	{
+		return this.parsedFiles.getAll();
+	}
+
 	public void setDescriptionsPage(final DescriptionsPage descriptionsPage)
 	{
 		this.descriptionsPage = descriptionsPage;
@@ -120,6 +153,7 @@ public final class CoverageReport
 
 	public void processTraceFiles() throws IOException, ParserConfigurationException
 	{
+		List<File> existing = new ArrayList<>(traceFiles.length);
 		for (String file : traceFiles)
 		{
 			File traceFile = new File(file);
@@ -129,13 +163,135 @@ public final class CoverageReport
 				{
 					testTitle = traceFiles.length == 1 ? traceFile.getName() : "unnamed";
 				}
+				existing.add(traceFile);
+			}
+			else
+			{
+				LOGGER.log(Level.WARNING, "Can not find file: {0}", traceFile.getAbsolutePath());
+			}
+		}
+		int threads = config.getThreads();
+		List<ParsedFiles> partials = new ArrayList<>();
+		List<Callable<Set<String>>> tasks = (threads > 1)? getParseTasks(existing, threads, partials) : new ArrayList<Callable<Set<String>>>();
+		if(tasks.size() > 1)
+		{
+			for (File traceFile : existing)
+			{
+				LOGGER.log(Level.INFO, "Reading data file: {0}", traceFile.getName());
+			}
+			ExecutorService pool = (sharedPool != null)? sharedPool : new ForkJoinPool(threads);
+			try
+			{
+				processTraceFiles(tasks, partials, pool);
+			}
+			finally
+			{
+				if(pool != sharedPool)
+				{
+					pool.shutdownNow();
+				}
+			}
+		}
+		else
+		{
+			for (File traceFile : existing)
+			{
 				LOGGER.log(Level.INFO, "Reading data file: {0}", traceFile.getName());
 				parseDatFile(traceFile, false, false);
 			}
+		}
+	}
+
+	/**
+	 * Creates the tasks to parse tracefiles concurrently, each into its own partial data.
+	 * Large uncompressed tracefiles are split at record boundaries and parsed as several tasks, unless they are cached.
+	 * @param existing The tracefiles to parse.
+	 * @param threads The number of threads the tasks will be run on.
+	 * @param partials Populated with the partial data each task parses into, in the same order as the tasks.
+	 * @return The tasks, in tracefile order, each returns the test names it found.
+	 */
+	private List<Callable<Set<String>>> getParseTasks(final List<File> existing, final int threads, final List<ParsedFiles> partials) throws IOException
+	{
+		List<Callable<Set<String>>> result = new ArrayList<>();
+		for (final File traceFile : existing)
+		{
+			long[] chunks = (parseCache == null)? TraceFileSplitter.split(traceFile, threads) : null;
+			if(chunks == null)
+			{
+				final ParsedFiles partial = parsedFiles.createPartial();
+				partials.add(partial);
+				result.add(new Callable<Set<String>>()
+				{
+					@Override
+					public Set<String> call() throws Exception
+					{
+						return (parseCache == null)? parseTraceFile(traceFile, partial, false, false).getTestNames() : parseCachedTraceFile(traceFile, partial, false);
+					}
+				});
+			}
 			else
 			{
-				LOGGER.log(Level.WARNING, "Can not find file: {0}", traceFile.getAbsolutePath());
+				for(int i = 1; i < chunks.length; i++)
+				{
+					final long start = chunks[i - 1];
+					final long end = chunks[i];
+					final ParsedFiles partial = parsedFiles.createPartial();
+					partials.add(partial);
+					result.add(new Callable<Set<String>>()
+					{
+						@Override
+						public Set<String> call() throws Exception
+						{
+							Object event = ReportEvents.getInstance().beginTraceFile();
+							TraceFileParser parser = new TraceFileParser(partial, testTitle, false);
+							TraceFileSplitter.parse(traceFile, start, end, parser);
+							countRecords(parser);
+							ReportEvents.getInstance().endTraceFileChunk(event, traceFile, start, end, parser.getRecords());
+							return parser.getTestNames();
+						}
+					});
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the parse tasks on the pool, then merges the partial data in task order.
+	 * The result is the same as parsing the tracefiles one after the other.
+	 * @param tasks The tasks to run.
+	 * @param partials The partial data each task parses into.
+	 * @param pool The pool to parse the tracefiles with.
+	 */
+	private void processTraceFiles(final List<Callable<Set<String>>> tasks, final List<ParsedFiles> partials, final ExecutorService pool) throws IOException, ParserConfigurationException
+	{
+		List<Future<Set<String>>> results = new ArrayList<>(tasks.size());
+		for (Callable<Set<String>> task : tasks)
+		{
+			results.add(pool.submit(ReportLogLevel.wrap(task, logLevel)));
+		}
+		try
+		{
+			for(int i = 0; i < results.size(); i++)
+			{
+				addRunTestNames(results.get(i).get());
+				parsedFiles.merge(partials.get(i), testTitle);
+				partials.set(i, null);  // let the partial data go as soon as it is merged
+			}
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading data files", ex);
+		}
+		catch(ExecutionException ex)
+		{
+			Throwable cause = unwrap(ex);
+			if(cause instanceof ParserConfigurationException)
+			{
+				throw (ParserConfigurationException)cause;
 			}
+			throw (cause instanceof IOException)? (IOException)cause : new IOException(cause);
 		}
 	}
 
@@ -149,9 +305,9 @@ public final class CoverageReport
 
 	private void checkGenerateDescriptions(final File descFile) throws IOException, ParserConfigurationException
 	{
-		if(descFile != null)
+		if(descFile != null && !config.isSummaryOnly())
 		{
-			setDescriptionsPage(new DescriptionsPage(testTitle, runTestNames));
+			setDescriptionsPage(new DescriptionsPage(testTitle, runTestNames, config));
 			parseDatFile(descFile, true, false);
 		}
 	}
@@ -164,89 +320,103 @@ public final class CoverageReport
 	 */
 	private void parseDatFile(final File traceFile, final boolean isDescFile, final boolean isBaselineFile) throws IOException, ParserConfigurationException
 	{
-		// I used the info from here: http://manpages.ubuntu.com/manpages/precise/man1/geninfo.1.html
-		File fileToProcess;
-		if(traceFile.getName().endsWith(".gz"))
+		if(isDescFile)
+		{
+			try (InputStream in = JGenHtmlUtils.openTraceFile(traceFile, false))
+			{
+				parseDescFile(in);
+			}
+		}
+		else if(parseCache != null && !isBaselineFile)
 		{
-			LOGGER.log(Level.FINE, "File {0} ends with .gz, going to gunzip it.", traceFile.getName());
-			fileToProcess = JGenHtmlUtils.gunzip(traceFile);
+			ParsedFiles partial = parsedFiles.createPartial();
+			addRunTestNames(parseCachedTraceFile(traceFile, partial, config.getThreads() > 1));
+			parsedFiles.merge(partial, testTitle);
 		}
 		else
 		{
-			fileToProcess = traceFile;
+			TraceFileParser parser = parseTraceFile(traceFile, parsedFiles, isBaselineFile, config.getThreads() > 1);
+			addRunTestNames(parser.getTestNames());
 		}
-		LineIterator iterator = FileUtils.lineIterator(fileToProcess);
-		try
+	}
+
+	/**
+	 * Loads a tracefile from the parse cache or, if it has changed since it was cached, parses and caches it.
+	 * @param traceFile A gcov tracefile.
+	 * @param into Empty partial data (which does not load source) to add the parsed data to.
+	 * @param readAhead true to inflate gzipped tracefiles on another thread.
+	 * @return The test names found in the tracefile or null if there are none.
+	 */
+	private Set<String> parseCachedTraceFile(final File traceFile, final ParsedFiles into, final boolean readAhead) throws IOException, ParserConfigurationException
+	{
+		Set<String> result;
+		Object event = ReportEvents.getInstance().beginTraceFile();
+		ParseCache.Entry entry = parseCache.getEntry(traceFile);
+		if(entry.load(into, testTitle))
 		{
-			TestCaseSourceFile testCaseSourceFile = null;
-			String testCaseName = DEFAULT_TEST_NAME;
-			while(iterator.hasNext())
-			{
-				String line = iterator.nextLine();
-				int tokenIdx = line.indexOf("SF:");
-				if(tokenIdx >= 0 || (tokenIdx = line.indexOf("KF:")) >= 0)
-				{
-					File sourceFile = JGenHtmlUtils.processFilePath(line.substring(line.indexOf(tokenIdx) + 4));
-					testCaseSourceFile = getTestCaseSourceFile(sourceFile, !isBaselineFile);
-				}
-				else if(line.contains("end_of_record"))
-				{
-					if(testCaseSourceFile != null)
-					{
-						testCaseName = DEFAULT_TEST_NAME;
-						testCaseSourceFile = null;
-					}
-					else
-					{
-						LOGGER.log(Level.FINE, "Unexpected end of record");
-					}
-				}
-				else if(testCaseSourceFile != null)
-				{
-					testCaseSourceFile.processLine(testCaseName, line, isBaselineFile);
-				}
-				else
-				{
-					if(isDescFile)
-					{
-						descriptionsPage.addLine(line);
-					}
-					else if(line.startsWith("TN:")) {
-						String[] data = JGenHtmlUtils.extractLineValues(line);
-						if (data != null) {
-							testCaseName = data[0].trim();
-						}
-						if(!testCaseName.isEmpty())
-						{
-							if(runTestNames == null)
-							{
-								runTestNames = new HashSet<>();
-							}
-							runTestNames.add(testCaseName);
-						}
-					}
-					else
-					{
-						LOGGER.log(Level.FINE, "Unexpected line: {0}", line);
-					}
-				}
-			}
+			result = entry.getTestNames();
+			ReportEvents.getInstance().endTraceFile(event, traceFile, 0, true);
 		}
-		finally
+		else
+		{
+			result = parseTraceFile(traceFile, into, false, readAhead).getTestNames();
+			entry.store(into, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses a gcov tracefile.
+	 * @param traceFile A gcov tracefile.
+	 * @param into The registry to add the parsed data to.
+	 * @param isBaselineFile true if this is a baseline file.
+	 * @param readAhead true to inflate gzipped tracefiles on another thread.
+	 * @return The parser used, which knows the test names found.
+	 */
+	private TraceFileParser parseTraceFile(final File traceFile, final ParsedFiles into, final boolean isBaselineFile, final boolean readAhead) throws IOException, ParserConfigurationException
+	{
+		Object event = ReportEvents.getInstance().beginTraceFile();
+		TraceFileParser result = new TraceFileParser(into, testTitle, isBaselineFile);
+		try (InputStream in = JGenHtmlUtils.openTraceFile(traceFile, readAhead))
+		{
+			result.parse(in);
+		}
+		countRecords(result);
+		ReportEvents.getInstance().endTraceFile(event, traceFile, result.getRecords(), false);
+		return result;
+	}
+
+	private void countRecords(final TraceFileParser parser)
+	{
+		if(metrics != null)
 		{
-			LineIterator.closeQuietly(iterator);
+			metrics.addRecords(parser.getRecords());
 		}
 	}
 
-	private TestCaseSourceFile getTestCaseSourceFile(final File sourceFile, boolean create) throws ParserConfigurationException, IOException {
-		TestCaseSourceFile testCaseSourceFile = parsedFiles.get(sourceFile.getPath());
-		if (create && testCaseSourceFile == null)
+	private void addRunTestNames(final Set<String> testNames)
+	{
+		if(testNames != null)
 		{
-			testCaseSourceFile = new TestCaseSourceFile(testTitle, sourceFile.getName());
-			testCaseSourceFile.setSourceFile(sourceFile);
-			parsedFiles.put(sourceFile.getPath(), testCaseSourceFile);
+			if(runTestNames == null)
+			{
+				runTestNames = new HashSet<>();
+			}
+			runTestNames.addAll(testNames);
+		}
+	}
+
+	/**
+	 * Parses a descriptions file, line by line.
+	 * @param in The descriptions file content.
+	 */
+	private void parseDescFile(final InputStream in)
+	{
+		LineIterator iterator = IOUtils.lineIterator(in, Charset.defaultCharset());
+		while(iterator.hasNext())
+		{
+			descriptionsPage.addLine(iterator.nextLine());
 		}
-		return testCaseSourceFile;
 	}
 
 	/**
@@ -256,35 +426,77 @@ public final class CoverageReport
 	 */
 	public void generateReports() throws IOException, ParserConfigurationException
 	{
+		Level previousLevel = ReportLogLevel.begin(logLevel);
 		try
 		{
 			LOGGER.log(Level.INFO, "Generating output at {0}", config.getOutRootDir().getAbsolutePath());
-			Line.setTabExpand(config.getNumSpaces());
-			generateCoverageReports();
-			generateIndexFiles();
+			startPhase("generateCoverageReports");
+			ReportManifest manifest = null;
+			if(config.isIncremental())
+			{
+				manifest = new ReportManifest(config);
+			}
+			else
+			{
+				ReportManifest.delete(config);  // the pages are about to change under it
+			}
+			ExecutorService pool = (sharedPool != null && config.getThreads() > 1)? sharedPool : createPool(config.getThreads(), "jgenhtml-writer-");
+			try
+			{
+				generateCoverageReports(pool, manifest);
+				startPhase("generateIndexFiles");
+				generateIndexFiles(pool, manifest);
+			}
+			finally
+			{
+				if(pool != null && pool != sharedPool)
+				{
+					pool.shutdownNow();
+				}
+			}
+			startPhase("generateResources");
 			generateResources();
+			startPhase("generateDescriptionPage");
 			generateDescriptionPage();
+			startPhase("generateTopLevelIndex");
 			TopLevelIndexPage index = new TopLevelIndexPage(testTitle, indexPages);
 			LOGGER.log(Level.INFO, "Writing directory view page.");
 			loggerSummary(index);
-			index.writeToFileSystem();
+			if(manifest == null || manifest.isChanged(index))
+			{
+				index.writeToFileSystem(config, metrics);
+			}
+			if(manifest != null)
+			{
+				manifest.save();
+			}
+			if(metrics != null)
+			{
+				metrics.save(config.getOutRootDir());
+			}
 		}
 		catch (TransformerException ex)
 		{
 			LOGGER.log(Level.SEVERE, ex.getLocalizedMessage());
 		}
-
+		finally
+		{
+			ReportLogLevel.end(logLevel, previousLevel);
+		}
 	}
 
 	private void loggerSummary(TopLevelIndexPage index)
+	{
+		CoverageSummary summary = new CoverageSummary();
+		summary.add(index);
+		loggerSummary(summary);
+	}
+
+	private static void loggerSummary(final CoverageSummary summary)
 	{
 		try
 		{
-
-			LOGGER.log(Level.INFO, "Overall coverage rate:");
-			logSummary("lines", index.getLineRate(), index.getLineHit(), index.getLineCount());
-			logSummary("functions", index.getFunctionRate(), index.getFuncHit(), index.getFuncCount());
-			logSummary("branches", index.getBranchRate(), index.getBranchHit(), index.getBranchCount());
+			summary.log(LOGGER);
 		}
 		catch(Throwable t)
 		{
@@ -294,33 +506,70 @@ public final class CoverageReport
 	}
 
 	/**
-	 * Log a summary of the coverage information.
-	 * @param type The type of coverage: "lines", "functions" or "branches".
-	 * @param rate The coverage rate.
-	 * @param hit The execution count.
-	 * @param count The executable count.
+	 * Totals the coverage of every source file straight from the parsed data, without writing anything.
+	 * @return The same numbers as the top level index page.
 	 */
-	private static void logSummary(final String type, final float rate, final int hit, final int count)
+	public CoverageSummary getSummary()
 	{
-		String prefix = String.format("%1$-11s", type);
-		prefix = prefix.replace(" ", ".");
-		if(count > 0)
+		return CoverageSummary.of(parsedFiles.getAll());
+	}
+
+	/**
+	 * Logs the overall coverage rate without generating the report.
+	 */
+	public void generateSummary()
+	{
+		Level previousLevel = ReportLogLevel.begin(logLevel);
+		try
 		{
-			NumberFormat formatter = new DecimalFormat("0.0");
-			String rateFormatted = formatter.format(rate * 100);
-			String[] info = new String[]{prefix, rateFormatted, String.valueOf(hit), String.valueOf(count), type};
-			LOGGER.log(Level.INFO, "\t{0}: {1}% ({2} of {3} {4})", info);
+			loggerSummary(getSummary());
 		}
-		else
+		finally
+		{
+			ReportLogLevel.end(logLevel, previousLevel);
+		}
+	}
+
+	/**
+	 * Checks the parsed data against the coverage thresholds in the config, without writing anything.
+	 * Directories are totalled in the same way as their index pages.
+	 * @return A message for each threshold which was not met, empty if coverage is good enough.
+	 */
+	public List<String> checkThresholds()
+	{
+		List<String> result = new ArrayList<>();
+		CoverageThreshold threshold = config.getThreshold();
+		CoverageThreshold dirThreshold = config.getDirThreshold();
+		if(threshold != null)
+		{
+			result.addAll(threshold.check("Overall", getSummary()));
+		}
+		if(dirThreshold != null)
 		{
-			LOGGER.log(Level.INFO, "\t{0}: no data found", type);
+			Map<String, CoverageSummary> dirs = new TreeMap<>();
+			for(TestCaseSourceFile sourceFile : parsedFiles.getAll())
+			{
+				String path = sourceFile.getPath();
+				CoverageSummary dir = dirs.get(path);
+				if(dir == null)
+				{
+					dir = new CoverageSummary();
+					dirs.put(path, dir);
+				}
+				dir.add(sourceFile);
+			}
+			for(Map.Entry<String, CoverageSummary> dir : dirs.entrySet())
+			{
+				result.addAll(dirThreshold.check("Directory " + dir.getKey(), dir.getValue()));
+			}
 		}
+		return result;
 	}
 
 	/**
 	 * Generates required resources in the output directory (CSS etc).
 	 */
-	private static void generateResources() throws IOException
+	private void generateResources() throws IOException
 	{
 		File outRootDir = config.getOutRootDir();
 		File docsRootDir;
@@ -344,28 +593,48 @@ public final class CoverageReport
 			{
 				JGenHtmlUtils.writeResource("index.html", outRootDir, Config.DEFAULT_HTML_EXT, ext);
 			}
+			resourceWritten(new File(outRootDir, "index.html"));
 		}
 	}
 
-	private static void generateResourcesInDocRoot(final File docRootDir, final boolean asXml) throws IOException
+	private void generateResourcesInDocRoot(final File docRootDir, final boolean asXml) throws IOException
 	{
 		File cssFile = config.getCssFile();
 		JGenHtmlUtils.writeResource(JGenHtmlUtils.JS_NAME, docRootDir);
+		resourceWritten(new File(docRootDir, JGenHtmlUtils.JS_NAME));
 		if(cssFile != null)
 		{
 			JGenHtmlUtils.writeResource(cssFile, docRootDir);
+			resourceWritten(new File(docRootDir, cssFile.getName()));
 		}
 		else
 		{
 			JGenHtmlUtils.writeResource(JGenHtmlUtils.CSS_NAME, docRootDir);
+			resourceWritten(new File(docRootDir, JGenHtmlUtils.CSS_NAME));
 		}
 		if(asXml)
 		{
 			JGenHtmlUtils.writeResource(JGenHtmlUtils.XSLT_NAME, docRootDir);
+			resourceWritten(new File(docRootDir, JGenHtmlUtils.XSLT_NAME));
 		}
 		else if(config.isGzip())
 		{
 			FileUtils.writeStringToFile(new File(docRootDir,".htaccess"), "AddEncoding x-gzip " + config.getHtmlExt());
+			resourceWritten(new File(docRootDir,".htaccess"));
+		}
+	}
+
+	/**
+	 * Called once a resource has been written to the output directory to write its gzip copy, if the user wants
+	 * them, and to count its bytes in the metrics.
+	 * @param resource The resource in the output directory.
+	 */
+	private void resourceWritten(final File resource) throws IOException
+	{
+		JGenHtmlUtils.writeGzipCopy(resource, config, metrics);  // the copy counts itself
+		if(metrics != null)
+		{
+			metrics.addBytes(resource.length());
 		}
 	}
 
@@ -374,37 +643,38 @@ public final class CoverageReport
 		if(this.descriptionsPage != null)
 		{
 			LOGGER.log(Level.INFO, "Writing test case description file.");
-			this.descriptionsPage.writeToFileSystem(config.getOutRootDir(), false);
+			this.descriptionsPage.writeToFileSystem(config, metrics, false);
 			if(!config.isHtmlOnly())
 			{
-				this.descriptionsPage.writeToFileSystem(config.getOutRootDir(), true);
+				this.descriptionsPage.writeToFileSystem(config, metrics, true);
 			}
 		}
 	}
 
 	/**
 	 * Generates index pages in output directory.
+	 * @param pool The pool to write the pages with or null to write them on this thread.
+	 * @param manifest The hashes from the last run, to skip unchanged pages, or null to write every page.
 	 * @throws TransformerException
 	 */
-	private void generateIndexFiles() throws TransformerException, IOException
+	private void generateIndexFiles(final ExecutorService pool, final ReportManifest manifest) throws TransformerException, IOException
 	{
-		for(TestCaseIndexPage index : indexPages)
-		{
-			index.writeToFileSystem();
-		}
+		writePages((manifest != null)? manifest.getChanged(indexPages) : indexPages, pool, false);
 	}
 
 	/**
 	 * Generate line coverage report pages in the output directory.
-	 * @return Index pages required to reference the coverage reports.
+	 * The index pages are populated on this thread, in a fixed order, before any page is written.
+	 * @param pool The pool to write the pages with or null to write them on this thread.
+	 * @param manifest The hashes from the last run, to skip unchanged pages, or null to write every page.
 	 * @throws TransformerException
 	 */
-	private void generateCoverageReports() throws TransformerException, IOException, ParserConfigurationException
+	private void generateCoverageReports(final ExecutorService pool, final ReportManifest manifest) throws TransformerException, IOException, ParserConfigurationException
 	{
 		Map<String, TestCaseIndexPage> indices = new HashMap<>();
-		for(TestCaseSourceFile testCaseSourceFile : parsedFiles.getAll())
+		Collection<TestCaseSourceFile> sourceFiles = parsedFiles.getAll();
+		for(TestCaseSourceFile testCaseSourceFile : sourceFiles)
 		{
-			LOGGER.log(Level.INFO, "Writing report for {0}", testCaseSourceFile.getPageName());
 			String path = testCaseSourceFile.getPath();
 			if(!indices.containsKey(path))
 			{
@@ -419,9 +689,124 @@ public final class CoverageReport
 			}
 			TestCaseIndexPage indexPage = indices.get(path);
 			indexPage.addSourceFile(testCaseSourceFile);
-			testCaseSourceFile.writeToFileSystem();
 		}
 		indexPages = indices.values();
+		writePages((manifest != null)? manifest.getChanged(sourceFiles) : sourceFiles, pool, true);
+	}
+
+	/**
+	 * Creates a pool used to write pages.
+	 * @param threads The number of threads requested by the user.
+	 * @param namePrefix The prefix for the names of the pool threads.
+	 * @return A thread pool or null if pages should be written on the calling thread.
+	 */
+	private static ExecutorService createPool(final int threads, final String namePrefix)
+	{
+		ExecutorService result = null;
+		if(threads > 1)
+		{
+			LOGGER.log(Level.FINE, "Using {0} threads", threads);
+			result = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Writes pages to the file system.
+	 * Each page writes only its own files, so pages can safely be written concurrently.
+	 * @param pages The pages to write.
+	 * @param pool The pool to write the pages with or null to write them on this thread.
+	 * @param logName If true log the name of each page as it is written.
+	 * @throws TransformerException If a page could not be transformed.
+	 * @throws IOException If a page could not be written.
+	 */
+	private void writePages(final Collection<? extends CoveragePage> pages, final ExecutorService pool, final boolean logName) throws TransformerException, IOException
+	{
+		if(pool == null)
+		{
+			for(CoveragePage page : pages)
+			{
+				writePage(page, logName);
+			}
+		}
+		else
+		{
+			List<Future<Void>> results = new ArrayList<>(pages.size());
+			for(final CoveragePage page : pages)
+			{
+				results.add(pool.submit(ReportLogLevel.wrap(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						writePage(page, logName);
+						return null;
+					}
+				}, logLevel)));
+			}
+			try
+			{
+				for(Future<Void> result : results)
+				{
+					result.get();
+				}
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing pages", ex);
+			}
+			catch(ExecutionException ex)
+			{
+				Throwable cause = unwrap(ex);
+				if(cause instanceof TransformerException)
+				{
+					throw (TransformerException)cause;
+				}
+				throw (cause instanceof IOException)? (IOException)cause : new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Gets the exception thrown by a task run on a pool, unchecked exceptions are rethrown as they are.
+	 * @param ex The exception thrown by Future.get.
+	 * @return The checked exception thrown by the task.
+	 */
+	private static Throwable unwrap(final ExecutionException ex)
+	{
+		Throwable result = ex.getCause();
+		if(result instanceof RuntimeException)
+		{
+			throw (RuntimeException)result;
+		}
+		else if(result instanceof Error)
+		{
+			throw (Error)result;
+		}
+		return result;
+	}
+
+	private void writePage(final CoveragePage page, final boolean logName) throws TransformerException, IOException
+	{
+		if(logName)
+		{
+			LOGGER.log(Level.INFO, "Writing report for {0}", page.getPageName());
+		}
+		Object event = ReportEvents.getInstance().beginPage();
+		page.writeToFileSystem(config, metrics);
+		ReportEvents.getInstance().endPage(event, page, config);
 	}
 
 	/**
@@ -451,7 +836,7 @@ public final class CoverageReport
 	 * @param testCaseSourceFiles The source files we are processing.
 	 * @return The prefix to remove or null (if the user specified not to remove prefixes).
 	 */
-	private static String getPrefix(final Collection<TestCaseSourceFile> testCaseSourceFiles)
+	private String getPrefix(final Collection<TestCaseSourceFile> testCaseSourceFiles)
 	{
 		String result;
 		if(config.isNoPrefix())
@@ -478,13 +863,98 @@ public final class CoverageReport
 		return result;
 	}
 
+	/**
+	 * Sets the config used by reports created with the deprecated constructor.
+	 * @param config The user preferences.
+	 * @deprecated Pass the config to Builder instead.
+	 */
+	@Deprecated
 	public static void setConfig(Config config)
 	{
-		CoverageReport.config = config;
+		CoverageReport.defaultConfig = config;
 	}
 
+	/**
+	 * @return The config set with setConfig.
+	 * @deprecated Each report has its own config, see Builder.
+	 */
+	@Deprecated
 	public static Config getConfig()
 	{
-		return config;
+		return defaultConfig;
+	}
+
+	/**
+	 * Creates reports. Every report gets its own config, parsed data, test names and log level (--quiet), so reports
+	 * built by separate builders can be generated at the same time, for example by Maven modules built in parallel.
+	 * Reports only share the compiled stylesheet and, if one is set, the pool.
+	 * <pre>
+	 * CoverageReport report = new CoverageReport.Builder(config).addTraceFile("app.info").build();
+	 * report.generateReports();
+	 * </pre>
+	 */
+	public static final class Builder
+	{
+		private final Config config;
+		private final List<String> traceFiles;
+		private ExecutorService pool;
+
+		/**
+		 * @param config The user preferences for the report, it should not be changed once the report is built.
+		 */
+		public Builder(final Config config)
+		{
+			if(config == null)
+			{
+				throw new IllegalArgumentException("config must not be null");
+			}
+			this.config = config;
+			this.traceFiles = new ArrayList<>();
+		}
+
+		/**
+		 * @param traceFile The path to a tracefile to include in the report.
+		 * @return This builder.
+		 */
+		public Builder addTraceFile(final String traceFile)
+		{
+			traceFiles.add(traceFile);
+			return this;
+		}
+
+		/**
+		 * @param traceFiles Paths to tracefiles to include in the report.
+		 * @return This builder.
+		 */
+		public Builder addTraceFiles(final String... traceFiles)
+		{
+			this.traceFiles.addAll(Arrays.asList(traceFiles));
+			return this;
+		}
+
+		/**
+		 * Reads and writes with a pool which outlives the report rather than one created for each report,
+		 * it is only used if the config asks for more than one thread and it is not shut down by the report.
+		 * @param pool The pool to share, or null to create one as needed.
+		 * @return This builder.
+		 */
+		public Builder setPool(final ExecutorService pool)
+		{
+			this.pool = pool;
+			return this;
+		}
+
+		/**
+		 * Parses the tracefiles, the baseline and the descriptions file.
+		 * If no tracefiles have been added the tracefiles given on the command line in the config are used.
+		 * @return The report, ready to be generated.
+		 * @throws IOException If a file could not be read.
+		 * @throws ParserConfigurationException If a page could not be created.
+		 */
+		public CoverageReport build() throws IOException, ParserConfigurationException
+		{
+			String[] files = traceFiles.isEmpty()? config.getTraceFiles() : traceFiles.toArray(new String[traceFiles.size()]);
+			return new CoverageReport(config, (files == null)? new String[0] : files, pool);
+		}
 	}
 }
@@ -0,0 +1,185 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The line, function and branch totals of a set of pages, the numbers shown as "Overall coverage rate".
+ * Works from the numbers the pages already hold, so it does not need any page to be written.
+ * @author Rick Brown
+ */
+public final class CoverageSummary
+{
+	private int lineCount = 0;
+	private int lineHit = 0;
+	private int funcCount = 0;
+	private int funcHit = 0;
+	private int branchCount = 0;
+	private int branchHit = 0;
+
+	CoverageSummary()
+	{
+	}
+
+	/**
+	 * Totals the numbers of some pages.
+	 * @param pages The pages to total, for example every source file in the report.
+	 * @return The totals.
+	 */
+	static CoverageSummary of(final Iterable<? extends CoveragePage> pages)
+	{
+		CoverageSummary result = new CoverageSummary();
+		for(CoveragePage page : pages)
+		{
+			result.add(page);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the numbers of a page to the totals, in the same way an index page adds the pages it indexes.
+	 * @param page The page to add.
+	 */
+	void add(final CoveragePage page)
+	{
+		lineCount += Math.max(0, page.getLineCount());
+		lineHit += Math.max(0, page.getLineHit());
+		funcCount += Math.max(0, page.getFuncCount());
+		funcHit += Math.max(0, page.getFuncHit());
+		branchCount += Math.max(0, page.getBranchCount());
+		branchHit += Math.max(0, page.getBranchHit());
+	}
+
+	public int getLineCount()
+	{
+		return lineCount;
+	}
+
+	public int getLineHit()
+	{
+		return lineHit;
+	}
+
+	public int getFuncCount()
+	{
+		return funcCount;
+	}
+
+	public int getFuncHit()
+	{
+		return funcHit;
+	}
+
+	public int getBranchCount()
+	{
+		return branchCount;
+	}
+
+	public int getBranchHit()
+	{
+		return branchHit;
+	}
+
+	public float getLineRate()
+	{
+		return getCoveredRate(lineHit, lineCount);
+	}
+
+	public float getFunctionRate()
+	{
+		return getCoveredRate(funcHit, funcCount);
+	}
+
+	public float getBranchRate()
+	{
+		return getCoveredRate(branchHit, branchCount);
+	}
+
+	/**
+	 * Logs the totals in the same format as genhtml prints its overall coverage rate.
+	 * @param logger The logger to log to.
+	 */
+	void log(final Logger logger)
+	{
+		logger.log(Level.INFO, "Overall coverage rate:");
+		log(logger, "lines", getLineRate(), lineHit, lineCount);
+		log(logger, "functions", getFunctionRate(), funcHit, funcCount);
+		log(logger, "branches", getBranchRate(), branchHit, branchCount);
+	}
+
+	/**
+	 * Log a summary of the coverage information.
+	 * @param logger The logger to log to.
+	 * @param type The type of coverage: "lines", "functions" or "branches".
+	 * @param rate The coverage rate.
+	 * @param hit The execution count.
+	 * @param count The executable count.
+	 */
+	private static void log(final Logger logger, final String type, final float rate, final int hit, final int count)
+	{
+		String prefix = String.format("%1$-11s", type);
+		prefix = prefix.replace(" ", ".");
+		if(count > 0)
+		{
+			NumberFormat formatter = new DecimalFormat("0.0");
+			String rateFormatted = formatter.format(rate * 100);
+			String[] info = new String[]{prefix, rateFormatted, String.valueOf(hit), String.valueOf(count), type};
+			logger.log(Level.INFO, "\t{0}: {1}% ({2} of {3} {4})", info);
+		}
+		else
+		{
+			logger.log(Level.INFO, "\t{0}: no data found", type);
+		}
+	}
+
+	/**
+	 * The totals as a JSON object, for example:
+	 * {"lines":{"hit":634,"found":724,"rate":0.8756906},"functions":{...},"branches":{...}}
+	 * The rate is null when nothing was found.
+	 * @return The JSON text.
+	 */
+	public String toJson()
+	{
+		StringBuilder result = new StringBuilder();
+		result.append('{');
+		appendJson(result, "lines", getLineRate(), lineHit, lineCount).append(',');
+		appendJson(result, "functions", getFunctionRate(), funcHit, funcCount).append(',');
+		appendJson(result, "branches", getBranchRate(), branchHit, branchCount);
+		return result.append('}').toString();
+	}
+
+	private static StringBuilder appendJson(final StringBuilder json, final String type, final float rate, final int hit, final int count)
+	{
+		json.append('"').append(type).append("\":{\"hit\":").append(hit).append(",\"found\":").append(count).append(",\"rate\":");
+		json.append((count > 0)? String.valueOf(rate) : "null");
+		return json.append('}');
+	}
+
+	@Override
+	public String toString()
+	{
+		return toJson();
+	}
+
+	private static float getCoveredRate(final int hit, final int total)
+	{
+		return (float) hit / (float) total;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.text.DecimalFormat;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The minimum line, function and branch coverage, in percent, that a report (or each directory in it) must reach.
+ * Written as a comma separated list, for example "line=80,function=75,branch=50.5". A type which is left out is
+ * not checked, neither is a type with no data.
+ * @author Rick Brown
+ */
+public final class CoverageThreshold
+{
+	private static final String LINE = "line";
+	private static final String FUNCTION = "function";
+	private static final String BRANCH = "branch";
+	private final float line;
+	private final float function;
+	private final float branch;
+
+	private CoverageThreshold(final float line, final float function, final float branch)
+	{
+		this.line = line;
+		this.function = function;
+		this.branch = branch;
+	}
+
+	/**
+	 * Reads thresholds in the form "line=80,function=75,branch=50".
+	 * @param spec The thresholds.
+	 * @return The thresholds.
+	 * @throws IllegalArgumentException If the thresholds are not in the right form or not between 0 and 100.
+	 */
+	public static CoverageThreshold parse(final String spec)
+	{
+		float line = Float.NaN;
+		float function = Float.NaN;
+		float branch = Float.NaN;
+		for(String part : spec.split(","))
+		{
+			String[] pair = part.split("=", 2);
+			if(pair.length != 2)
+			{
+				throw new IllegalArgumentException("Expected type=percent but found " + part.trim());
+			}
+			String type = pair[0].trim();
+			float value = parsePercent(pair[1].trim());
+			if(LINE.equals(type))
+			{
+				line = value;
+			}
+			else if(FUNCTION.equals(type))
+			{
+				function = value;
+			}
+			else if(BRANCH.equals(type))
+			{
+				branch = value;
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown coverage type " + type);
+			}
+		}
+		return new CoverageThreshold(line, function, branch);
+	}
+
+	private static float parsePercent(final String value)
+	{
+		float result = Float.parseFloat(value);
+		if(!(result >= 0 && result <= 100))
+		{
+			throw new IllegalArgumentException("Threshold must be between 0 and 100: " + value);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The minimum line coverage in percent or NaN if line coverage is not checked.
+	 */
+	public float getLine()
+	{
+		return line;
+	}
+
+	/**
+	 * @return The minimum function coverage in percent or NaN if function coverage is not checked.
+	 */
+	public float getFunction()
+	{
+		return function;
+	}
+
+	/**
+	 * @return The minimum branch coverage in percent or NaN if branch coverage is not checked.
+	 */
+	public float getBranch()
+	{
+		return branch;
+	}
+
+	/**
+	 * Checks coverage against these thresholds.
+	 * @param name Describes what is being checked, used in the messages.
+	 * @param summary The coverage to check.
+	 * @return A message for each threshold which was not reached, empty if they were all reached.
+	 */
+	List<String> check(final String name, final CoverageSummary summary)
+	{
+		List<String> result = new ArrayList<>();
+		check(result, name, LINE, line, summary.getLineHit(), summary.getLineCount());
+		check(result, name, FUNCTION, function, summary.getFuncHit(), summary.getFuncCount());
+		check(result, name, BRANCH, branch, summary.getBranchHit(), summary.getBranchCount());
+		return result;
+	}
+
+	private static void check(final List<String> failures, final String name, final String type, final float min, final int hit, final int count)
+	{
+		if(!Float.isNaN(min) && count > 0 && hit * 100.0 < min * (double)count)
+		{
+			DecimalFormat formatter = new DecimalFormat("0.0");
+			failures.add(MessageFormat.format("{0} {1} coverage {2}% ({3} of {4}) is below the minimum of {5}%", name, type,
+					formatter.format(hit * 100.0 / count), hit, count, formatter.format(min)));
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		append(result, LINE, line);
+		append(result, FUNCTION, function);
+		append(result, BRANCH, branch);
+		return result.toString();
+	}
+
+	private static void append(final StringBuilder spec, final String type, final float min)
+	{
+		if(!Float.isNaN(min))
+		{
+			if(spec.length() > 0)
+			{
+				spec.append(',');
+			}
+			spec.append(type).append('=').append(min);
+		}
+	}
+}
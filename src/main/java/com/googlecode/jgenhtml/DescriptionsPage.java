@@ -40,14 +40,28 @@ public class DescriptionsPage
 	private final Set<String> runTests;
 	private boolean ignoreDescriptions;
 
+	/**
+	 * @deprecated Use DescriptionsPage(String, Set, Config), this uses the config set with CoverageReport.setConfig.
+	 */
+	@Deprecated
 	public DescriptionsPage(final String testName, Set<String> runTests) throws ParserConfigurationException
+	{
+		this(testName, runTests, CoverageReport.getConfig());
+	}
+
+	/**
+	 * @param testName The test name shown on the page.
+	 * @param runTests The tests in the tracefiles, descriptions of other tests are dropped unless the user wants to keep them.
+	 * @param config The user preferences of the report this page belongs to.
+	 */
+	public DescriptionsPage(final String testName, Set<String> runTests, final Config config) throws ParserConfigurationException
 	{
 		DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
 		DocumentBuilder docBuilder;
 		docBuilder = dbfac.newDocumentBuilder();
 		this.doc = docBuilder.newDocument();
 		descriptions = doc.createElement("descriptions");
-		if(CoverageReport.getConfig().isKeepDescriptions())
+		if(config.isKeepDescriptions())
 		{
 			this.runTests = null;
 		}
@@ -102,11 +116,42 @@ public class DescriptionsPage
 	 * @param asXml If true, will write XML files (for client side transform) instead of HTML.
 	 * @throws TransformerException If the XSLT gets angry.
 	 * @throws IOException IF there are issues writing to the file system.
+	 * @deprecated Use writeToFileSystem(Config, boolean), this uses the config set with CoverageReport.setConfig.
 	 */
+	@Deprecated
 	public void writeToFileSystem(final File rootDir, final boolean asXml) throws TransformerException, IOException
+	{
+		writeToFileSystem(rootDir, asXml, CoverageReport.getConfig(), null);
+	}
+
+	/**
+	 * Writes this instance to the filesystem as a report page (xml/html).
+	 * @param config The user preferences, which include the root output directory.
+	 * @param asXml If true, will write XML files (for client side transform) instead of HTML.
+	 * @throws TransformerException If the XSLT gets angry.
+	 * @throws IOException IF there are issues writing to the file system.
+	 */
+	public void writeToFileSystem(final Config config, final boolean asXml) throws TransformerException, IOException
+	{
+		writeToFileSystem(config, null, asXml);
+	}
+
+	/**
+	 * Writes this instance to the filesystem as a report page (xml/html).
+	 * @param config The user preferences, which include the root output directory.
+	 * @param metrics The metrics of the report, which count the files written, null if the user does not want metrics.
+	 * @param asXml If true, will write XML files (for client side transform) instead of HTML.
+	 * @throws TransformerException If the XSLT gets angry.
+	 * @throws IOException IF there are issues writing to the file system.
+	 */
+	void writeToFileSystem(final Config config, final ReportMetrics metrics, final boolean asXml) throws TransformerException, IOException
+	{
+		writeToFileSystem(config.getOutRootDir(), asXml, config, metrics);
+	}
+
+	private void writeToFileSystem(final File rootDir, final boolean asXml, final Config config, final ReportMetrics metrics) throws TransformerException, IOException
 	{
 		String tagetFileName = "descriptions";
-		Config config = CoverageReport.getConfig();
 		File outDir = config.isHtmlOnly()? JGenHtmlUtils.getTargetDir(rootDir, "") : JGenHtmlUtils.getTargetDir(rootDir, asXml);
 		File out;
 		if(asXml)
@@ -118,6 +163,6 @@ public class DescriptionsPage
 		{
 			out = new File(outDir, tagetFileName + config.getHtmlExt());
 		}
-		JGenHtmlUtils.transformToFile(out, asXml, doc);
+		JGenHtmlUtils.transformToFile(out, asXml, doc, config, metrics);
 	}
 }
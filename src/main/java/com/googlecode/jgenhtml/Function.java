@@ -34,6 +34,17 @@ public class Function extends SourceCode
 		this.name = name;
 	}
 
+	/**
+	 * Create a new function in a report.
+	 * @param name The function name.
+	 * @param testNames The test names of the report.
+	 */
+	Function(final String name, final TestNames testNames)
+	{
+		super(true, testNames);
+		this.name = name;
+	}
+
 	@Override
 	public Element toXml(Document document)
 	{
@@ -48,6 +59,13 @@ public class Function extends SourceCode
 		return functionElement;
 	}
 
+	@Override
+	void digest(final PageDigest digest)
+	{
+		super.digest(digest);
+		digest.add(name).add(lineNo);
+	}
+
 	public String getName()
 	{
 		return name;
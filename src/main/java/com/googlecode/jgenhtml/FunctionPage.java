@@ -15,6 +15,8 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
@@ -22,7 +24,6 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -36,6 +37,7 @@ public class FunctionPage extends CoveragePage
 	private static final Logger LOGGER = Logger.getLogger(FunctionPage.class.getName());
 	private final TestCaseSourceFile testCaseSourceFile;
 	private final Map<String, Function> functions;
+	private int funcHit = -1;  // negative when it needs to be recalculated
 
 	public FunctionPage(final TestCaseSourceFile testCaseSourceFile) throws ParserConfigurationException
 	{
@@ -45,17 +47,14 @@ public class FunctionPage extends CoveragePage
 	}
 
 	@Override
-	public void writeToFileSystem() throws TransformerException, IOException
+	void appendContent(final Document document, final Element root)
 	{
-		Document document = this.getDoc();
 		Element functionsRoot = document.createElement("functions");
-		Element root = document.getDocumentElement();
 		root.appendChild(functionsRoot);
 		for(Function func : functions.values())
 		{
 			functionsRoot.appendChild(func.toXml(document));
 		}
-		super.writeToFileSystem();
 	}
 
 	Collection<Function> getFunctions()
@@ -96,15 +95,18 @@ public class FunctionPage extends CoveragePage
 	@Override
 	public int getFuncHit()
 	{
-		int result = 0;
-		for(Function function : functions.values())
+		if(funcHit < 0)
 		{
-			if(function.getTotalHits() > 0)
+			funcHit = 0;
+			for(Function function : functions.values())
 			{
-				result++;
+				if(function.getTotalHits() > 0)
+				{
+					funcHit++;
+				}
 			}
 		}
-		return result;
+		return funcHit;
 	}
 
 	/**
@@ -122,7 +124,7 @@ public class FunctionPage extends CoveragePage
 		}
 		else if(!dontCreate)
 		{
-			result = new Function(name);
+			result = new Function(name, testCaseSourceFile.getTestNames());
 			functions.put(name, result);
 		}
 		else
@@ -148,26 +150,13 @@ public class FunctionPage extends CoveragePage
 			String[] data = JGenHtmlUtils.extractLineValues(line);
 			if(data != null && data.length == 2)
 			{
-				String name = data[1];
-				Function function = getFunction(name, isBaseline);
-				if(function != null)
+				if(isFn)
+				{
+					addFunctionLine(data[1], data[0]);
+				}
+				else
 				{
-					if(isFn)
-					{
-						function.setLineNo(data[0]);
-					}
-					else
-					{
-						int hits = Integer.parseInt(data[0]);
-						if(isBaseline)
-						{
-							function.setHits(testCaseName, function.getHits(testCaseName) - hits);
-						}
-						else
-						{
-							function.setHits(testCaseName, function.getHits(testCaseName) + hits);
-						}
-					}
+					addFunctionHits(testCaseSourceFile.getTestNames().getId(testCaseName), data[1], Integer.parseInt(data[0]), isBaseline);
 				}
 			}
 			else
@@ -176,4 +165,92 @@ public class FunctionPage extends CoveragePage
 			}
 		}
 	}
+
+	/**
+	 * Sets the line a function starts on, creating the function if need be.
+	 * @param name The function name.
+	 * @param lineNo The line number of the function start.
+	 */
+	void addFunctionLine(final String name, final String lineNo)
+	{
+		funcHit = -1;
+		getFunction(name, false).setLineNo(lineNo);
+	}
+
+	/**
+	 * Adds to the execution count of a function.
+	 * @param testCaseId The id of the test case to add function data to.
+	 * @param name The function name.
+	 * @param hits The execution count.
+	 * @param isBaseline true if this is coming from a baseline file, in which case unknown functions are ignored.
+	 */
+	void addFunctionHits(final int testCaseId, final String name, final int hits, final boolean isBaseline)
+	{
+		Function function = getFunction(name, isBaseline);
+		if(function != null)
+		{
+			funcHit = -1;
+			function.addHits(testCaseId, isBaseline? -hits : hits);
+		}
+	}
+
+	/**
+	 * Writes the functions and their hit counts to a parse cache entry.
+	 * @param out The entry being written.
+	 * @throws IOException If the entry could not be written.
+	 */
+	void writeCoverage(final DataOutput out) throws IOException
+	{
+		out.writeInt(functions.size());
+		for(Function function : functions.values())
+		{
+			String lineNo = function.getLineNo();
+			out.writeUTF(function.getName());
+			out.writeBoolean(lineNo != null);
+			if(lineNo != null)
+			{
+				out.writeUTF(lineNo);
+			}
+			function.writeHits(out);
+		}
+	}
+
+	/**
+	 * Reads functions written by writeCoverage.
+	 * @param in The entry being read.
+	 * @param testIds Maps the test ids in the entry to the ids of the test names of the report.
+	 * @throws IOException If the entry could not be read.
+	 */
+	void readCoverage(final DataInput in, final int[] testIds) throws IOException
+	{
+		funcHit = -1;
+		int count = in.readInt();
+		for(int i = 0; i < count; i++)
+		{
+			Function function = getFunction(in.readUTF(), false);
+			if(in.readBoolean())
+			{
+				function.setLineNo(in.readUTF());
+			}
+			function.readHits(in, testIds);
+		}
+	}
+
+	/**
+	 * Adds the function data from another function page for the same source file.
+	 * @param other The function page to merge into this one.
+	 */
+	void merge(final FunctionPage other)
+	{
+		funcHit = -1;
+		for(Function otherFunction : other.getFunctions())
+		{
+			Function function = getFunction(otherFunction.getName(), false);
+			if(otherFunction.getLineNo() != null)
+			{
+				function.setLineNo(otherFunction.getLineNo());
+			}
+			function.merge(otherFunction);
+		}
+	}
 }
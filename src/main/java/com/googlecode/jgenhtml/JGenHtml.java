@@ -15,7 +15,10 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
@@ -35,53 +38,161 @@ public class JGenHtml
 	}
 	public static final String VERSION = "1.6";  // todo find a sensible way to get this from the pom
 
+	/**
+	 * Status returned by run when everything went to plan.
+	 */
+	public static final int STATUS_OK = 0;
+	/**
+	 * Status returned by run when coverage is below the thresholds, this is also the exit code.
+	 */
+	public static final int STATUS_BELOW_THRESHOLD = 1;
+	/**
+	 * Status returned by run when jgenhtml could not do what was asked, for example the daemon could not start.
+	 */
+	public static final int STATUS_ERROR = 2;
+
 	/**
 	 * Run jgenhtml.
+	 * Exits with STATUS_BELOW_THRESHOLD when coverage is below the thresholds.
 	 * @param argv Arguments (viewable by running with -h switch).
 	 */
 	public static void main(final String[] argv)
 	{
+		int status = run(argv);
+		if(status != STATUS_OK)
+		{
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Run jgenhtml without exiting, for callers which share the JVM such as the Maven and Ant plugins.
+	 * @param argv Arguments (viewable by running with -h switch).
+	 * @return STATUS_OK, STATUS_BELOW_THRESHOLD or STATUS_ERROR.
+	 */
+	public static int run(final String[] argv)
+	{
+		return run(argv, null, null);
+	}
 
+	/**
+	 * Run jgenhtml without exiting.
+	 * @param argv Arguments (viewable by running with -h switch).
+	 * @param workingDir The directory relative paths are resolved against, null for the current directory.
+	 * @param pool The pool reports share when they use more than one thread, null if this is not the daemon.
+	 * @return STATUS_OK, STATUS_BELOW_THRESHOLD or STATUS_ERROR.
+	 */
+	static int run(final String[] argv, final File workingDir, final ExecutorService pool)
+	{
+		int result = STATUS_OK;
 		Config config = new Config();
 		try
 		{
-			config.initializeUserPrefs(argv);
-			if(config.isHelp())
+			config.initializeUserPrefs(argv, workingDir);
+			Level logLevel = config.getLogLevel();
+			Level previousLevel = ReportLogLevel.begin(logLevel);
+			try
+			{
+				result = run(config, pool);
+			}
+			finally
+			{
+				ReportLogLevel.end(logLevel, previousLevel);
+			}
+		}
+		catch (IOException | ParserConfigurationException ex)
+		{
+			LOGGER.log(Level.SEVERE, null, ex);
+			result = STATUS_ERROR;
+		}
+		catch (ParseException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+			result = STATUS_ERROR;
+		}
+		return result;
+	}
+
+	/**
+	 * Does what the user asked for, logging at the level of the report.
+	 * @param config The user preferences.
+	 * @param pool The pool reports share when they use more than one thread, null if this is not the daemon.
+	 * @return STATUS_OK, STATUS_BELOW_THRESHOLD or STATUS_ERROR.
+	 */
+	private static int run(final Config config, final ExecutorService pool) throws IOException, ParserConfigurationException
+	{
+		int result = STATUS_OK;
+		if(config.isHelp())
+		{
+			config.showCmdLineHelp();
+		}
+		else if(config.isVersion())
+		{
+			System.out.println("jgenhtml version " + VERSION);
+		}
+		else if(config.isDaemon() || config.isDaemonStop())
+		{
+			if(pool != null)
 			{
-				config.showCmdLineHelp();
+				LOGGER.log(Level.WARNING, "The jgenhtml daemon is already running.");
 			}
-			else if(config.isVersion())
+			else if(config.isDaemon())
 			{
-				System.out.println("jgenhtml version " + VERSION);
+				result = JGenHtmlDaemon.start(config, JGenHtmlDaemon.getStateFile());
 			}
 			else
 			{
-				String[] traceFiles = config.getTraceFiles();
-				if(traceFiles.length > 0)
+				result = JGenHtmlDaemon.stop(JGenHtmlDaemon.getStateFile());
+			}
+		}
+		else
+		{
+			String[] traceFiles = config.getTraceFiles();
+			if(traceFiles.length > 0)
+			{
+				CoverageReport coverageReport = new CoverageReport.Builder(config).addTraceFiles(traceFiles).setPool(pool).build();
+				if(coverageReport.getPageCount() > 0)
 				{
-					CoverageReport.setConfig(config);
-					CoverageReport coverageReport = new CoverageReport(traceFiles);
-					if(coverageReport.getPageCount() > 0)
+					LOGGER.log(Level.INFO, "Found {0} entries.", coverageReport.getPageCount());
+					List<String> failures = coverageReport.checkThresholds();  // before anything is written
+					for(String failure : failures)
+					{
+						LOGGER.log(Level.SEVERE, failure);
+					}
+					if(!failures.isEmpty())
+					{
+						result = STATUS_BELOW_THRESHOLD;
+					}
+					if(result != STATUS_OK && config.isFailFast())
+					{
+						LOGGER.log(Level.SEVERE, "Coverage is below the thresholds, not generating the report.");
+					}
+					else if(config.isSummaryOnly())
+					{
+						coverageReport.generateSummary();
+					}
+					else
 					{
-						LOGGER.log(Level.INFO, "Found {0} entries.", coverageReport.getPageCount());
 						coverageReport.generateReports();
 					}
 				}
 				else
 				{
-					LOGGER.log(Level.INFO, "jgenhtml: No filename specified");
-					LOGGER.log(Level.INFO, "Use jgenhtml --help to get usage information");
+					LOGGER.log(Level.SEVERE, "jgenhtml: No coverage data found");
+					result = STATUS_ERROR;
+				}
+				if(config.isSummaryJson())
+				{
+					System.out.println(coverageReport.getSummary().toJson());
 				}
 			}
+			else
+			{
+				LOGGER.log(Level.INFO, "jgenhtml: No filename specified");
+				LOGGER.log(Level.INFO, "Use jgenhtml --help to get usage information");
+			}
 		}
-		catch (IOException | ParserConfigurationException ex)
-		{
-			LOGGER.log(Level.SEVERE, null, ex);
-		}
-		catch (ParseException ex)
-		{
-			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
-		}
+		return result;
 	}
 
 
@@ -0,0 +1,704 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps a JVM running, with the stylesheet compiled and a pool of threads started, to generate reports for
+ * the jgenhtml wrapper script. This saves starting a JVM for every report which, for small reports, takes
+ * longer than the report itself.
+ *
+ * The daemon listens on a loopback port. The port and a random token are written to a state file which only
+ * the user can read; a request must start with the token so that other users can not run reports as this user.
+ * A request is the protocol name, the token, the client's working directory, the number of arguments and the
+ * arguments, each followed by a NUL. The reply is lines prefixed with "o " (standard output) or "e " (standard
+ * error) and finally "x " and the exit status.
+ * @author Rick Brown
+ */
+public final class JGenHtmlDaemon
+{
+	private static final Logger LOGGER = Logger.getLogger(JGenHtmlDaemon.class.getName());
+	static{
+		JGenHtmlUtils.setLogFormatter(LOGGER);
+	}
+	static final String PROTOCOL = "JGENHTML1";
+	/**
+	 * The environment variable which overrides the location of the state file.
+	 */
+	public static final String STATE_FILE_ENV = "JGENHTML_DAEMON_FILE";
+	/**
+	 * Returned by forward when there is no daemon to forward to.
+	 */
+	static final int NOT_RUNNING = -1;
+	private static final String STOP_ARG = "--" + Config.CmdLineArg.DAEMON_STOP;
+	private static final int MAX_FIELD_LENGTH = 64 * 1024;
+	private static final int MAX_ARGS = 4096;
+	private static final int REQUEST_TIMEOUT = 10000;  // milliseconds to send the request in
+	private static final InheritableThreadLocal<Client> CLIENT = new InheritableThreadLocal<>();
+	private static boolean routing = false;
+	private final File stateFile;
+	private final ServerSocket server;
+	private final String token;
+	private final ExecutorService requests;
+	private final ExecutorService workers;
+
+	/**
+	 * Binds a loopback port for a daemon, it does not accept requests until serve is called.
+	 * @param stateFile Where to write the port and token for clients.
+	 * @param threads The number of requests run at once and the number of threads the reports share.
+	 * @throws IOException If the port could not be bound.
+	 */
+	JGenHtmlDaemon(final File stateFile, final int threads) throws IOException
+	{
+		this.stateFile = stateFile;
+		this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for(byte b : random)
+		{
+			hex.append(String.format("%02x", b));
+		}
+		this.token = hex.toString();
+		this.requests = Executors.newFixedThreadPool(threads, new NamedThreadFactory("jgenhtml-daemon-"));
+		this.workers = new ClientExecutor(Executors.newFixedThreadPool(threads, new NamedThreadFactory("jgenhtml-worker-")));
+	}
+
+	/**
+	 * The state file clients find the daemon with, JGENHTML_DAEMON_FILE or .jgenhtml/daemon in the home directory.
+	 * @return The state file, which may not exist.
+	 */
+	static File getStateFile()
+	{
+		String path = System.getenv(STATE_FILE_ENV);
+		return (path != null && !path.isEmpty())? new File(path) : new File(new File(System.getProperty("user.home"), ".jgenhtml"), "daemon");
+	}
+
+	/**
+	 * Runs a daemon until it is stopped.
+	 * @param config The user preferences, the number of threads is used for the daemon.
+	 * @param stateFile Where to write the port and token for clients.
+	 * @return STATUS_OK once stopped, or STATUS_ERROR if it could not start.
+	 */
+	static int start(final Config config, final File stateFile)
+	{
+		int result = JGenHtml.STATUS_OK;
+		try
+		{
+			if(isRunning(stateFile))
+			{
+				LOGGER.log(Level.SEVERE, "A jgenhtml daemon is already running, see {0}", stateFile.getAbsolutePath());
+				result = JGenHtml.STATUS_ERROR;
+			}
+			else
+			{
+				final JGenHtmlDaemon daemon = new JGenHtmlDaemon(stateFile, Math.max(config.getThreads(), Runtime.getRuntime().availableProcessors()));
+				Runtime.getRuntime().addShutdownHook(new Thread()
+				{
+					@Override
+					public void run()
+					{
+						daemon.stop();
+					}
+				});
+				daemon.serve();
+			}
+		}
+		catch(IOException ex)
+		{
+			LOGGER.log(Level.SEVERE, ex.getLocalizedMessage());
+			result = JGenHtml.STATUS_ERROR;
+		}
+		return result;
+	}
+
+	/**
+	 * Asks the running daemon, if there is one, to stop.
+	 * @param stateFile The state file of the daemon.
+	 * @return STATUS_OK, or STATUS_ERROR if the daemon could not be asked.
+	 */
+	static int stop(final File stateFile)
+	{
+		int result = forward(stateFile, new File("."), new String[]{STOP_ARG}, System.out, System.err);
+		if(result == NOT_RUNNING)
+		{
+			LOGGER.log(Level.INFO, "No jgenhtml daemon is running.");
+			result = JGenHtml.STATUS_OK;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the state file then accepts requests until the daemon is stopped.
+	 * @throws IOException If the state file could not be written.
+	 */
+	void serve() throws IOException
+	{
+		routeStandardStreams();
+		StylesheetCache.getTemplates();  // compile it now rather than on the first request
+		writeStateFile();
+		LOGGER.log(Level.INFO, "jgenhtml daemon listening on port {0}", Integer.toString(server.getLocalPort()));
+		try
+		{
+			while(!server.isClosed())
+			{
+				try
+				{
+					final Socket socket = server.accept();
+					requests.execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							handle(socket);
+						}
+					});
+				}
+				catch(SocketException ex)
+				{
+					LOGGER.log(Level.FINE, "Stopped accepting requests: {0}", ex.getLocalizedMessage());
+				}
+			}
+			requests.shutdown();
+			requests.awaitTermination(1, TimeUnit.MINUTES);  // let requests in progress finish
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			stop();
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops accepting requests and removes the state file, requests in progress are finished.
+	 */
+	void stop()
+	{
+		try
+		{
+			server.close();
+		}
+		catch(IOException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+		}
+		try
+		{
+			if(stateFile.exists() && FileUtils.readFileToString(stateFile, "UTF-8").contains(token))  // not a newer daemon's
+			{
+				Files.delete(stateFile.toPath());
+			}
+		}
+		catch(IOException ex)
+		{
+			LOGGER.log(Level.WARNING, ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * The port the daemon listens on.
+	 * @return The port.
+	 */
+	int getPort()
+	{
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Writes the port and token to the state file, which only the user may read.
+	 */
+	private void writeStateFile() throws IOException
+	{
+		File dir = stateFile.getAbsoluteFile().getParentFile();
+		if(!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Could not create " + dir.getAbsolutePath());
+		}
+		File temp = new File(dir, stateFile.getName() + ".tmp");
+		Files.deleteIfExists(temp.toPath());
+		try
+		{
+			Files.createFile(temp.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		catch(UnsupportedOperationException ex)
+		{
+			Files.createFile(temp.toPath());  // not a posix file system, make it private as best we can
+			temp.setReadable(false, false);
+			temp.setReadable(true, true);
+		}
+		FileUtils.writeStringToFile(temp, server.getLocalPort() + "\n" + token + "\n", "UTF-8");
+		Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a request, runs it and sends the output and exit status back to the client.
+	 * @param socket The connection to the client.
+	 */
+	private void handle(final Socket socket)
+	{
+		try(Socket client = socket)
+		{
+			client.setSoTimeout(REQUEST_TIMEOUT);
+			InputStream in = new BufferedInputStream(client.getInputStream());
+			if(PROTOCOL.equals(readField(in)) && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), readField(in).getBytes(StandardCharsets.UTF_8)))
+			{
+				File workingDir = new File(readField(in));
+				int argc = Integer.parseInt(readField(in));
+				if(argc < 0 || argc > MAX_ARGS)
+				{
+					throw new IOException("Too many arguments: " + argc);
+				}
+				String[] argv = new String[argc];
+				for(int i = 0; i < argc; i++)
+				{
+					argv[i] = readField(in);
+				}
+				client.setSoTimeout(0);  // reports take as long as they take
+				OutputStream out = new BufferedOutputStream(client.getOutputStream());
+				int status = run(workingDir, argv, out);
+				writeLine(out, 'x', Integer.toString(status).getBytes(StandardCharsets.UTF_8));
+			}
+			else
+			{
+				LOGGER.log(Level.WARNING, "Ignoring a request without the right token.");
+			}
+		}
+		catch(IOException | NumberFormatException ex)
+		{
+			LOGGER.log(Level.WARNING, "Could not handle a request: {0}", ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Runs jgenhtml for a client, with standard output, standard error and the log sent to the client.
+	 * @return The exit status.
+	 */
+	private int run(final File workingDir, final String[] argv, final OutputStream out)
+	{
+		int result;
+		Client client = new Client(out);
+		CLIENT.set(client);  // inherited by threads started for this request
+		try
+		{
+			List<String> args = Arrays.asList(argv);
+			if(args.contains(STOP_ARG))
+			{
+				LOGGER.log(Level.INFO, "Stopping the jgenhtml daemon.");
+				stop();
+				result = JGenHtml.STATUS_OK;
+			}
+			else
+			{
+				result = JGenHtml.run(argv, workingDir, workers);
+			}
+		}
+		catch(RuntimeException ex)
+		{
+			LOGGER.log(Level.SEVERE, null, ex);
+			result = JGenHtml.STATUS_ERROR;
+		}
+		finally
+		{
+			CLIENT.remove();
+			client.flush();
+		}
+		return result;
+	}
+
+	/**
+	 * Sends a request to the running daemon and copies its output, as the wrapper script does.
+	 * @param stateFile The state file of the daemon.
+	 * @param workingDir The directory relative paths are resolved against.
+	 * @param argv Arguments (viewable by running with -h switch).
+	 * @param out Where the daemon's standard output is copied.
+	 * @param err Where the daemon's standard error is copied.
+	 * @return The exit status, or NOT_RUNNING if there is no daemon running.
+	 */
+	static int forward(final File stateFile, final File workingDir, final String[] argv, final OutputStream out, final OutputStream err)
+	{
+		int result = NOT_RUNNING;
+		try
+		{
+			String[] state = stateFile.exists()? FileUtils.readFileToString(stateFile, "UTF-8").split("\n") : new String[0];
+			if(state.length >= 2)
+			{
+				try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state[0].trim())))
+				{
+					result = JGenHtml.STATUS_ERROR;  // unless the daemon says otherwise
+					OutputStream request = new BufferedOutputStream(socket.getOutputStream());
+					writeField(request, PROTOCOL);
+					writeField(request, state[1].trim());
+					writeField(request, workingDir.getAbsolutePath());
+					writeField(request, Integer.toString(argv.length));
+					for(String arg : argv)
+					{
+						writeField(request, arg);
+					}
+					request.flush();
+					InputStream in = new BufferedInputStream(socket.getInputStream());
+					ByteArrayOutputStream line = new ByteArrayOutputStream();
+					int b;
+					while((b = in.read()) >= 0)
+					{
+						if(b != '\n')
+						{
+							line.write(b);
+						}
+						else if(line.size() >= 2)
+						{
+							byte[] bytes = line.toByteArray();
+							if(bytes[0] == 'x')
+							{
+								result = Integer.parseInt(new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_8));
+							}
+							else
+							{
+								OutputStream target = (bytes[0] == 'e')? err : out;
+								target.write(bytes, 2, bytes.length - 2);
+								target.write('\n');
+								target.flush();
+							}
+							line.reset();
+						}
+					}
+				}
+			}
+		}
+		catch(ConnectException ex)
+		{
+			LOGGER.log(Level.FINE, "No daemon at {0}", stateFile.getAbsolutePath());
+		}
+		catch(IOException | NumberFormatException ex)
+		{
+			LOGGER.log(Level.WARNING, "Could not talk to the daemon: {0}", ex.getLocalizedMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if a daemon answers at the port in the state file.
+	 */
+	private static boolean isRunning(final File stateFile) throws IOException
+	{
+		boolean result = false;
+		if(stateFile.exists())
+		{
+			String[] state = FileUtils.readFileToString(stateFile, "UTF-8").split("\n");
+			try
+			{
+				new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state[0].trim())).close();
+				result = true;
+			}
+			catch(ConnectException | NumberFormatException ex)
+			{
+				LOGGER.log(Level.FINE, "Replacing stale state file {0}", stateFile.getAbsolutePath());
+			}
+		}
+		return result;
+	}
+
+	private static String readField(final InputStream in) throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		int b;
+		while((b = in.read()) != 0)
+		{
+			if(b < 0 || result.size() >= MAX_FIELD_LENGTH)
+			{
+				throw new IOException("Incomplete request");
+			}
+			result.write(b);
+		}
+		return new String(result.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void writeField(final OutputStream out, final String field) throws IOException
+	{
+		out.write(field.getBytes(StandardCharsets.UTF_8));
+		out.write(0);
+	}
+
+	private static void writeLine(final OutputStream out, final char channel, final byte[] line) throws IOException
+	{
+		synchronized(out)
+		{
+			out.write(channel);
+			out.write(' ');
+			out.write(line);
+			out.write('\n');
+			out.flush();
+		}
+	}
+
+	/**
+	 * Replaces System.out and System.err with streams which write to the client of the current thread, if it
+	 * has one, otherwise to the original streams.
+	 */
+	private static synchronized void routeStandardStreams()
+	{
+		if(!routing)
+		{
+			System.setOut(new PrintStream(new ClientOutputStream(System.out, false), true));
+			System.setErr(new PrintStream(new ClientOutputStream(System.err, true), true));
+			routing = true;
+		}
+	}
+
+	/**
+	 * The output of one request, sent to the client a line at a time.
+	 */
+	private static final class Client
+	{
+		private final LineOutputStream out;
+		private final LineOutputStream err;
+
+		Client(final OutputStream socket)
+		{
+			this.out = new LineOutputStream(socket, 'o');
+			this.err = new LineOutputStream(socket, 'e');
+		}
+
+		void flush()
+		{
+			out.flushLine();
+			err.flushLine();
+		}
+	}
+
+	/**
+	 * Collects bytes into lines and sends each line to the client with a prefix naming the stream.
+	 * If the client has gone away the output is dropped, the report is still written.
+	 */
+	private static final class LineOutputStream extends OutputStream
+	{
+		private final OutputStream socket;
+		private final char channel;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private boolean broken = false;
+
+		LineOutputStream(final OutputStream socket, final char channel)
+		{
+			this.socket = socket;
+			this.channel = channel;
+		}
+
+		@Override
+		public synchronized void write(final int b)
+		{
+			if(b == '\n')
+			{
+				send();
+			}
+			else if(b != '\r')
+			{
+				line.write(b);
+			}
+		}
+
+		/**
+		 * Sends what is left of the last line, if anything.
+		 */
+		synchronized void flushLine()
+		{
+			if(line.size() > 0)
+			{
+				send();
+			}
+		}
+
+		private void send()
+		{
+			if(!broken)
+			{
+				try
+				{
+					writeLine(socket, channel, line.toByteArray());
+				}
+				catch(IOException ex)
+				{
+					broken = true;
+				}
+			}
+			line.reset();
+		}
+	}
+
+	/**
+	 * Writes to the stream of the current thread's client or, when there is none, the original stream.
+	 */
+	private static final class ClientOutputStream extends OutputStream
+	{
+		private final OutputStream original;
+		private final boolean isErr;
+
+		ClientOutputStream(final OutputStream original, final boolean isErr)
+		{
+			this.original = original;
+			this.isErr = isErr;
+		}
+
+		private OutputStream getTarget()
+		{
+			Client client = CLIENT.get();
+			OutputStream result = original;
+			if(client != null)
+			{
+				result = isErr? client.err : client.out;
+			}
+			return result;
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			getTarget().write(b);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			getTarget().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			getTarget().flush();
+		}
+	}
+
+	/**
+	 * Runs tasks for the client of the thread which submitted them, so their output goes to that client
+	 * and their log records are filtered at the level (--quiet) of that client's report before they are sent.
+	 */
+	private static final class ClientExecutor extends AbstractExecutorService
+	{
+		private final ExecutorService pool;
+
+		ClientExecutor(final ExecutorService pool)
+		{
+			this.pool = pool;
+		}
+
+		@Override
+		public void execute(final Runnable command)
+		{
+			final Client client = CLIENT.get();
+			final Level level = ReportLogLevel.get();
+			pool.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					CLIENT.set(client);
+					Level previousLevel = ReportLogLevel.begin(level);
+					try
+					{
+						command.run();
+					}
+					finally
+					{
+						ReportLogLevel.end(level, previousLevel);
+						CLIENT.remove();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void shutdown()
+		{
+			pool.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow()
+		{
+			return pool.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return pool.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return pool.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+		{
+			return pool.awaitTermination(timeout, unit);
+		}
+	}
+
+	private static final class NamedThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+		private final String namePrefix;
+
+		NamedThreadFactory(final String namePrefix)
+		{
+			this.namePrefix = namePrefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
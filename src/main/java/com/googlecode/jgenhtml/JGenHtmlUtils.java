@@ -15,7 +15,8 @@
  */
 package com.googlecode.jgenhtml;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,8 +31,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -42,11 +44,11 @@ import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.ProcessingInstruction;
@@ -63,6 +65,8 @@ public class JGenHtmlUtils
 	public static final String XSLT_NAME = "jgenhtml.xsl";
 	public static final String CSS_NAME = "jgenhtml.css";
 	public static final String JS_NAME = "jgenhtml.js";
+	private static final int TRACEFILE_BUFFER_SIZE = 1 << 16;
+	private static final int PAGE_BUFFER_SIZE = 1 << 16;
 
 	public static void setGlobalRootAttributes(final Element root, final String testName)
 	{
@@ -74,7 +78,7 @@ public class JGenHtmlUtils
 	/**
 	 * @return The current date in the correct format for the coverage "date" attribute.
 	 */
-	private static String getDate()
+	static String getDate()
 	{
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 		return sdf.format(new Date());
@@ -132,40 +136,55 @@ public class JGenHtmlUtils
 	}
 
 	/**
-	 * Unzips a file.
-	 * @param gzippedFile A gzipped file.
-	 * @return The gunzipped version of the file.
+	 * Opens a tracefile for reading, gzipped tracefiles are inflated on the fly as they are read.
+	 * @param traceFile A tracefile, if the name ends with ".gz" it is assumed to be gzipped.
+	 * @param readAhead If true a gzipped tracefile is inflated on another thread ahead of the reader.
+	 * @return A buffered stream of the (uncompressed) tracefile content.
 	 * @throws IOException If you screw up.
 	 */
-	public static File gunzip(File gzippedFile) throws IOException
+	public static InputStream openTraceFile(final File traceFile, final boolean readAhead) throws IOException
 	{
-		OutputStream out = null;
-		GZIPInputStream gzipInputStream = null;
-		File gunzippedFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + gzippedFile.getName().replace(".gz", ""));
+		InputStream result = new FileInputStream(traceFile);
 		try
 		{
-			InputStream in = new FileInputStream(gzippedFile);
-			gzipInputStream = new GZIPInputStream(in);
-			out = new FileOutputStream(gunzippedFile);
-
-			byte[] buf = new byte[1024];
-			int len;
-			while ((len = gzipInputStream.read(buf)) > 0)
+			boolean gzipped = traceFile.getName().endsWith(".gz");
+			if(gzipped)
 			{
-				out.write(buf, 0, len);
+				LOGGER.log(Level.FINE, "File {0} ends with .gz, going to gunzip it.", traceFile.getName());
+				result = new GZIPInputStream(result, TRACEFILE_BUFFER_SIZE);
 			}
-		}
-		finally
-		{
-			if(gzipInputStream != null)
+			if(gzipped && readAhead)
 			{
-				gzipInputStream.close();
+				result = new ReadAheadInputStream(result, TRACEFILE_BUFFER_SIZE);
 			}
-			if(out != null)
+			else
 			{
-				out.close();
+				result = new BufferedInputStream(result, TRACEFILE_BUFFER_SIZE);
 			}
 		}
+		catch(IOException ex)
+		{
+			result.close();
+			throw ex;
+		}
+		return result;
+	}
+
+	/**
+	 * Unzips a file.
+	 * @param gzippedFile A gzipped file.
+	 * @return The gunzipped version of the file.
+	 * @throws IOException If you screw up.
+	 * @deprecated Tracefiles are no longer copied, openTraceFile inflates them as they are read.
+	 */
+	@Deprecated
+	public static File gunzip(File gzippedFile) throws IOException
+	{
+		File gunzippedFile = new File(System.getProperty("java.io.tmpdir") + File.separatorChar + gzippedFile.getName().replace(".gz", ""));
+		try(InputStream in = openTraceFile(gzippedFile, false))
+		{
+			FileUtils.copyInputStreamToFile(in, gunzippedFile);
+		}
 		return gunzippedFile;
 	}
 
@@ -173,11 +192,47 @@ public class JGenHtmlUtils
 	{
 		logger.setUseParentHandlers(false);
 		JGenHtmlLogFormatter formatter = new JGenHtmlLogFormatter();
-		ConsoleHandler handler = new ConsoleHandler();
+		Handler handler = new StandardErrorHandler();
 		handler.setFormatter(formatter);
 		logger.addHandler(handler);
 	}
 
+	/**
+	 * Like ConsoleHandler but looks up System.err every time it logs rather than once when it is created,
+	 * so the daemon can send log messages to whichever client the logging thread is working for.
+	 * Records are logged at the level of the report the logging thread is working for, see ReportLogLevel.
+	 */
+	private static final class StandardErrorHandler extends Handler
+	{
+		StandardErrorHandler()
+		{
+			setLevel(Level.ALL);
+		}
+
+		@Override
+		public void publish(final LogRecord record)
+		{
+			if (isLoggable(record) && record.getLevel().intValue() >= ReportLogLevel.get().intValue())
+			{
+				String message = getFormatter().format(record);
+				System.err.print(message);
+				System.err.flush();
+			}
+		}
+
+		@Override
+		public void flush()
+		{
+			System.err.flush();
+		}
+
+		@Override
+		public void close()
+		{
+			flush();
+		}
+	}
+
 	/**
 	 * Writes a resource (e.g. CSS file) to the destination directory.
 	 * @param resourceName The name of a resource (which the classloader can find).
@@ -321,17 +376,44 @@ public class JGenHtmlUtils
 		return result;
 	}
 
+	/**
+	 * @deprecated Use transformToFile(File, boolean, Document, Config), this uses the config set with CoverageReport.setConfig.
+	 */
+	@Deprecated
 	public static void transformToFile(final File targetFile, final boolean asXml, final Document doc) throws TransformerConfigurationException, TransformerException, IOException
 	{
-		Transformer transformer;
-		Config config = CoverageReport.getConfig();
-		if(asXml)
+		transformToFile(targetFile, asXml, doc, CoverageReport.getConfig());
+	}
+
+	/**
+	 * Writes a page of the report, transforming it to HTML unless it is XML.
+	 * @param targetFile The file to write.
+	 * @param asXml If true the document is written as it is.
+	 * @param doc The page.
+	 * @param config The user preferences of the report the page belongs to.
+	 */
+	public static void transformToFile(final File targetFile, final boolean asXml, final Document doc, final Config config) throws TransformerConfigurationException, TransformerException, IOException
+	{
+		transformToFile(targetFile, asXml, doc, config, null);
+	}
+
+	/**
+	 * Writes a page of the report, transforming it to HTML unless it is XML.
+	 * @param targetFile The file to write.
+	 * @param asXml If true the document is written as it is.
+	 * @param doc The page.
+	 * @param config The user preferences of the report the page belongs to.
+	 * @param metrics The metrics of the report, which count the page written, null if the user does not want metrics.
+	 */
+	static void transformToFile(final File targetFile, final boolean asXml, final Document doc, final Config config, final ReportMetrics metrics) throws TransformerConfigurationException, TransformerException, IOException
+	{
+		Transformer transformer = StylesheetCache.getTransformer(asXml);
+		if(transformer == null)
 		{
-			transformer = getTransformer(null);
+			throw new TransformerConfigurationException("Could not create transformer for " + targetFile.getName());
 		}
-		else
+		if(!asXml)
 		{
-			transformer = getTransformer('/' + JGenHtmlUtils.XSLT_NAME);
 			transformer.setParameter("ext", config.getHtmlExt());
 			File cssFile = config.getCssFile();
 			if(cssFile != null)
@@ -341,50 +423,127 @@ public class JGenHtmlUtils
 		}
 		DOMSource src = new DOMSource(doc);
 		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-		StreamResult res;
+		Object event = ReportEvents.getInstance().beginTransform();
+		try (OutputStream out = openPageStream(targetFile, config, metrics))
+		{
+			transformer.transform(src, new StreamResult(out));
+		}
+		ReportEvents.getInstance().endTransform(event, targetFile, asXml);
+	}
+
+	/**
+	 * Opens a report page for writing.
+	 * If the user wants gzipped HTML the page is compressed as it is written. If the user wants gzip_static copies
+	 * the page is written plain and compressed to a .gz file at the same time.
+	 * @param targetFile The page to write.
+	 * @param config The user preferences of the report the page belongs to.
+	 * @param metrics The metrics of the report, which count the page and its bytes, null if the user does not want metrics.
+	 * @return A buffered stream which the caller must close.
+	 * @throws IOException If the file could not be opened.
+	 */
+	static OutputStream openPageStream(final File targetFile, final Config config, final ReportMetrics metrics) throws IOException
+	{
+		OutputStream result;
+		if(metrics != null)
+		{
+			metrics.addPage();
+		}
 		if(config.isGzip())
 		{
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			GZIPOutputStream gzos = new GZIPOutputStream(new FileOutputStream(targetFile));
-			res = new StreamResult(bos);
-			transformer.transform(src, res);
-			IOUtils.write(bos.toByteArray(), gzos);
-			IOUtils.closeQuietly(gzos);
+			result = openGzipStream(targetFile, config, metrics);
 		}
 		else
 		{
-			res = new StreamResult(targetFile);
-			transformer.transform(src, res);
+			result = openFileStream(targetFile, metrics);
+			if(config.isGzipStatic())
+			{
+				try
+				{
+					result = new TeeOutputStream(result, openGzipStream(getGzipCopy(targetFile), config, metrics));
+				}
+				catch(IOException ex)
+				{
+					result.close();
+					throw ex;
+				}
+			}
+			result = new BufferedOutputStream(result, PAGE_BUFFER_SIZE);
 		}
+		return result;
 	}
 
 	/**
-	 * Gets an XSLT transformer instance.
-	 * @param xsltPath The path to the XSLT file.
-	 * @return An instance of Transformer
+	 * Opens a file in the report for writing, counting the bytes written if the user wants metrics.
+	 * @param targetFile The file to write.
+	 * @param metrics The metrics of the report the file belongs to, null if the user does not want metrics.
+	 * @return An unbuffered stream which the caller must close.
+	 * @throws IOException If the file could not be opened.
 	 */
-	private static Transformer getTransformer(final String xsltPath)
+	private static OutputStream openFileStream(final File targetFile, final ReportMetrics metrics) throws IOException
 	{
-		Transformer transformer;
+		OutputStream result = new FileOutputStream(targetFile);
+		if(metrics != null)
+		{
+			result = metrics.count(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Opens a file for writing gzipped.
+	 * @param targetFile The file to write.
+	 * @param config The user preferences of the report the file belongs to, which include the compression level.
+	 * @param metrics The metrics of the report the file belongs to, null if the user does not want metrics.
+	 * @return A buffered stream which the caller must close.
+	 * @throws IOException If the file could not be opened.
+	 */
+	private static OutputStream openGzipStream(final File targetFile, final Config config, final ReportMetrics metrics) throws IOException
+	{
+		final int level = config.getGzipLevel();
+		OutputStream out = openFileStream(targetFile, metrics);
+		OutputStream result;
 		try
 		{
-			TransformerFactory tFactory = TransformerFactory.newInstance();
-			if(xsltPath != null)
+			result = new BufferedOutputStream(new GZIPOutputStream(out, PAGE_BUFFER_SIZE)
 			{
-				Document xslt = loadXmlDoc(TestCaseSourceFile.class.getResourceAsStream(xsltPath));
-				transformer = tFactory.newTransformer(new DOMSource(xslt));
-			}
-			else
-			{
-				transformer = tFactory.newTransformer();
-			}
+				{
+					def.setLevel(level);
+				}
+			}, PAGE_BUFFER_SIZE);
 		}
-		catch (TransformerConfigurationException ex)
+		catch(IOException ex)
 		{
-			transformer = null;
-			LOGGER.log(Level.SEVERE, ex.getLocalizedMessage());
+			out.close();
+			throw ex;
 		}
-		return transformer;
+		return result;
+	}
+
+	/**
+	 * Writes a gzipped copy of a file next to it if the user wants gzip_static copies.
+	 * @param file The file to copy.
+	 * @param config The user preferences of the report the file belongs to.
+	 * @param metrics The metrics of the report, which count the bytes of the copy, null if the user does not want metrics.
+	 * @throws IOException If the copy could not be written.
+	 */
+	static void writeGzipCopy(final File file, final Config config, final ReportMetrics metrics) throws IOException
+	{
+		if(config.isGzipStatic())
+		{
+			try (InputStream in = new FileInputStream(file); OutputStream out = openGzipStream(getGzipCopy(file), config, metrics))
+			{
+				IOUtils.copy(in, out);
+			}
+		}
+	}
+
+	/**
+	 * @param file A file in the report.
+	 * @return The gzipped copy of the file which nginx gzip_static looks for.
+	 */
+	private static File getGzipCopy(final File file)
+	{
+		return new File(file.getParentFile(), file.getName() + ".gz");
 	}
 
 	public static void linkToXsl(Document doc, final String xslPath)
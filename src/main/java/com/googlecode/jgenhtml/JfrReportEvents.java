@@ -0,0 +1,218 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder events, loaded by ReportEvents only if the JVM has JFR.
+ * The events are enabled, with a threshold or not, by the recording settings like any other. Nothing is measured
+ * for an event no recording wants, and sizes are only looked up once the event is known to be committed.
+ * The duration of each event is the time taken to read the tracefile, write the page or transform it.
+ * @author Rick Brown
+ */
+final class JfrReportEvents extends ReportEvents
+{
+	@Name("com.googlecode.jgenhtml.TraceFile")
+	@Label("Tracefile Read")
+	@Description("A tracefile, or part of one, parsed or loaded from the parse cache")
+	@Category("jgenhtml")
+	@StackTrace(false)
+	static final class TraceFileEvent extends Event
+	{
+		@Label("Path")
+		String path;
+
+		@Label("Offset")
+		@Description("The offset of the first byte parsed, not 0 if the tracefile was split between threads")
+		@DataAmount
+		long offset;
+
+		@Label("Size")
+		@Description("The bytes parsed, or the size of the tracefile if it was loaded from the parse cache")
+		@DataAmount
+		long size;
+
+		@Label("Records")
+		@Description("The DA, BRDA, FN and FNDA records parsed")
+		long records;
+
+		@Label("Cached")
+		boolean cached;
+	}
+
+	@Name("com.googlecode.jgenhtml.Page")
+	@Label("Page Written")
+	@Description("A source or index page of the report written, as HTML and XML")
+	@Category("jgenhtml")
+	@StackTrace(false)
+	static final class PageEvent extends Event
+	{
+		@Label("Path")
+		@Description("The HTML file of the page")
+		String path;
+
+		@Label("Lines")
+		@Description("The lines of a source page, the executable lines of the files on an index page")
+		int lines;
+
+		@Label("Output Size")
+		@Description("The size of the HTML and XML files of the page, as written, so gzipped if the report is")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("com.googlecode.jgenhtml.Transform")
+	@Label("Page Transformed")
+	@Description("A page transformed to HTML by the XSLT stylesheet, or serialized as XML")
+	@Category("jgenhtml")
+	@StackTrace(false)
+	static final class TransformEvent extends Event
+	{
+		@Label("Path")
+		String path;
+
+		@Label("As XML")
+		boolean asXml;
+
+		@Label("Output Size")
+		@DataAmount
+		long bytes;
+	}
+
+	@Override
+	Object beginTraceFile()
+	{
+		TraceFileEvent result = new TraceFileEvent();
+		if(result.isEnabled())
+		{
+			result.begin();
+		}
+		else
+		{
+			result = null;
+		}
+		return result;
+	}
+
+	@Override
+	void endTraceFile(final Object event, final File traceFile, final long records, final boolean cached)
+	{
+		if(event != null)
+		{
+			TraceFileEvent traceFileEvent = (TraceFileEvent)event;
+			traceFileEvent.end();
+			if(traceFileEvent.shouldCommit())
+			{
+				traceFileEvent.path = traceFile.getAbsolutePath();
+				traceFileEvent.size = traceFile.length();
+				traceFileEvent.records = records;
+				traceFileEvent.cached = cached;
+				traceFileEvent.commit();
+			}
+		}
+	}
+
+	@Override
+	void endTraceFileChunk(final Object event, final File traceFile, final long start, final long end, final long records)
+	{
+		if(event != null)
+		{
+			TraceFileEvent traceFileEvent = (TraceFileEvent)event;
+			traceFileEvent.end();
+			if(traceFileEvent.shouldCommit())
+			{
+				traceFileEvent.path = traceFile.getAbsolutePath();
+				traceFileEvent.offset = start;
+				traceFileEvent.size = end - start;
+				traceFileEvent.records = records;
+				traceFileEvent.commit();
+			}
+		}
+	}
+
+	@Override
+	Object beginPage()
+	{
+		PageEvent result = new PageEvent();
+		if(result.isEnabled())
+		{
+			result.begin();
+		}
+		else
+		{
+			result = null;
+		}
+		return result;
+	}
+
+	@Override
+	void endPage(final Object event, final CoveragePage page, final Config config)
+	{
+		if(event != null)
+		{
+			PageEvent pageEvent = (PageEvent)event;
+			pageEvent.end();
+			if(pageEvent.shouldCommit())
+			{
+				File html = page.getTargetFile(config, false);
+				pageEvent.path = html.getAbsolutePath();
+				pageEvent.lines = (page instanceof TestCaseSourceFile)? ((TestCaseSourceFile)page).getPageLineCount() : page.getLineCount();
+				pageEvent.bytes = html.length() + (config.isHtmlOnly()? 0 : page.getTargetFile(config, true).length());
+				pageEvent.commit();
+			}
+		}
+	}
+
+	@Override
+	Object beginTransform()
+	{
+		TransformEvent result = new TransformEvent();
+		if(result.isEnabled())
+		{
+			result.begin();
+		}
+		else
+		{
+			result = null;
+		}
+		return result;
+	}
+
+	@Override
+	void endTransform(final Object event, final File targetFile, final boolean asXml)
+	{
+		if(event != null)
+		{
+			TransformEvent transformEvent = (TransformEvent)event;
+			transformEvent.end();
+			if(transformEvent.shouldCommit())
+			{
+				transformEvent.path = targetFile.getAbsolutePath();
+				transformEvent.asXml = asXml;
+				transformEvent.bytes = targetFile.length();
+				transformEvent.commit();
+			}
+		}
+	}
+}
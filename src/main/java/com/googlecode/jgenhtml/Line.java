@@ -16,6 +16,7 @@
 package com.googlecode.jgenhtml;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -28,8 +29,10 @@ public class Line extends SourceCode
 {
 	private String code = null;
 	private int lineNumber = -1;
+	private static final int MAX_UNINDEXED = 8;  // lines with more branches than this get an index
+	private static volatile String defaultTabExpander = null;  // only for setCode(String)
 	private final List<Branch> branches = new ArrayList<>();
-	private static String expander = null;
+	private int[] branchIndex = null;  // open addressing table of (index in branches + 1), zero is empty
 
 	/**
 	 * Create a new instance of Line, by default it is not executable.
@@ -41,6 +44,17 @@ public class Line extends SourceCode
 		setLineNo(lineNumber);
 	}
 
+	/**
+	 * Create a new instance of Line in a report, by default it is not executable.
+	 * @param lineNumber The base one line number of this line.
+	 * @param testNames The test names of the report.
+	 */
+	Line(final int lineNumber, final TestNames testNames)
+	{
+		super(false, testNames);
+		setLineNo(lineNumber);
+	}
+
 	/**
 	 * Set the base one line number.
 	 * @param lineNumber The line number, must be greater than zero.
@@ -83,6 +97,17 @@ public class Line extends SourceCode
 		return lineElement;
 	}
 
+	@Override
+	void digest(final PageDigest digest)
+	{
+		super.digest(digest);
+		digest.add(lineNumber).add(code).add(branches.size());
+		for(Branch branch : branches)
+		{
+			branch.digest(digest);
+		}
+	}
+
 	/**
 	 * Get the base one line number.
 	 * @return The line number.
@@ -112,18 +137,28 @@ public class Line extends SourceCode
 
 	/**
 	 * Set the source code for this line.
-	 * Trailing whitespace will be trimmed.
-	 * Tab expansion will occur if specified by user.
+	 * Trailing whitespace will be trimmed. Tabs are left alone unless the deprecated setTabExpand has been called.
 	 * @param code The source code for this line.
 	 */
 	public void setCode(final String code)
+	{
+		setCode(code, defaultTabExpander);
+	}
+
+	/**
+	 * Set the source code for this line.
+	 * Trailing whitespace will be trimmed.
+	 * @param code The source code for this line.
+	 * @param tabExpander The string to replace each tab with, see getTabExpander, or null to leave tabs alone.
+	 */
+	public void setCode(final String code, final String tabExpander)
 	{
 		if(code != null)
 		{
 			this.code = code.replaceAll("\\s+$", "");  // right trim
-			if(expander != null)
+			if(tabExpander != null)
 			{
-				this.code = this.code.replaceAll("\t", expander);
+				this.code = this.code.replace("\t", tabExpander);
 			}
 		}
 	}
@@ -135,14 +170,54 @@ public class Line extends SourceCode
 	 * @return The branch if it exists otherwise null.
 	 */
 	public Branch getBranch(final String block, final String number)
+	{
+		Branch result;
+		try
+		{
+			result = getBranch(Integer.parseInt(block), Integer.parseInt(number));
+		}
+		catch(NumberFormatException ex)
+		{
+			result = null;  // branches are only ever numbered with ints
+		}
+		return result;
+	}
+
+	/**
+	 * Get a branch in this line.
+	 * Lines with a few branches are searched, lines with more use an index.
+	 * @param block The block id of the branch to fetch.
+	 * @param number The index number of the branch to fetch.
+	 * @return The branch if it exists otherwise null.
+	 */
+	public Branch getBranch(final int block, final int number)
 	{
 		Branch result = null;
-		for(Branch branch : branches)
+		if(branchIndex == null)
+		{
+			for(Branch branch : branches)
+			{
+				if(branch.getBlockNumber() == block && branch.getBranchNumber() == number)
+				{
+					result = branch;
+					break;
+				}
+			}
+		}
+		else
 		{
-			if(block.equals(branch.getBlock()) && number.equals(branch.getNumber()))
+			int mask = branchIndex.length - 1;
+			int slot = hash(block, number) & mask;
+			int entry;
+			while((entry = branchIndex[slot]) != 0)
 			{
-				result = branch;
-				break;
+				Branch branch = branches.get(entry - 1);
+				if(branch.getBlockNumber() == block && branch.getBranchNumber() == number)
+				{
+					result = branch;
+					break;
+				}
+				slot = (slot + 1) & mask;
 			}
 		}
 		return result;
@@ -150,11 +225,11 @@ public class Line extends SourceCode
 
 	/**
 	 * Get all the branches in this line.
-	 * @return a collection of branches.
+	 * @return a collection of branches, in the order they were added.
 	 */
 	public List<Branch> getBranches()
 	{
-		return branches;
+		return Collections.unmodifiableList(branches);
 	}
 
 	/**
@@ -164,29 +239,77 @@ public class Line extends SourceCode
 	public void addBranch(final Branch branch)
 	{
 		branches.add(branch);
+		int count = branches.size();
+		if(branchIndex != null && count * 2 <= branchIndex.length)
+		{
+			indexBranch(branchIndex, count - 1);
+		}
+		else if(count > MAX_UNINDEXED)
+		{
+			int[] index = new int[Integer.highestOneBit(count) * 4];  // keeps the table no more than half full
+			for(int i = 0; i < count; i++)
+			{
+				indexBranch(index, i);
+			}
+			branchIndex = index;
+		}
+	}
+
+	/**
+	 * Add a branch to the index.
+	 * @param index The open addressing table to add to.
+	 * @param position The position of the branch in the list of branches.
+	 */
+	private void indexBranch(final int[] index, final int position)
+	{
+		Branch branch = branches.get(position);
+		int mask = index.length - 1;
+		int slot = hash(branch.getBlockNumber(), branch.getBranchNumber()) & mask;
+		while(index[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = position + 1;
 	}
 
+	private static int hash(final int block, final int number)
+	{
+		int result = (block * 31 + number) * 0x9E3779B9;
+		return result ^ (result >>> 16);
+	}
+
+	/**
+	 * Sets the tab expansion used by setCode(String).
+	 * @param expand Replace tabs with this many spaces, ignored if negative.
+	 * @deprecated Each report expands tabs with its own config, see Config.getNumSpaces.
+	 */
+	@Deprecated
 	public static void setTabExpand(final int expand)
 	{
 		if(expand > -1)
 		{
-			expander = getTabExpander(expand);
+			defaultTabExpander = getTabExpander(expand);
 		}
 	}
 
 	/**
 	 * Get the String to use for expanding tabs to spaces.
-	 * @param width The length of the expander (how many spaces).
-	 * @return A string 'width' spaces long.
+	 * @param width The length of the expander (how many spaces), as Config.getNumSpaces.
+	 * @return A string 'width' spaces long or null if width is negative (tabs are left alone).
 	 */
-	private static String getTabExpander(final int width)
+	static String getTabExpander(final int width)
 	{
-		StringBuilder result = new StringBuilder(width);
-		for(int i=0; i<width; i++)
+		String result = null;
+		if(width > -1)
 		{
-			result.append(' ');
+			StringBuilder spaces = new StringBuilder(width);
+			for(int i=0; i<width; i++)
+			{
+				spaces.append(' ');
+			}
+			result = spaces.toString();
 		}
-		return result.toString();
+		return result;
 	}
 
 }
@@ -0,0 +1,163 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The lines of a source file, indexed by their BASE ONE line number.
+ * Line numbers are dense so the lines are held in a growable array, which gives constant time lookups and
+ * iterates in line number order.
+ * Absurdly large line numbers (which can only come from a broken tracefile) are kept in a map instead so they
+ * can not blow up the array.
+ * @author Rick Brown
+ */
+final class LineTable implements Iterable<Line>
+{
+	private static final int INITIAL_SIZE = 64;
+	private static final int MAX_DENSE = 1 << 22;
+	private Line[] lines;
+	private SortedMap<Integer, Line> overflow;
+	private int size;
+
+	LineTable()
+	{
+		this.lines = new Line[INITIAL_SIZE];
+		this.overflow = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Get the line with the given line number.
+	 * @param lineNo The BASE ONE line number.
+	 * @return The line or null if there is no line with this number.
+	 */
+	Line get(final int lineNo)
+	{
+		Line result = null;
+		if(lineNo > 0 && lineNo <= lines.length)
+		{
+			result = lines[lineNo - 1];
+		}
+		else if(overflow != null && lineNo > MAX_DENSE)
+		{
+			result = overflow.get(lineNo);
+		}
+		return result;
+	}
+
+	/**
+	 * Set the line with the given line number, replacing any existing line.
+	 * @param lineNo The BASE ONE line number, the line is ignored if this is not greater than zero.
+	 * @param line The line to set.
+	 */
+	void put(final int lineNo, final Line line)
+	{
+		if(lineNo > 0)
+		{
+			Line previous;
+			if(lineNo > MAX_DENSE)
+			{
+				if(overflow == null)
+				{
+					overflow = new TreeMap<>();
+				}
+				previous = overflow.put(lineNo, line);
+			}
+			else
+			{
+				if(lineNo > lines.length)
+				{
+					lines = Arrays.copyOf(lines, Math.min(MAX_DENSE, Math.max(lineNo, lines.length * 2)));
+				}
+				previous = lines[lineNo - 1];
+				lines[lineNo - 1] = line;
+			}
+			if(previous == null)
+			{
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of lines in the table.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Iterates over the lines in line number order.
+	 * @return An iterator which does not support remove.
+	 */
+	@Override
+	public Iterator<Line> iterator()
+	{
+		return new Iterator<Line>()
+		{
+			private int next = advance(0);
+			private final Iterator<Line> overflowIterator = (overflow == null)? null : overflow.values().iterator();
+
+			private int advance(final int from)
+			{
+				int result = from;
+				while(result < lines.length && lines[result] == null)
+				{
+					result++;
+				}
+				return result;
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < lines.length || (overflowIterator != null && overflowIterator.hasNext());
+			}
+
+			@Override
+			public Line next()
+			{
+				Line result;
+				if(next < lines.length)
+				{
+					result = lines[next];
+					next = advance(next + 1);
+				}
+				else if(overflowIterator != null)
+				{
+					result = overflowIterator.next();
+				}
+				else
+				{
+					throw new NoSuchElementException();
+				}
+				return result;
+			}
+
+			@Override
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,114 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds a hash of everything that goes into a report page, used to tell if a page has changed since the last run.
+ * Values are length prefixed so that, for example, "ab" + "c" does not hash the same as "a" + "bc".
+ * @author Rick Brown
+ */
+final class PageDigest
+{
+	private static final String ALGORITHM = "SHA-256";
+	private final MessageDigest digest;
+
+	PageDigest()
+	{
+		try
+		{
+			this.digest = MessageDigest.getInstance(ALGORITHM);
+		}
+		catch(NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);  // every JRE must support SHA-256
+		}
+	}
+
+	/**
+	 * Adds a number to the hash.
+	 * @param value The number to add.
+	 * @return This instance.
+	 */
+	PageDigest add(final int value)
+	{
+		digest.update((byte)(value >>> 24));
+		digest.update((byte)(value >>> 16));
+		digest.update((byte)(value >>> 8));
+		digest.update((byte)value);
+		return this;
+	}
+
+	/**
+	 * Adds a flag to the hash.
+	 * @param value The flag to add.
+	 * @return This instance.
+	 */
+	PageDigest add(final boolean value)
+	{
+		digest.update((byte)(value? 1 : 0));
+		return this;
+	}
+
+	/**
+	 * Adds a String to the hash.
+	 * @param value The String to add, may be null.
+	 * @return This instance.
+	 */
+	PageDigest add(final String value)
+	{
+		if(value == null)
+		{
+			add(-1);
+		}
+		else
+		{
+			add(value.getBytes(StandardCharsets.UTF_8));
+		}
+		return this;
+	}
+
+	/**
+	 * Adds raw data to the hash.
+	 * @param value The data to add.
+	 * @return This instance.
+	 */
+	PageDigest add(final byte[] value)
+	{
+		add(value.length);
+		digest.update(value);
+		return this;
+	}
+
+	/**
+	 * Finishes the hash, this instance can not be used afterwards.
+	 * @return The hash as a hex String.
+	 */
+	String toHex()
+	{
+		byte[] hash = digest.digest();
+		StringBuilder result = new StringBuilder(hash.length * 2);
+		for(byte b : hash)
+		{
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,369 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * An on disk cache of parsed tracefiles, so that a tracefile which has not changed since the last run is read back
+ * in bulk instead of being parsed again.
+ * There is one entry per tracefile, named after a hash of its path. An entry is only used while the size, last
+ * modified time and a hash of the content of the tracefile all still match.
+ * The cache is kept under a size limit by deleting the least recently used entries first, the last modified time
+ * of an entry records when it was last used.
+ * @author Rick Brown
+ */
+final class ParseCache
+{
+	private static final Logger LOGGER = Logger.getLogger(ParseCache.class.getName());
+	static{
+		JGenHtmlUtils.setLogFormatter(LOGGER);
+	}
+	private static final int MAGIC = 0x4A474843;  // "JGHC"
+	private static final int FORMAT = 1;  // change this whenever the layout of an entry changes
+	private static final String SUFFIX = ".jgc";
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final File dir;
+	private final long maxBytes;
+
+	/**
+	 * @param dir The directory to keep the entries in, it is created when the first entry is stored.
+	 * @param maxBytes The most disk space the entries may use.
+	 */
+	ParseCache(final File dir, final long maxBytes)
+	{
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the cache entry for a tracefile, it does not need to hold any data yet.
+	 * @param traceFile The tracefile.
+	 * @return The entry for this tracefile.
+	 * @throws IOException If the path of the tracefile can not be resolved.
+	 */
+	Entry getEntry(final File traceFile) throws IOException
+	{
+		String path = traceFile.getCanonicalPath();
+		return new Entry(traceFile, path, new File(dir, new PageDigest().add(path).toHex() + SUFFIX));
+	}
+
+	/**
+	 * Deletes the least recently used entries until the rest fit in the size limit.
+	 */
+	private synchronized void evict()
+	{
+		File[] entries = dir.listFiles(new FileFilter()
+		{
+			@Override
+			public boolean accept(final File file)
+			{
+				return file.isFile() && file.getName().endsWith(SUFFIX);
+			}
+		});
+		if(entries != null)
+		{
+			final Map<File, Long> lastUsed = new HashMap<>();  // the times must not change while sorting
+			for(File entry : entries)
+			{
+				lastUsed.put(entry, entry.lastModified());
+			}
+			Arrays.sort(entries, new Comparator<File>()
+			{
+				@Override
+				public int compare(final File a, final File b)
+				{
+					return lastUsed.get(b).compareTo(lastUsed.get(a));  // most recently used first
+				}
+			});
+			long total = 0;
+			for(File entry : entries)
+			{
+				total += entry.length();
+				if(total > maxBytes && entry.delete())
+				{
+					LOGGER.log(Level.FINE, "Evicted parse cache entry {0}", entry.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The cached data of a single tracefile.
+	 * The layout is a header identifying the tracefile, the test names, the coverage data and a CRC32 of everything
+	 * before it.
+	 */
+	final class Entry
+	{
+		private final File traceFile;
+		private final String path;
+		private final File file;
+		private final long size;
+		private final long lastModified;
+		private byte[] digest;
+		private Set<String> testNames;
+
+		private Entry(final File traceFile, final String path, final File file)
+		{
+			this.traceFile = traceFile;
+			this.path = path;
+			this.file = file;
+			this.size = traceFile.length();
+			this.lastModified = traceFile.lastModified();
+			this.digest = null;
+			this.testNames = null;
+		}
+
+		/**
+		 * The test names found when the tracefile was parsed.
+		 * @return The test names or null if there are none, only valid after a successful load.
+		 */
+		Set<String> getTestNames()
+		{
+			return testNames;
+		}
+
+		/**
+		 * Loads the cached data, if there is any and the tracefile has not changed since it was cached.
+		 * Entries which can not be used are ignored.
+		 * @param into Empty partial data (which does not load source) to load the coverage data into.
+		 * @param testTitle The test name to give source files created by the load.
+		 * @return true if the data was loaded, false if the tracefile needs to be parsed.
+		 * @throws IOException If an entry which passed its checks could not be read.
+		 * @throws ParserConfigurationException If a source file could not be created.
+		 */
+		boolean load(final ParsedFiles into, final String testTitle) throws IOException, ParserConfigurationException
+		{
+			DataInputStream in = open();
+			boolean result = in != null;
+			if(result)
+			{
+				String[] names = readNames(in);
+				int[] testIds = new int[(names == null)? 0 : names.length];
+				for(int i = 0; i < testIds.length; i++)
+				{
+					testIds[i] = into.getTestNames().getId(names[i]);  // the ids of the report loading the entry
+				}
+				names = readNames(in);
+				testNames = (names == null)? null : new HashSet<>(Arrays.asList(names));
+				into.readCoverage(in, testIds, testTitle);
+				if(!file.setLastModified(System.currentTimeMillis()))
+				{
+					LOGGER.log(Level.FINE, "Could not mark {0} as used", file.getName());
+				}
+				LOGGER.log(Level.INFO, "Loaded data file {0} from the parse cache", traceFile.getName());
+			}
+			return result;
+		}
+
+		/**
+		 * Stores freshly parsed data, replacing any previous data for the tracefile.
+		 * Failures are logged, the report does not depend on the cache.
+		 * @param from The partial data parsed from the tracefile.
+		 * @param testNames The test names found when the tracefile was parsed, may be null.
+		 */
+		void store(final ParsedFiles from, final Set<String> testNames)
+		{
+			try
+			{
+				if(!dir.isDirectory() && !dir.mkdirs())
+				{
+					throw new IOException("Can not create " + dir.getAbsolutePath());
+				}
+				File tmp = File.createTempFile("entry", ".tmp", dir);
+				try
+				{
+					CRC32 crc = new CRC32();
+					try (OutputStream raw = new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))
+					{
+						DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+						writeHeader(out);
+						writeNames(out, from.getTestNames().getNames());
+						writeNames(out, (testNames == null)? null : testNames.toArray(new String[testNames.size()]));
+						from.writeCoverage(out);
+						out.flush();
+						new DataOutputStream(raw).writeInt((int)crc.getValue());
+					}
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+				finally
+				{
+					if(tmp.exists() && !tmp.delete())
+					{
+						LOGGER.log(Level.FINE, "Could not delete {0}", tmp.getAbsolutePath());
+					}
+				}
+				evict();
+			}
+			catch(IOException ex)
+			{
+				LOGGER.log(Level.WARNING, "Could not cache {0}: {1}", new Object[]{traceFile.getName(), ex.getLocalizedMessage()});
+			}
+		}
+
+		/**
+		 * Reads the entry and checks it belongs to the tracefile as it is now.
+		 * @return The entry positioned after the header or null if the entry can not be used.
+		 */
+		private DataInputStream open() throws IOException
+		{
+			DataInputStream result = null;
+			if(file.isFile())
+			{
+				byte[] data = Files.readAllBytes(file.toPath());
+				int length = data.length - 4;
+				if(length > 0)
+				{
+					CRC32 crc = new CRC32();
+					crc.update(data, 0, length);
+					if((int)crc.getValue() == ByteBuffer.wrap(data, length, 4).getInt())
+					{
+						result = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+						if(!isCurrent(result))
+						{
+							LOGGER.log(Level.FINE, "Parse cache entry for {0} is out of date", traceFile.getName());
+							result = null;
+						}
+					}
+					else
+					{
+						LOGGER.log(Level.WARNING, "Ignoring corrupt parse cache entry {0}", file.getAbsolutePath());
+					}
+				}
+			}
+			return result;
+		}
+
+		private void writeHeader(final DataOutputStream out) throws IOException
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeUTF(JGenHtml.VERSION);
+			out.writeUTF(Charset.defaultCharset().name());  // names in the tracefile were decoded with this
+			out.writeUTF(path);
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			byte[] contentDigest = getDigest();
+			out.writeInt(contentDigest.length);
+			out.write(contentDigest);
+		}
+
+		/**
+		 * Checks the header written by writeHeader against the tracefile.
+		 * The content of the tracefile is only hashed if everything else matches.
+		 */
+		private boolean isCurrent(final DataInputStream in) throws IOException
+		{
+			boolean result = in.readInt() == MAGIC && in.readInt() == FORMAT
+					&& JGenHtml.VERSION.equals(in.readUTF())
+					&& Charset.defaultCharset().name().equals(in.readUTF())
+					&& path.equals(in.readUTF())
+					&& in.readLong() == size && in.readLong() == lastModified;
+			if(result)
+			{
+				byte[] contentDigest = new byte[in.readInt()];
+				in.readFully(contentDigest);
+				result = Arrays.equals(contentDigest, getDigest());
+			}
+			return result;
+		}
+
+		/**
+		 * Hashes the content of the tracefile, once.
+		 */
+		private byte[] getDigest() throws IOException
+		{
+			if(digest == null)
+			{
+				MessageDigest messageDigest;
+				try
+				{
+					messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+				}
+				catch(NoSuchAlgorithmException ex)
+				{
+					throw new IllegalStateException(ex);  // every JRE must support SHA-256
+				}
+				byte[] buffer = new byte[BUFFER_SIZE];
+				try (InputStream in = new FileInputStream(traceFile))
+				{
+					int read;
+					while((read = in.read(buffer)) >= 0)
+					{
+						messageDigest.update(buffer, 0, read);
+					}
+				}
+				digest = messageDigest.digest();
+			}
+			return digest;
+		}
+	}
+
+	private static void writeNames(final DataOutputStream out, final String[] names) throws IOException
+	{
+		if(names == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			out.writeInt(names.length);
+			for(String name : names)
+			{
+				out.writeUTF(name);
+			}
+		}
+	}
+
+	private static String[] readNames(final DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		String[] result = (count < 0)? null : new String[count];
+		for(int i = 0; i < count; i++)
+		{
+			result[i] = in.readUTF();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Stores information about all the source code files parsed from the tracefile.
+ * Basically a registry to manage parsed source file data.
+ * @author Rick Brown
+ */
+final class ParsedFiles
+{
+	private final Map<String, TestCaseSourceFile> parsed;
+	private final boolean loadSource;
+	private final String tabExpander;
+	private final TestNames testNames;
+	private final File workingDir;
+
+	ParsedFiles()
+	{
+		this(true);
+	}
+
+	/**
+	 * @param loadSource If false the source code is not read when a source file is created.
+	 * Use this for partial data which will be merged into another instance.
+	 */
+	ParsedFiles(final boolean loadSource)
+	{
+		this(loadSource, -1);
+	}
+
+	/**
+	 * @param loadSource If false the source code is not read when a source file is created.
+	 * @param numSpaces Replace tabs in the source code with this many spaces, -1 to leave tabs alone.
+	 */
+	ParsedFiles(final boolean loadSource, final int numSpaces)
+	{
+		this(loadSource, numSpaces, null);
+	}
+
+	/**
+	 * @param loadSource If false the source code is not read when a source file is created.
+	 * @param numSpaces Replace tabs in the source code with this many spaces, -1 to leave tabs alone.
+	 * @param workingDir Relative source file paths in the tracefiles are resolved against this, null for the current directory.
+	 */
+	ParsedFiles(final boolean loadSource, final int numSpaces, final File workingDir)
+	{
+		this(loadSource, Line.getTabExpander(numSpaces), new TestNames(), workingDir);
+	}
+
+	private ParsedFiles(final boolean loadSource, final String tabExpander, final TestNames testNames, final File workingDir)
+	{
+		this.parsed = loadSource? new HashMap<String, TestCaseSourceFile>() : new LinkedHashMap<String, TestCaseSourceFile>();  // partial data is merged in the order it was parsed
+		this.loadSource = loadSource;
+		this.tabExpander = tabExpander;
+		this.testNames = testNames;
+		this.workingDir = workingDir;
+	}
+
+	/**
+	 * Creates an instance for partial data, which does not load source, to be merged into this one.
+	 * It shares the test names of this instance so the hit counts can be merged id for id.
+	 * It keeps source file paths as they are in the tracefile (as does the parse cache), they are resolved when merged.
+	 * @return An empty instance.
+	 */
+	ParsedFiles createPartial()
+	{
+		return new ParsedFiles(false, null, testNames, null);
+	}
+
+	/**
+	 * @return The test names of the report, which the hit counts of every source file are stored against.
+	 */
+	TestNames getTestNames()
+	{
+		return testNames;
+	}
+
+	public TestCaseSourceFile get(final String filePath)
+	{
+		TestCaseSourceFile result = null;
+		if(parsed.containsKey(filePath))
+		{
+			result = parsed.get(filePath);
+		}
+		return result;
+	}
+
+	public TestCaseSourceFile put(final String filePath, final TestCaseSourceFile parsedFile)
+	{
+		return parsed.put(filePath, parsedFile);
+	}
+
+	/**
+	 * Get the parsed data for a source file.
+	 * @param sourceFile The source file referenced in the tracefile, relative paths are resolved against the working directory.
+	 * @param testTitle The test name to give the source file if it is created.
+	 * @param create If true the source file will be created if it has not been seen before.
+	 * @return The parsed source file or null if it has not been seen before and create is false.
+	 */
+	public TestCaseSourceFile get(final File sourceFile, final String testTitle, final boolean create) throws ParserConfigurationException, IOException
+	{
+		File resolved = sourceFile;
+		if(workingDir != null && !sourceFile.isAbsolute())
+		{
+			resolved = JGenHtmlUtils.processFilePath(new File(workingDir, sourceFile.getPath()).getPath());
+		}
+		TestCaseSourceFile result = get(resolved.getPath());
+		if(create && result == null)
+		{
+			result = new TestCaseSourceFile(testTitle, resolved.getName(), testNames);
+			result.setSourceFile(resolved, loadSource, tabExpander);
+			put(resolved.getPath(), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds partial data parsed from another tracefile, source files are merged in the order they were parsed.
+	 * @param partial Data parsed into an instance which does not load source.
+	 * @param testTitle The test name to give source files created by the merge.
+	 */
+	void merge(final ParsedFiles partial, final String testTitle) throws ParserConfigurationException, IOException
+	{
+		for(Map.Entry<String, TestCaseSourceFile> entry : partial.parsed.entrySet())
+		{
+			get(new File(entry.getKey()), testTitle, true).merge(entry.getValue());
+		}
+	}
+
+	/**
+	 * Writes the coverage data of every source file to a parse cache entry, in the order they were parsed.
+	 * @param out The entry being written.
+	 * @throws IOException If the entry could not be written.
+	 */
+	void writeCoverage(final DataOutput out) throws IOException
+	{
+		out.writeInt(parsed.size());
+		for(Map.Entry<String, TestCaseSourceFile> entry : parsed.entrySet())
+		{
+			out.writeUTF(entry.getKey());
+			entry.getValue().writeCoverage(out);
+		}
+	}
+
+	/**
+	 * Reads coverage data written by writeCoverage, as if the tracefile had been parsed into this instance.
+	 * @param in The entry being read.
+	 * @param testIds Maps the test ids in the entry to the ids from getTestNames.
+	 * @param testTitle The test name to give source files created from the entry.
+	 * @throws IOException If the entry could not be read.
+	 */
+	void readCoverage(final DataInput in, final int[] testIds, final String testTitle) throws IOException, ParserConfigurationException
+	{
+		int count = in.readInt();
+		for(int i = 0; i < count; i++)
+		{
+			get(new File(in.readUTF()), testTitle, true).readCoverage(in, testIds);
+		}
+	}
+
+	public Collection<TestCaseSourceFile> getAll()
+	{
+		return this.parsed.values();
+	}
+
+	public int getCount()
+	{
+		return this.parsed.size();
+	}
+}
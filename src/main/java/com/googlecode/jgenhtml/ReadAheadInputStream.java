@@ -0,0 +1,241 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a background thread so that, for example, a tracefile can be
+ * inflated while the previous chunk of it is being parsed.
+ * A fixed number of buffers is passed back and forth between the two threads so memory use is bounded.
+ * @author Rick Brown
+ */
+final class ReadAheadInputStream extends InputStream
+{
+	private static final int BUFFER_COUNT = 4;
+	private final InputStream source;
+	private final BlockingQueue<Chunk> filled;
+	private final BlockingQueue<Chunk> free;
+	private final Thread reader;
+	private volatile IOException failure;
+	private Chunk current;
+	private int pos;
+	private boolean eof;
+
+	/**
+	 * A buffer and the number of valid bytes in it, -1 marks the end of the stream.
+	 */
+	private static class Chunk
+	{
+		private final byte[] data;
+		private int length;
+
+		Chunk(final int size)
+		{
+			this.data = new byte[size];
+			this.length = 0;
+		}
+	}
+
+	/**
+	 * Create a new instance and start reading.
+	 * @param source The stream to read ahead of the consumer, will be closed when this stream is closed.
+	 * @param bufferSize The size of each buffer.
+	 */
+	ReadAheadInputStream(final InputStream source, final int bufferSize)
+	{
+		this.source = source;
+		this.filled = new ArrayBlockingQueue<>(BUFFER_COUNT);
+		this.free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+		for(int i = 0; i < BUFFER_COUNT; i++)
+		{
+			free.add(new Chunk(bufferSize));
+		}
+		this.current = null;
+		this.pos = 0;
+		this.eof = false;
+		this.reader = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				readAhead();
+			}
+		}, "jgenhtml-read-ahead");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Runs on the background thread, fills free buffers until the source is exhausted.
+	 * However it stops, unless the consumer closed the stream, the consumer is sent the end of the stream.
+	 */
+	private void readAhead()
+	{
+		boolean ended = false;
+		try
+		{
+			int length;
+			do
+			{
+				Chunk chunk = free.take();
+				length = fill(chunk.data);
+				chunk.length = length;
+				filled.put(chunk);
+			}
+			while(length >= 0);
+			ended = true;
+		}
+		catch(InterruptedException ex)
+		{
+			ended = true;  // the consumer closed the stream
+		}
+		catch(RuntimeException | Error ex)
+		{
+			failure = new IOException("Could not read ahead", ex);
+		}
+		finally
+		{
+			if(!ended)
+			{
+				Chunk end = new Chunk(0);
+				end.length = -1;
+				filled.offer(end);  // there is room, this thread held one of the buffers
+			}
+		}
+	}
+
+	/**
+	 * Read from the source until the buffer is full or the source is exhausted.
+	 * @param buffer The buffer to fill.
+	 * @return The number of bytes read or -1 if the source is exhausted (or failed).
+	 */
+	private int fill(final byte[] buffer)
+	{
+		int result = 0;
+		try
+		{
+			int len;
+			while(result < buffer.length && (len = source.read(buffer, result, buffer.length - result)) >= 0)
+			{
+				result += len;
+			}
+		}
+		catch(IOException ex)
+		{
+			failure = ex;
+		}
+		return (result == 0 || failure != null)? -1 : result;
+	}
+
+	/**
+	 * Make sure there is something to read in the current chunk.
+	 * @return false if the end of the stream has been reached.
+	 */
+	private boolean ensureAvailable() throws IOException
+	{
+		while(!eof && (current == null || pos >= current.length))
+		{
+			if(current != null)
+			{
+				free.add(current);
+				current = null;
+			}
+			try
+			{
+				Chunk next = filled.take();
+				if(next.length < 0)
+				{
+					eof = true;
+				}
+				else
+				{
+					current = next;
+					pos = 0;
+				}
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading ahead", ex);
+			}
+		}
+		if(eof && failure != null)
+		{
+			throw failure;
+		}
+		return !eof;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int result = -1;
+		if(ensureAvailable())
+		{
+			result = current.data[pos++] & 0xFF;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException
+	{
+		int result;
+		if(len == 0)
+		{
+			result = 0;
+		}
+		else if(ensureAvailable())
+		{
+			result = Math.min(len, current.length - pos);
+			System.arraycopy(current.data, pos, b, off, result);
+			pos += result;
+		}
+		else
+		{
+			result = -1;
+		}
+		return result;
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		return (current == null)? 0 : current.length - pos;
+	}
+
+	/**
+	 * Stops the background thread, waiting for it to finish with the source before the source is closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		reader.interrupt();
+		try
+		{
+			reader.join();
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+}
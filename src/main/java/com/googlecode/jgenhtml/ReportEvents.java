@@ -0,0 +1,130 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits Java Flight Recorder events for each tracefile read, page written and XSLT transform, so that a recording
+ * shows which of them a slow report spends its time on. This class does nothing, JfrReportEvents emits the events
+ * and is only loaded if the JVM has JFR (jdk.jfr), so jgenhtml still runs on JVMs without it.
+ * Each begin method returns the event to pass to the matching end method, or null if no recording wants it, in
+ * which case the end method does nothing.
+ * @author Rick Brown
+ */
+class ReportEvents
+{
+	private static final Logger LOGGER = Logger.getLogger(ReportEvents.class.getName());
+	private static final ReportEvents INSTANCE;
+
+	static {
+		JGenHtmlUtils.setLogFormatter(LOGGER);
+		INSTANCE = create();
+	}
+
+	/**
+	 * @return The events of this JVM, which do nothing if it does not have JFR.
+	 */
+	static ReportEvents getInstance()
+	{
+		return INSTANCE;
+	}
+
+	private static ReportEvents create()
+	{
+		ReportEvents result;
+		try
+		{
+			Class.forName("jdk.jfr.Event");
+			result = (ReportEvents)Class.forName(ReportEvents.class.getPackage().getName() + ".JfrReportEvents").getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException | LinkageError ex)
+		{
+			LOGGER.log(Level.FINE, "Flight recorder events are not available: {0}", ex.toString());
+			result = new ReportEvents();
+		}
+		return result;
+	}
+
+	/**
+	 * @return The event to pass to endTraceFile or endTraceFileChunk, null if it is not recorded.
+	 */
+	Object beginTraceFile()
+	{
+		return null;
+	}
+
+	/**
+	 * Ends the event of reading a whole tracefile.
+	 * @param event The event from beginTraceFile.
+	 * @param traceFile The tracefile.
+	 * @param records The number of records parsed, 0 if the tracefile was loaded from the parse cache.
+	 * @param cached true if the tracefile was loaded from the parse cache.
+	 */
+	void endTraceFile(final Object event, final File traceFile, final long records, final boolean cached)
+	{
+	}
+
+	/**
+	 * Ends the event of parsing part of a tracefile which was split between threads.
+	 * @param event The event from beginTraceFile.
+	 * @param traceFile The tracefile.
+	 * @param start The offset of the first byte parsed.
+	 * @param end The offset after the last byte parsed.
+	 * @param records The number of records parsed.
+	 */
+	void endTraceFileChunk(final Object event, final File traceFile, final long start, final long end, final long records)
+	{
+	}
+
+	/**
+	 * @return The event to pass to endPage, null if it is not recorded.
+	 */
+	Object beginPage()
+	{
+		return null;
+	}
+
+	/**
+	 * Ends the event of writing a page (and, for a source page, its function page).
+	 * @param event The event from beginPage.
+	 * @param page The page.
+	 * @param config The user preferences of the report the page belongs to.
+	 */
+	void endPage(final Object event, final CoveragePage page, final Config config)
+	{
+	}
+
+	/**
+	 * @return The event to pass to endTransform, null if it is not recorded.
+	 */
+	Object beginTransform()
+	{
+		return null;
+	}
+
+	/**
+	 * Ends the event of transforming a page to a file.
+	 * @param event The event from beginTransform.
+	 * @param targetFile The file written.
+	 * @param asXml true if the page was written as XML rather than transformed to HTML.
+	 */
+	void endTransform(final Object event, final File targetFile, final boolean asXml)
+	{
+	}
+}
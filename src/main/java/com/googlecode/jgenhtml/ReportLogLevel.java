@@ -0,0 +1,138 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The log level (--quiet or jgenhtml_verbose) of the report the current thread is working for.
+ * The jgenhtml log handler drops records below it, so reports generated at the same time in one JVM, by the daemon
+ * or by Maven modules built in parallel, each log at their own level. Threads which are not working for a report
+ * log at INFO, as before.
+ * The loggers only pass records below INFO to the handler while a verbose report is running.
+ * Class loggers which do not have the jgenhtml handler log through the package logger, which does, so every record
+ * is filtered (a Filter on the package logger would not see records logged to the class loggers).
+ * @author Rick Brown
+ */
+final class ReportLogLevel
+{
+	private static final ThreadLocal<Level> LEVEL = new ThreadLocal<>();
+	private static final Logger PACKAGE_LOGGER = Logger.getLogger("com.googlecode.jgenhtml");  // held so the level and handler stick
+	static{
+		JGenHtmlUtils.setLogFormatter(PACKAGE_LOGGER);  // for class loggers without a handler, instead of the root ConsoleHandler
+	}
+	private static final Object LOCK = new Object();
+	private static int verboseReports = 0;
+	private static Level packageLevel = null;
+
+	private ReportLogLevel()
+	{
+	}
+
+	/**
+	 * @return The level of the report the current thread is working for, INFO if it is not working for one.
+	 */
+	static Level get()
+	{
+		Level result = LEVEL.get();
+		return (result == null)? Level.INFO : result;
+	}
+
+	/**
+	 * Starts working for a report on the current thread. Every call must be matched by a call to end.
+	 * @param level The level of the report.
+	 * @return The level the thread was working at before, to pass to end.
+	 */
+	static Level begin(final Level level)
+	{
+		Level result = LEVEL.get();
+		LEVEL.set(level);
+		if(isVerbose(level))
+		{
+			synchronized(LOCK)
+			{
+				if(verboseReports++ == 0)
+				{
+					packageLevel = PACKAGE_LOGGER.getLevel();
+					PACKAGE_LOGGER.setLevel(Level.ALL);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Stops working for a report on the current thread.
+	 * @param level The level passed to begin.
+	 * @param previous The level returned by begin.
+	 */
+	static void end(final Level level, final Level previous)
+	{
+		if(previous == null)
+		{
+			LEVEL.remove();
+		}
+		else
+		{
+			LEVEL.set(previous);
+		}
+		if(isVerbose(level))
+		{
+			synchronized(LOCK)
+			{
+				if(--verboseReports == 0)
+				{
+					PACKAGE_LOGGER.setLevel(packageLevel);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wraps a task so that it logs at the level of a report on whichever pool thread runs it.
+	 * @param task The task.
+	 * @param level The level of the report the task works for.
+	 * @return The wrapped task.
+	 */
+	static <T> Callable<T> wrap(final Callable<T> task, final Level level)
+	{
+		return new Callable<T>()
+		{
+			@Override
+			public T call() throws Exception
+			{
+				T result;
+				Level previous = begin(level);
+				try
+				{
+					result = task.call();
+				}
+				finally
+				{
+					end(level, previous);
+				}
+				return result;
+			}
+		};
+	}
+
+	private static boolean isVerbose(final Level level)
+	{
+		return level.intValue() < Level.INFO.intValue();
+	}
+}
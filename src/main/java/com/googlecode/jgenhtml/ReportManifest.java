@@ -0,0 +1,182 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Remembers a hash of every page in the report so that the next run only writes the pages which have changed.
+ * Each hash covers the data shown on the page, the user preferences which affect how it is shown and the version
+ * of the stylesheet. The manifest is stored in the output directory.
+ * @author Rick Brown
+ */
+final class ReportManifest
+{
+	private static final Logger LOGGER = Logger.getLogger(ReportManifest.class.getName());
+	static{
+		JGenHtmlUtils.setLogFormatter(LOGGER);
+	}
+	static final String FILE_NAME = "jgenhtml.manifest";
+	private final Config config;
+	private final File rootDir;
+	private final File file;
+	private final Properties previous;
+	private final Properties current;
+	private final String fingerprint;
+
+	/**
+	 * Loads the manifest from the last run, if there is one.
+	 * The file is deleted once loaded so that if this run fails part way through the next run writes every page.
+	 * @param config The user preferences for this run.
+	 * @throws IOException If the manifest could not be read.
+	 * @throws ParserConfigurationException If the user preferences could not be hashed.
+	 */
+	ReportManifest(final Config config) throws IOException, ParserConfigurationException
+	{
+		this.config = config;
+		this.rootDir = config.getOutRootDir();
+		this.file = new File(rootDir, FILE_NAME);
+		this.previous = new Properties();
+		this.current = new Properties();
+		this.fingerprint = getFingerprint(config);
+		if(file.isFile())
+		{
+			try (InputStream in = new FileInputStream(file))
+			{
+				previous.load(in);
+			}
+			if(!file.delete())
+			{
+				LOGGER.log(Level.WARNING, "Could not delete {0}", file.getAbsolutePath());
+			}
+			LOGGER.log(Level.FINE, "Loaded {0} page hashes", previous.size());
+		}
+	}
+
+	/**
+	 * Deletes the manifest from the last run, if there is one, before a run which is not incremental rewrites
+	 * the pages. Otherwise the next incremental run would compare against hashes of pages which are no longer there.
+	 * @param config The user preferences for this run.
+	 */
+	static void delete(final Config config)
+	{
+		File file = new File(config.getOutRootDir(), FILE_NAME);
+		if(file.isFile() && !file.delete())
+		{
+			LOGGER.log(Level.WARNING, "Could not delete {0}", file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Determine if a page needs to be written, either because it is new, it has changed since the last run
+	 * or its files have gone from the report.
+	 * The hash of the page is remembered for the next run either way.
+	 * @param page A page in the report.
+	 * @return true if the page needs to be written.
+	 */
+	boolean isChanged(final CoveragePage page)
+	{
+		PageDigest digest = new PageDigest().add(fingerprint);
+		page.digest(digest);
+		String hash = digest.toHex();
+		String key = rootDir.toURI().relativize(page.getTargetFile(config, false).toURI()).getPath();
+		current.setProperty(key, hash);
+		return !hash.equals(previous.getProperty(key)) || !page.isWritten(config);
+	}
+
+	/**
+	 * Picks out the pages which need to be written.
+	 * @param pages Pages in the report.
+	 * @return The pages which have changed, in the same order.
+	 */
+	<T extends CoveragePage> List<T> getChanged(final Collection<T> pages)
+	{
+		List<T> result = new ArrayList<>(pages.size());
+		for(T page : pages)
+		{
+			if(isChanged(page))
+			{
+				result.add(page);
+			}
+		}
+		LOGGER.log(Level.INFO, "Skipping {0} of {1} unchanged pages.", new Object[]{pages.size() - result.size(), pages.size()});
+		return result;
+	}
+
+	/**
+	 * Writes the manifest to the output directory, call this only when every page has been written.
+	 * Pages which were not in this run are dropped.
+	 * @throws IOException If the manifest could not be written.
+	 */
+	void save() throws IOException
+	{
+		try (OutputStream out = new FileOutputStream(file))
+		{
+			current.store(out, "jgenhtml " + JGenHtml.VERSION + " page hashes, delete this file to rewrite every page");
+		}
+	}
+
+	/**
+	 * Hashes everything, apart from the coverage data, which affects the content of every page.
+	 * @param config The user preferences.
+	 * @return A hash of the preferences and the stylesheet.
+	 */
+	private static String getFingerprint(final Config config) throws IOException, ParserConfigurationException
+	{
+		PageDigest digest = new PageDigest();
+		digest.add(JGenHtml.VERSION);
+		try (InputStream in = ReportManifest.class.getResourceAsStream('/' + JGenHtmlUtils.XSLT_NAME))
+		{
+			digest.add(IOUtils.toByteArray(in));
+		}
+		Element configElement = config.toXml(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument());
+		NamedNodeMap attributes = configElement.getAttributes();
+		Map<String, String> sorted = new TreeMap<>();
+		for(int i = 0; i < attributes.getLength(); i++)
+		{
+			Node attribute = attributes.item(i);
+			sorted.put(attribute.getNodeName(), attribute.getNodeValue());
+		}
+		for(Map.Entry<String, String> attribute : sorted.entrySet())
+		{
+			digest.add(attribute.getKey()).add(attribute.getValue());
+		}
+		File cssFile = config.getCssFile();
+		digest.add((cssFile != null)? cssFile.getName() : null);
+		digest.add(config.getHtmlExt()).add(config.isHtmlOnly()).add(config.getNumSpaces());
+		digest.add(config.isGzip()).add(config.getGzipLevel()).add(config.isGzipStatic());
+		return digest.toHex();
+	}
+}
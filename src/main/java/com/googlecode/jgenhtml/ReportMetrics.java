@@ -0,0 +1,299 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+
+/**
+ * Times each phase of generating a report and counts what it did: tracefile records parsed, pages written and
+ * bytes written. The results are written as JSON to the output directory for build dashboards.
+ * Phases are started and ended on the report's thread, the counters may be added to from any thread.
+ * Peak heap is the most heap in use seen while the phase ran, sampled every few milliseconds rather than taken from
+ * the JVM's peak usage, which is shared with every other report. The heap is that of the whole JVM though, so it
+ * includes other reports generated at the same time (by the daemon or Maven modules built in parallel) and it can
+ * miss a peak shorter than the sampling interval.
+ * @author Rick Brown
+ */
+final class ReportMetrics
+{
+	static final String FILE_NAME = "jgenhtml-metrics.json";
+	private static final long SAMPLE_MILLIS = 10;
+	private static final Object SAMPLER_LOCK = new Object();
+	private static final Set<Phase> SAMPLED = new HashSet<>();  // the phases running in every report
+	private static ScheduledExecutorService sampler = null;  // running while there are phases to sample
+	private final List<Phase> phases;
+	private final AtomicLong records;
+	private final AtomicLong pages;
+	private final AtomicLong bytes;
+	private final long started;
+	private Phase current;
+
+	ReportMetrics()
+	{
+		this.phases = new ArrayList<>();
+		this.records = new AtomicLong();
+		this.pages = new AtomicLong();
+		this.bytes = new AtomicLong();
+		this.started = System.currentTimeMillis();
+		this.current = null;
+	}
+
+	/**
+	 * Starts timing a phase, ending the current phase if there is one.
+	 * @param name The name of the phase.
+	 */
+	void start(final String name)
+	{
+		end();
+		current = new Phase(name, records.get(), pages.get(), bytes.get());
+		startSampling(current);
+	}
+
+	/**
+	 * Ends the current phase, if there is one.
+	 */
+	void end()
+	{
+		if(current != null)
+		{
+			stopSampling(current);
+			current.end(records.get(), pages.get(), bytes.get());
+			phases.add(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * @param count The number of tracefile records (data lines) parsed.
+	 */
+	void addRecords(final long count)
+	{
+		records.addAndGet(count);
+	}
+
+	/**
+	 * Counts a page file written.
+	 */
+	void addPage()
+	{
+		pages.incrementAndGet();
+	}
+
+	/**
+	 * @param count The number of bytes written to the output directory.
+	 */
+	void addBytes(final long count)
+	{
+		bytes.addAndGet(count);
+	}
+
+	/**
+	 * Wraps a stream to a file in the report so that the bytes written to it are counted.
+	 * @param out The file stream.
+	 * @return A stream which writes to out.
+	 */
+	OutputStream count(final OutputStream out)
+	{
+		return new ProxyOutputStream(out)
+		{
+			@Override
+			protected void afterWrite(final int n)
+			{
+				bytes.addAndGet(n);
+			}
+		};
+	}
+
+	/**
+	 * Ends the current phase and writes every phase, and the totals, to the output directory.
+	 * @param rootDir The output directory.
+	 * @throws IOException If the file could not be written.
+	 */
+	void save(final File rootDir) throws IOException
+	{
+		end();
+		FileUtils.writeStringToFile(new File(rootDir, FILE_NAME), toJson() + '\n', "UTF-8");
+	}
+
+	/**
+	 * @return The phases so far, and their totals, as JSON.
+	 */
+	String toJson()
+	{
+		long wallMillis = 0;
+		long peakHeap = 0;
+		for(Phase phase : phases)
+		{
+			wallMillis += phase.wallMillis;
+			peakHeap = Math.max(peakHeap, phase.peakHeap);
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		StringBuilder result = new StringBuilder();
+		result.append("{\"version\":\"").append(JGenHtml.VERSION).append("\",\"started\":\"").append(format.format(new Date(started)));
+		result.append("\",\"totals\":{");
+		appendJson(result, wallMillis, records.get(), pages.get(), bytes.get(), peakHeap).append("},\"phases\":[");
+		for(int i = 0; i < phases.size(); i++)
+		{
+			Phase phase = phases.get(i);
+			result.append((i > 0)? ",{" : "{").append("\"name\":\"").append(phase.name).append("\",");
+			appendJson(result, phase.wallMillis, phase.records, phase.pages, phase.bytes, phase.peakHeap).append('}');
+		}
+		return result.append("]}").toString();
+	}
+
+	private static StringBuilder appendJson(final StringBuilder json, final long wallMillis, final long records, final long pages, final long bytes, final long peakHeap)
+	{
+		json.append("\"wallMillis\":").append(wallMillis).append(",\"records\":").append(records).append(",\"pages\":").append(pages);
+		return json.append(",\"bytes\":").append(bytes).append(",\"peakHeapBytes\":").append(peakHeap);
+	}
+
+	/**
+	 * Samples the heap for a phase until stopSampling is called, starting the sampler if it is not running.
+	 * @param phase The phase which has just started.
+	 */
+	private static void startSampling(final Phase phase)
+	{
+		long used = getHeapUsed();
+		synchronized(SAMPLER_LOCK)
+		{
+			phase.sample(used);
+			SAMPLED.add(phase);
+			if(sampler == null)
+			{
+				sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(final Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "jgenhtml-heap-sampler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				sampler.scheduleAtFixedRate(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						sample();
+					}
+				}, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Stops sampling the heap for a phase, stopping the sampler if no other phase is running.
+	 * @param phase The phase which is ending.
+	 */
+	private static void stopSampling(final Phase phase)
+	{
+		long used = getHeapUsed();
+		synchronized(SAMPLER_LOCK)
+		{
+			phase.sample(used);
+			SAMPLED.remove(phase);
+			if(SAMPLED.isEmpty() && sampler != null)
+			{
+				sampler.shutdownNow();
+				sampler = null;
+			}
+		}
+	}
+
+	private static void sample()
+	{
+		long used = getHeapUsed();
+		synchronized(SAMPLER_LOCK)
+		{
+			for(Phase phase : SAMPLED)
+			{
+				phase.sample(used);
+			}
+		}
+	}
+
+	/**
+	 * @return The heap in use by the whole JVM.
+	 */
+	private static long getHeapUsed()
+	{
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * The wall time and the counts of one phase.
+	 */
+	private static final class Phase
+	{
+		private final String name;
+		private final long start;
+		private long wallMillis;
+		private long records;
+		private long pages;
+		private long bytes;
+		private long peakHeap;  // guarded by SAMPLER_LOCK until the phase ends
+
+		/**
+		 * @param name The name of the phase.
+		 * @param records The number of records parsed before the phase.
+		 * @param pages The number of pages written before the phase.
+		 * @param bytes The number of bytes written before the phase.
+		 */
+		Phase(final String name, final long records, final long pages, final long bytes)
+		{
+			this.name = name;
+			this.start = System.nanoTime();
+			this.records = records;
+			this.pages = pages;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @param used The heap in use now, remembered if it is the most seen in this phase.
+		 */
+		void sample(final long used)
+		{
+			peakHeap = Math.max(peakHeap, used);
+		}
+
+		void end(final long records, final long pages, final long bytes)
+		{
+			this.wallMillis = (System.nanoTime() - start) / 1000000L;
+			this.records = records - this.records;
+			this.pages = pages - this.pages;
+			this.bytes = bytes - this.bytes;
+		}
+	}
+}
@@ -15,31 +15,68 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
  * Represents a distinct unit of source code, for example a line (executable or not), function, branch etc.
+ * Hit counts are stored per test case against the ids from the TestNames of the report the code belongs to.
+ * There are usually very many instances so the counts are kept in primitive storage: a single int while only one test
+ * case has hit this code, a sparse array sorted by id for a few test cases and a dense array indexed by id for many.
  * @author Rick Brown
  */
 public abstract class SourceCode
 {
 	public static final int NON_EXECUTABLE = -1;
-	private final Map<String, Integer> hits = new HashMap<>();
+	private static final int ABSENT = -1;  // hit counts are never negative
+	private static final int MIN_DENSE = 16;  // use sparse storage for fewer test cases than this
 	private boolean executable;
+	private TestNames testNames;
+	private int testCount = 0;
+	private int totalHits = 0;  // kept up to date as hits are stored
+	private int singleId = ABSENT;
+	private int singleHits = 0;
+	private int[] sparseIds = null;
+	private int[] sparseHits = null;
+	private int[] denseHits = null;
 
 	/**
 	 * Create a new instance and sets the executable flag accordingly.
 	 * @param executable true if this represents an executable source code unit.
 	 */
 	SourceCode(boolean executable)
+	{
+		this(executable, null);
+	}
+
+	/**
+	 * Create a new instance and sets the executable flag accordingly.
+	 * @param executable true if this represents an executable source code unit.
+	 * @param testNames The test names of the report this code belongs to, null for an instance of its own.
+	 */
+	SourceCode(final boolean executable, final TestNames testNames)
 	{
 		this.executable = executable;
+		this.testNames = testNames;
+	}
+
+	/**
+	 * @return The test names the hit counts are stored against.
+	 */
+	TestNames getTestNames()
+	{
+		if(testNames == null)
+		{
+			testNames = new TestNames();  // this instance is not part of a report
+		}
+		return testNames;
 	}
 
 	/**
@@ -49,18 +86,15 @@ public abstract class SourceCode
 	 */
 	public Collection<String> getTestCaseNames(final boolean hitOnly)
 	{
-		Collection<String> result = hits.keySet();
-		if(hitOnly)
+		Set<String> result = hitOnly? new HashSet<String>(testCount) : new HashSet<String>();
+		TestNames names = getTestNames();
+		int[] ids = getTestIds();
+		for(int id : ids)
 		{
-			Set<String> filtered = new HashSet<>(result.size());
-			for (String testName : result)
+			if(!hitOnly || findHits(id) > 0)
 			{
-				if(hits.get(testName) > 0)
-				{
-					filtered.add(testName);
-				}
+				result.add(names.getName(id));
 			}
-			result = filtered;
 		}
 		return result;
 	}
@@ -88,20 +122,7 @@ public abstract class SourceCode
 	 */
 	public int getTotalHits()
 	{
-		int result;
-		if(executable)
-		{
-			result = 0;
-			for(Integer next : hits.values())
-			{
-				result += next;
-			}
-		}
-		else
-		{
-			result = NON_EXECUTABLE;
-		}
-		return result;
+		return executable? totalHits : NON_EXECUTABLE;
 	}
 
 	/**
@@ -114,14 +135,8 @@ public abstract class SourceCode
 		int result;
 		if(executable)
 		{
-			if(hits.containsKey(testCaseName))
-			{
-				result = hits.get(testCaseName);
-			}
-			else
-			{
-				result = 0;
-			}
+			int id = getTestNames().find(testCaseName);
+			result = (id == TestNames.NOT_FOUND)? 0 : Math.max(0, findHits(id));
 		}
 		else
 		{
@@ -141,7 +156,284 @@ public abstract class SourceCode
 	public void setHits(final String testCaseName, final int hits)
 	{
 		setExecutable();
-		this.hits.put(testCaseName, Math.max(0, hits));
+		int testId = getTestNames().getId(testCaseName);
+		putHits(testId, findHits(testId), Math.max(0, hits));
+	}
+
+	/**
+	 * Add to (or, with a negative number, subtract from) the number of times this code was executed/taken.
+	 * Automatically flags this instance as executable, the hit count never drops below zero.
+	 * @param testId The id of the test case from getTestNames.
+	 * @param hits The number of hits to add.
+	 */
+	void addHits(final int testId, final int hits)
+	{
+		setExecutable();
+		int previous = findHits(testId);
+		putHits(testId, previous, Math.max(0, Math.max(0, previous) + hits));
+	}
+
+	/**
+	 * Adds the hit counts of another instance to this one, test case by test case.
+	 * Used to merge data for the same source code parsed from different tracefiles.
+	 * @param other Another instance representing the same unit of source code.
+	 */
+	void merge(final SourceCode other)
+	{
+		if(other.executable)
+		{
+			setExecutable();
+			TestNames names = getTestNames();
+			TestNames otherNames = other.getTestNames();
+			for(int id : other.getTestIds())
+			{
+				addHits((otherNames == names)? id : names.getId(otherNames.getName(id)), other.findHits(id));
+			}
+		}
+	}
+
+	/**
+	 * Adds everything about this code which shows up in a report page to a hash.
+	 * Test cases are added in name order because test ids depend on the order tracefiles were parsed in.
+	 * @param digest The hash to add to.
+	 */
+	void digest(final PageDigest digest)
+	{
+		digest.add(executable).add(totalHits).add(testCount);
+		TestNames registry = getTestNames();
+		int[] ids = getTestIds();
+		String[] names = new String[ids.length];
+		for(int i = 0; i < ids.length; i++)
+		{
+			names[i] = registry.getName(ids[i]);
+		}
+		Arrays.sort(names);
+		for(String name : names)
+		{
+			digest.add(name).add(findHits(registry.find(name)));
+		}
+	}
+
+	/**
+	 * Writes the hit counts to a parse cache entry.
+	 * @param out The entry being written.
+	 * @throws IOException If the entry could not be written.
+	 */
+	void writeHits(final DataOutput out) throws IOException
+	{
+		out.writeBoolean(executable);
+		out.writeInt(testCount);
+		for(int id : getTestIds())
+		{
+			out.writeInt(id);
+			out.writeInt(findHits(id));
+		}
+	}
+
+	/**
+	 * Reads hit counts written by writeHits, replacing the hit counts of the same test cases.
+	 * @param in The entry being read.
+	 * @param testIds Maps the test ids in the entry to the ids from getTestNames.
+	 * @throws IOException If the entry could not be read.
+	 */
+	void readHits(final DataInput in, final int[] testIds) throws IOException
+	{
+		if(in.readBoolean())
+		{
+			setExecutable();
+		}
+		int count = in.readInt();
+		for(int i = 0; i < count; i++)
+		{
+			int testId = testIds[in.readInt()];
+			putHits(testId, findHits(testId), in.readInt());
+		}
+	}
+
+	/**
+	 * Adds one to the count of every test case which has hit this code.
+	 * Lets callers count the units of code hit by each test case in a single pass.
+	 * @param counts Counts indexed by test id.
+	 * @return The counts, in a new bigger array if a test id did not fit.
+	 */
+	int[] countHitTests(final int[] counts)
+	{
+		int[] result = counts;
+		if(executable)
+		{
+			if(denseHits != null)
+			{
+				for(int id = 0; id < denseHits.length; id++)
+				{
+					if(denseHits[id] > 0)
+					{
+						result = increment(result, id);
+					}
+				}
+			}
+			else if(sparseIds != null)
+			{
+				for(int i = 0; i < testCount; i++)
+				{
+					if(sparseHits[i] > 0)
+					{
+						result = increment(result, sparseIds[i]);
+					}
+				}
+			}
+			else if(singleId != ABSENT && singleHits > 0)
+			{
+				result = increment(result, singleId);
+			}
+		}
+		return result;
+	}
+
+	private static int[] increment(final int[] counts, final int id)
+	{
+		int[] result = counts;
+		if(id >= result.length)
+		{
+			result = Arrays.copyOf(result, Math.max(id + 1, result.length * 2));
+		}
+		result[id]++;
+		return result;
+	}
+
+	/**
+	 * Gets the ids of the test cases with a hit count (which may be zero).
+	 * @return The test ids in ascending order.
+	 */
+	private int[] getTestIds()
+	{
+		int[] result = new int[testCount];
+		if(denseHits != null)
+		{
+			int next = 0;
+			for(int id = 0; id < denseHits.length; id++)
+			{
+				if(denseHits[id] != ABSENT)
+				{
+					result[next++] = id;
+				}
+			}
+		}
+		else if(sparseIds != null)
+		{
+			System.arraycopy(sparseIds, 0, result, 0, testCount);
+		}
+		else if(singleId != ABSENT)
+		{
+			result[0] = singleId;
+		}
+		return result;
+	}
+
+	/**
+	 * Look up the hit count for a test case.
+	 * @param testId The id of the test case from getTestNames.
+	 * @return The hit count or ABSENT if there is no hit count for this test case.
+	 */
+	private int findHits(final int testId)
+	{
+		int result = ABSENT;
+		if(denseHits != null)
+		{
+			if(testId < denseHits.length)
+			{
+				result = denseHits[testId];
+			}
+		}
+		else if(sparseIds != null)
+		{
+			int idx = Arrays.binarySearch(sparseIds, 0, testCount, testId);
+			if(idx >= 0)
+			{
+				result = sparseHits[idx];
+			}
+		}
+		else if(singleId == testId)
+		{
+			result = singleHits;
+		}
+		return result;
+	}
+
+	/**
+	 * Store the hit count for a test case, moving to a bigger form of storage if need be.
+	 * @param testId The id of the test case from getTestNames.
+	 * @param previous The current hit count for the test case (as returned by findHits).
+	 * @param hits The hit count, must not be negative.
+	 */
+	private void putHits(final int testId, final int previous, final int hits)
+	{
+		totalHits += hits - Math.max(0, previous);
+		if(denseHits != null)
+		{
+			if(testId >= denseHits.length)
+			{
+				int oldLength = denseHits.length;
+				denseHits = Arrays.copyOf(denseHits, Math.max(testId + 1, oldLength * 2));
+				Arrays.fill(denseHits, oldLength, denseHits.length, ABSENT);
+			}
+			if(denseHits[testId] == ABSENT)
+			{
+				testCount++;
+			}
+			denseHits[testId] = hits;
+		}
+		else if(sparseIds != null)
+		{
+			putSparseHits(testId, hits);
+		}
+		else if(singleId == ABSENT || singleId == testId)
+		{
+			singleId = testId;
+			singleHits = hits;
+			testCount = 1;
+		}
+		else
+		{
+			sparseIds = new int[]{singleId, 0, 0, 0};
+			sparseHits = new int[]{singleHits, 0, 0, 0};
+			singleId = ABSENT;
+			putSparseHits(testId, hits);
+		}
+	}
+
+	private void putSparseHits(final int testId, final int hits)
+	{
+		int idx = Arrays.binarySearch(sparseIds, 0, testCount, testId);
+		if(idx >= 0)
+		{
+			sparseHits[idx] = hits;
+		}
+		else
+		{
+			idx = -(idx + 1);
+			if(testCount == sparseIds.length)
+			{
+				sparseIds = Arrays.copyOf(sparseIds, testCount * 2);
+				sparseHits = Arrays.copyOf(sparseHits, testCount * 2);
+			}
+			System.arraycopy(sparseIds, idx, sparseIds, idx + 1, testCount - idx);
+			System.arraycopy(sparseHits, idx, sparseHits, idx + 1, testCount - idx);
+			sparseIds[idx] = testId;
+			sparseHits[idx] = hits;
+			testCount++;
+			int range = sparseIds[testCount - 1] + 1;
+			if(testCount >= MIN_DENSE && testCount * 2 >= range)  // a dense array is now no bigger than the sparse one
+			{
+				denseHits = new int[range];
+				Arrays.fill(denseHits, ABSENT);
+				for(int i = 0; i < testCount; i++)
+				{
+					denseHits[sparseIds[i]] = sparseHits[i];
+				}
+				sparseIds = null;
+				sparseHits = null;
+			}
+		}
 	}
 
 	/**
@@ -0,0 +1,603 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the HTML for a source code page directly, line by line, instead of building a DOM and transforming it.
+ * The markup is the same as jgenhtml.xsl produces (serialized by the JDK's XSLT processor) for the same page,
+ * so this must be kept in step with the "coverage" and "lines" templates in the stylesheet.
+ * A huge source file never has to be held in memory as XML and then again as a result tree.
+ * @author Rick Brown
+ */
+final class SourcePageRenderer
+{
+	private static final Logger LOGGER = Logger.getLogger(SourcePageRenderer.class.getName());
+	private static final String ENTITIES_NAME = "jgenhtml-entities.properties";
+	private static final String[] ENTITIES = loadEntities();
+	private static final String INDENT = "    ";  // the indent amount used by the XSLT serializer
+	private static final String SOURCE_FILE_SUFFIX = ".gcov";
+	private static final String FUNC_FILE_SUFFIX = ".func";
+	private static final String MISSING_FILE = "(missing file)";
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final Writer out;
+	private final Config config;
+	private final String newLine;
+	private final DecimalFormat percentFormat;
+
+	/**
+	 * @param out Where to write the page, it is not closed.
+	 * @param config The user preferences for the report.
+	 */
+	SourcePageRenderer(final Writer out, final Config config)
+	{
+		this.out = out;
+		this.config = config;
+		this.newLine = System.getProperty("line.separator");
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);  // as XSLT's default decimal-format
+		symbols.setNaN("NaN");
+		symbols.setInfinity("Infinity");
+		this.percentFormat = new DecimalFormat("0.0", symbols);
+	}
+
+	/**
+	 * Writes the HTML for a source code page to its target file in the report.
+	 * @param page The source file to write a page for.
+	 * @param lines The lines to show on the page.
+	 * @param config The user preferences of the report the page belongs to.
+	 * @param metrics The metrics of the report, which count the page written, null if the user does not want metrics.
+	 * @throws IOException If the page could not be written.
+	 */
+	static void write(final TestCaseSourceFile page, final Iterable<Line> lines, final Config config, final ReportMetrics metrics) throws IOException
+	{
+		File target = page.getTargetFile(config, false);
+		LOGGER.log(Level.FINE, "Writing file: {0}", target.getAbsolutePath());
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(JGenHtmlUtils.openPageStream(target, config, metrics), StandardCharsets.UTF_8), BUFFER_SIZE))
+		{
+			new SourcePageRenderer(writer, config).render(page, page.getBasePath(), lines);
+		}
+	}
+
+	/**
+	 * Writes the HTML for a source code page.
+	 * @param page The source file to write a page for.
+	 * @param base The relative path from the page to the root of the report.
+	 * @param lines The lines to show on the page.
+	 * @throws IOException If the page could not be written.
+	 */
+	void render(final TestCaseSourceFile page, final String base, final Iterable<Line> lines) throws IOException
+	{
+		String ext = config.getHtmlExt();
+		String testName = page.getTestName();
+		String fileName = page.getPageName();
+		String funcRatePc = formatPercent(page.getFunctionRate());
+		writeLine(0, "<!DOCTYPE html SYSTEM \"about:legacy-compat\">");
+		writeLine(0, "<html>");
+		writeLine(1, "<head>");
+		writeLine(2, "<META http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">");
+		File cssFile = config.getCssFile();
+		startLine(2);
+		out.write("<link href=\"");
+		writeUri(base + ((cssFile != null)? cssFile.getName() : JGenHtmlUtils.CSS_NAME));
+		out.write("\" rel=\"stylesheet\" type=\"text/css\">");
+		endLine();
+		startLine(2);
+		out.write("<script type=\"text/javascript\" src=\"");
+		writeUri(base + JGenHtmlUtils.JS_NAME);
+		out.write("\"></script>");
+		endLine();
+		startLine(2);
+		out.write("<title>");
+		writeText("LCOV - " + testName + ' ' + fileName);
+		out.write("</title>");
+		endLine();
+		writeLine(1, "</head>");
+		startLine(1);
+		out.write("<body class=\"noscript");
+		if(!config.isBranchCoverage())
+		{
+			out.write(" nobranch");
+		}
+		if(!config.isFunctionCoverage())
+		{
+			out.write(" nofunc");
+		}
+		if(!config.isLegend())
+		{
+			out.write(" nolegend");
+		}
+		out.write("\">");
+		endLine();
+		writeLine(2, "<h1>LCOV - code coverage report</h1>");
+		writeLine(2, "<div class=\"header\">");
+		writeLine(3, "<div class=\"row\">");
+		writeLine(4, "<dl class=\"pageView\">");
+		writeLine(5, "<dt>Current view</dt>");
+		String path = page.getPath();
+		if(path != null && path.length() > 0)
+		{
+			writeLine(5, "<dd>");
+			startLine(6);
+			out.write("<a href=\"");
+			writeUri(base + "index" + ext);
+			out.write("\">top level</a> - ");
+			if(fileName != null && fileName.length() > 0)
+			{
+				out.write("<a href=\"");
+				writeUri("index" + ext);
+				out.write("\">");
+				writeText(path);
+				out.write("</a>");
+				writeText(" - " + fileName);
+				if(!isNaN(funcRatePc))
+				{
+					out.write("<span class=\"functionNav\"> (source /<a href=\"");
+					writeUri(fileName + FUNC_FILE_SUFFIX + ext);
+					out.write("\"> functions</a>)</span>");
+				}
+			}
+			else
+			{
+				writeText(path);
+			}
+			endLine();
+			writeLine(5, "</dd>");
+		}
+		else
+		{
+			writeLine(5, "<dd>top level</dd>");
+		}
+		writeLine(5, "<dt>Test</dt>");
+		if(config.getDescFile() != null)
+		{
+			writeLine(5, "<dd>");
+			startLine(6);
+			writeText(testName + " (");
+			out.write("<a href=\"");
+			writeUri(base + "descriptions" + ext);
+			out.write("\">view descriptions</a>)");
+			endLine();
+			writeLine(5, "</dd>");
+		}
+		else
+		{
+			startLine(5);
+			out.write("<dd>");
+			writeText(testName);
+			out.write("</dd>");
+			endLine();
+		}
+		writeLine(5, "<dt>Date</dt>");
+		startLine(5);
+		out.write("<dd>");
+		writeText(JGenHtmlUtils.getDate());
+		out.write("</dd>");
+		endLine();
+		writeLine(5, "<dt class=\"legend\">Legend</dt>");
+		writeLine(5, "<dd class=\"legend\">");
+		writeLine(6, "<dl class=\"legend\">");
+		writeLine(7, "<dt>Lines</dt>");
+		writeLine(7, "<dd class=\"lineCov\">hit</dd>");
+		writeLine(7, "<dd class=\"lineNoCov\">not hit</dd>");
+		writeLine(7, "<dt>Branches</dt>");
+		writeLine(7, "<dd class=\"taken\"> taken</dd>");
+		writeLine(7, "<dd class=\"noTaken\"> not taken</dd>");
+		writeLine(7, "<dd class=\"lineNoCov\"># not executed</dd>");
+		writeLine(6, "</dl>");
+		writeLine(5, "</dd>");
+		writeLine(4, "</dl>");
+		writeLine(4, "<table class=\"stats\">");
+		writeLine(5, "<thead>");
+		writeLine(6, "<tr>");
+		writeLine(7, "<td></td><th scope=\"col\">Hit</th><th scope=\"col\">Total</th><th scope=\"col\">Coverage</th>");
+		writeLine(6, "</tr>");
+		writeLine(5, "</thead>");
+		writeLine(5, "<tbody>");
+		writeSummaryRow("Lines", page.getLineHit(), page.getLineCount(), formatPercent(page.getLineRate()));
+		writeSummaryRow("Functions", page.getFuncHit(), page.getFuncCount(), funcRatePc);
+		writeSummaryRow("Branches", page.getBranchHit(), page.getBranchCount(), formatPercent(page.getBranchRate()));
+		writeLine(5, "</tbody>");
+		writeLine(4, "</table>");
+		writeLine(3, "</div>");
+		writeLine(2, "</div>");
+		writeLines(lines);
+		writeLine(2, "<div class=\"footer\">");
+		writeLine(3, "<p>");
+		startLine(4);
+		out.write("Generated by: <a href=\"https://github.com/ricksbrown/jgenhtml\">JGENHTML version ");
+		writeText(JGenHtml.VERSION);
+		out.write("</a>");
+		endLine();
+		writeLine(3, "</p>");
+		writeLine(2, "</div>");
+		writeLine(2, "<div class=\"controls\">");
+		writeLine(3, "<fieldset>");
+		startLine(4);
+		out.write("<legend>Choose Features</legend>");
+		out.write("<label for=\"nofunc\">Function coverage</label>");
+		writeCheckbox("nofunc", config.isFunctionCoverage());
+		out.write("<label for=\"nobranch\">Branch coverage</label>");
+		writeCheckbox("nobranch", config.isBranchCoverage());
+		out.write("<label for=\"nolegend\">Legend</label>");
+		writeCheckbox("nolegend", config.isLegend());
+		endLine();
+		writeLine(3, "</fieldset>");
+		writeLine(2, "</div>");
+		writeLine(1, "</body>");
+		writeLine(0, "</html>");
+	}
+
+	/**
+	 * Writes the table of source lines, the equivalent of the "lines" template.
+	 * @param lines The lines to write.
+	 * @throws IOException If the lines could not be written.
+	 */
+	private void writeLines(final Iterable<Line> lines) throws IOException
+	{
+		writeLine(2, "<table class=\"coverage\" title=\"Each row represents a line of source code\">");
+		writeLine(3, "<caption>Each row represents a line of source code</caption>");
+		writeLine(3, "<thead>");
+		writeLine(4, "<tr>");
+		writeLine(5, "<th>Line</th><th>Branch</th><th>Hits</th><th>Source code</th>");
+		writeLine(4, "</tr>");
+		writeLine(3, "</thead>");
+		writeLine(3, "<tbody>");
+		int position = 0;  // the stylesheet numbers rows by position, not by line number
+		for(Line line : lines)
+		{
+			writeSourceLine(++position, line);
+		}
+		if(position == 0)
+		{
+			writeSourceLine(1, null);
+		}
+		writeLine(3, "</tbody>");
+		writeLine(2, "</table>");
+	}
+
+	/**
+	 * Writes a single row of the source line table, the equivalent of the "writeSourceLine" template.
+	 * @param position The row number.
+	 * @param line The line to write or null for the row shown when there are no lines at all.
+	 * @throws IOException If the line could not be written.
+	 */
+	private void writeSourceLine(final int position, final Line line) throws IOException
+	{
+		int hits = (line != null)? line.getTotalHits() : 0;
+		String lineClass;
+		if(hits == 0)
+		{
+			lineClass = "lineNoCov";
+		}
+		else if(hits > 0)
+		{
+			lineClass = "lineCov";
+		}
+		else
+		{
+			lineClass = "noop";
+		}
+		startLine(4);
+		out.write("<tr class=\"");
+		out.write(lineClass);
+		out.write("\" title=\"Line ");
+		out.write(Integer.toString(position));
+		out.write("\" id=\"line");
+		out.write(Integer.toString(position));
+		out.write("\">");
+		endLine();
+		startLine(5);
+		out.write("<td>");
+		out.write(Integer.toString(position));
+		out.write("</td><td>");
+		if(line != null)
+		{
+			for(Branch branch : line.getBranches())
+			{
+				int taken = branch.getTotalHits();
+				out.write("<span title=\"Branch ");
+				writeAttribute(branch.getNumber());
+				if(taken > 0)
+				{
+					out.write(" was taken ");
+					out.write(Integer.toString(taken));
+					out.write(" times\" class=\"branch taken\"></span>");
+				}
+				else
+				{
+					out.write(" was not taken\" class=\"branch noTaken\"></span>");
+				}
+			}
+		}
+		out.write("</td><td>");
+		if(hits >= 0)
+		{
+			out.write(Integer.toString(hits));
+		}
+		out.write("</td><td><code>");
+		if(line == null)
+		{
+			writeText(MISSING_FILE);
+		}
+		else if(line.getCode() != null)
+		{
+			writeText(line.getCode());
+		}
+		out.write("</code></td>");
+		endLine();
+		writeLine(4, "</tr>");
+	}
+
+	private void writeSummaryRow(final String title, final int hit, final int total, final String pc) throws IOException
+	{
+		writeLine(6, "<tr>");
+		startLine(7);
+		out.write("<th scope=\"row\">");
+		out.write(title);
+		out.write("</th><td>");
+		out.write(Integer.toString(hit));
+		out.write("</td><td>");
+		out.write(Integer.toString(total));
+		out.write("</td><td class=\"");
+		out.write(getClassForRate(pc));
+		out.write("\">");
+		out.write(isNaN(pc)? "-" : pc + '%');
+		out.write("</td>");
+		endLine();
+		writeLine(6, "</tr>");
+	}
+
+	private void writeCheckbox(final String id, final boolean checked) throws IOException
+	{
+		out.write("<input id=\"");
+		out.write(id);
+		out.write(checked? "\" type=\"checkbox\" checked>" : "\" type=\"checkbox\">");
+	}
+
+	/**
+	 * The equivalent of the "getClassForRate" template.
+	 * @param pc A percentage formatted by formatPercent.
+	 * @return The CSS class for the percentage.
+	 */
+	private String getClassForRate(final String pc)
+	{
+		String result;
+		double value = toNumber(pc);
+		if(Double.isNaN(value))
+		{
+			result = "high";
+		}
+		else if(value < config.getMedLimit())
+		{
+			result = "low";
+		}
+		else if(value < config.getHiLimit())
+		{
+			result = "med";
+		}
+		else
+		{
+			result = "high";
+		}
+		return result;
+	}
+
+	/**
+	 * Formats a rate as a percentage the way the stylesheet does it: format-number(@rate * 100, '0.0').
+	 * The rate goes through the same float to String conversion as the attribute CoveragePage would write.
+	 * @param rate A coverage rate between 0 and 1, may be NaN.
+	 * @return The formatted percentage, "NaN" if there is nothing to cover.
+	 */
+	private String formatPercent(final float rate)
+	{
+		return percentFormat.format(toNumber(String.valueOf(rate)) * 100);
+	}
+
+	private static boolean isNaN(final String number)
+	{
+		return Double.isNaN(toNumber(number));
+	}
+
+	/**
+	 * Converts a String to a number, the same as XSLT does.
+	 */
+	private static double toNumber(final String value)
+	{
+		double result;
+		try
+		{
+			result = Double.parseDouble(value);
+		}
+		catch(NumberFormatException ex)
+		{
+			result = Double.NaN;
+		}
+		return result;
+	}
+
+	private void writeLine(final int depth, final String markup) throws IOException
+	{
+		startLine(depth);
+		out.write(markup);
+		endLine();
+	}
+
+	private void startLine(final int depth) throws IOException
+	{
+		for(int i = 0; i < depth; i++)
+		{
+			out.write(INDENT);
+		}
+	}
+
+	private void endLine() throws IOException
+	{
+		out.write(newLine);
+	}
+
+	/**
+	 * Writes text content escaped the same way as the HTML output method of the XSLT serializer.
+	 * Markup characters and characters with an HTML entity name are written as entity references,
+	 * control characters and characters outside the basic multilingual plane as numeric references.
+	 * @param text The text to write.
+	 * @throws IOException If the text could not be written.
+	 */
+	private void writeText(final String text) throws IOException
+	{
+		int length = text.length();
+		int clean = 0;  // the start of the characters which have not been written yet
+		for(int i = 0; i < length; i++)
+		{
+			char ch = text.charAt(i);
+			String escaped = null;
+			int consumed = 1;
+			if(ch == '<')
+			{
+				escaped = "&lt;";
+			}
+			else if(ch == '>')
+			{
+				escaped = "&gt;";
+			}
+			else if(ch == '&')
+			{
+				escaped = "&amp;";
+			}
+			else if(ch < 0x20)
+			{
+				if(ch != '\t' && ch != '\n' && ch != '\r')
+				{
+					escaped = "&#" + (int)ch + ';';
+				}
+			}
+			else if(ch >= 0x7F)
+			{
+				if(ch < ENTITIES.length && ENTITIES[ch] != null)
+				{
+					escaped = '&' + ENTITIES[ch] + ';';
+				}
+				else if(ch <= 0x9F)
+				{
+					escaped = "&#" + (int)ch + ';';
+				}
+				else if(Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1)))
+				{
+					escaped = "&#" + Character.toCodePoint(ch, text.charAt(i + 1)) + ';';
+					consumed = 2;
+				}
+			}
+			if(escaped != null)
+			{
+				out.write(text, clean, i - clean);
+				out.write(escaped);
+				i += consumed - 1;
+				clean = i + 1;
+			}
+		}
+		out.write(text, clean, length - clean);
+	}
+
+	/**
+	 * Writes the value of an attribute which is not a URI.
+	 * Only ever used for values which need no escaping in HTML apart from a quote or an ampersand.
+	 * @param value The attribute value to write.
+	 * @throws IOException If the value could not be written.
+	 */
+	private void writeAttribute(final String value) throws IOException
+	{
+		out.write(value.replace("&", "&amp;").replace("\"", "&quot;"));
+	}
+
+	/**
+	 * Writes the value of a URI attribute (e.g. href) escaped the same way as the HTML output method of the
+	 * XSLT serializer: characters outside printable ASCII are percent encoded as UTF-8.
+	 * @param uri The URI to write.
+	 * @throws IOException If the URI could not be written.
+	 */
+	private void writeUri(final String uri) throws IOException
+	{
+		int length = uri.length();
+		for(int i = 0; i < length; i++)
+		{
+			char ch = uri.charAt(i);
+			if(ch < 32 || ch > 126)
+			{
+				int codePoint = uri.codePointAt(i);
+				i += Character.charCount(codePoint) - 1;
+				for(byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8))
+				{
+					out.write('%');
+					out.write(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)));
+					out.write(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+				}
+			}
+			else if(ch == '"')
+			{
+				out.write("%22");
+			}
+			else if(ch == '&')
+			{
+				out.write("&amp;");
+			}
+			else
+			{
+				out.write(ch);
+			}
+		}
+	}
+
+	/**
+	 * Loads the HTML entity names.
+	 * @return The entity names indexed by the character they represent.
+	 */
+	private static String[] loadEntities()
+	{
+		Properties properties = new Properties();
+		try (InputStream in = SourcePageRenderer.class.getResourceAsStream('/' + ENTITIES_NAME))
+		{
+			properties.load(in);
+		}
+		catch(IOException | NullPointerException ex)
+		{
+			LOGGER.log(Level.SEVERE, "Could not load {0}", ENTITIES_NAME);
+		}
+		int max = 0;
+		for(Object code : properties.values())
+		{
+			max = Math.max(max, Integer.parseInt(code.toString()));
+		}
+		String[] result = new String[max + 1];
+		for(Map.Entry<Object, Object> entity : properties.entrySet())
+		{
+			result[Integer.parseInt(entity.getValue().toString())] = entity.getKey().toString();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import org.w3c.dom.Document;
+
+/**
+ * Holds the compiled jgenhtml stylesheet so that it is parsed only once, no matter how many pages are written.
+ * Templates are thread safe but Transformers are not, so each thread is handed its own Transformer.
+ * @author Rick Brown
+ */
+final class StylesheetCache
+{
+	private static final Logger LOGGER = Logger.getLogger(StylesheetCache.class.getName());
+	private static final ThreadLocal<Transformer> HTML_TRANSFORMER = new ThreadLocal<>();
+	private static final ThreadLocal<Transformer> XML_TRANSFORMER = new ThreadLocal<>();
+
+	private StylesheetCache()
+	{
+	}
+
+	/**
+	 * Lazy holder for the compiled stylesheet, the JVM guarantees it is compiled exactly once.
+	 */
+	private static class Holder
+	{
+		private static final TransformerFactory FACTORY = TransformerFactory.newInstance();
+		private static final Templates TEMPLATES = compile('/' + JGenHtmlUtils.XSLT_NAME);
+	}
+
+	/**
+	 * Compiles an XSLT file.
+	 * @param xsltPath The path to the XSLT file.
+	 * @return The compiled stylesheet or null if it could not be compiled.
+	 */
+	private static Templates compile(final String xsltPath)
+	{
+		Templates result = null;
+		try
+		{
+			Document xslt = JGenHtmlUtils.loadXmlDoc(StylesheetCache.class.getResourceAsStream(xsltPath));
+			result = Holder.FACTORY.newTemplates(new DOMSource(xslt));
+			LOGGER.log(Level.FINE, "Compiled stylesheet {0}", xsltPath);
+		}
+		catch (TransformerConfigurationException ex)
+		{
+			LOGGER.log(Level.SEVERE, ex.getLocalizedMessage());
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the compiled jgenhtml stylesheet.
+	 * @return The compiled stylesheet, shared by all threads.
+	 */
+	static Templates getTemplates()
+	{
+		return Holder.TEMPLATES;
+	}
+
+	/**
+	 * Gets a transformer for the calling thread.
+	 * The transformer is reset before it is returned so parameters from a previous page do not leak into the next.
+	 * @param asXml If true an identity transformer is returned, otherwise one which transforms to HTML.
+	 * @return A transformer owned by the calling thread or null if one could not be created.
+	 */
+	static Transformer getTransformer(final boolean asXml)
+	{
+		ThreadLocal<Transformer> cache = asXml? XML_TRANSFORMER : HTML_TRANSFORMER;
+		Transformer result = cache.get();
+		if(result == null)
+		{
+			try
+			{
+				if(asXml)
+				{
+					synchronized(Holder.FACTORY)  // factories are not guaranteed to be thread safe
+					{
+						result = Holder.FACTORY.newTransformer();
+					}
+				}
+				else if(Holder.TEMPLATES != null)
+				{
+					result = Holder.TEMPLATES.newTransformer();
+				}
+				cache.set(result);
+			}
+			catch (TransformerConfigurationException ex)
+			{
+				LOGGER.log(Level.SEVERE, ex.getLocalizedMessage());
+			}
+		}
+		else
+		{
+			result.reset();
+			if(!asXml)
+			{
+				result.clearParameters();  // reset alone does not clear them in all implementations
+			}
+		}
+		return result;
+	}
+}
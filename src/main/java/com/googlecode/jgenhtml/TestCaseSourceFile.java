@@ -16,11 +16,17 @@
 package com.googlecode.jgenhtml;
 
 import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -40,16 +46,41 @@ public class TestCaseSourceFile extends CoveragePage
 	private static final String NO_SOURCE_CODE = "/* EOF */";
 	private boolean hasSource = false;
 	private FunctionPage functionPage = null;
-	private Map<Integer, Line> lineItems;
+	private final LineTable lineItems;
+	private final TestNames testNames;
+	private boolean summarized = false;  // false when the counts below need to be recalculated
+	private int lineCount;
+	private int lineHit;
+	private int branchCount;
+	private int branchHit;
 
 
 	public TestCaseSourceFile(final String testName, final String pageName) throws ParserConfigurationException
+	{
+		this(testName, pageName, new TestNames());
+	}
+
+	/**
+	 * @param testName The test name of the report.
+	 * @param pageName The name of the source file.
+	 * @param testNames The test names of the report, which the hit counts are stored against.
+	 */
+	TestCaseSourceFile(final String testName, final String pageName, final TestNames testNames) throws ParserConfigurationException
 	{
 		super(testName, pageName);
-		this.lineItems = new TreeMap<>();
+		this.lineItems = new LineTable();
+		this.testNames = testNames;
 		this.functionPage = new FunctionPage(this);
 	}
 
+	/**
+	 * @return The test names the hit counts of this source file are stored against.
+	 */
+	TestNames getTestNames()
+	{
+		return testNames;
+	}
+
 	/**
 	 * Processes a single "BR" line (any line starting with BR).
 	 * @param line The line with any leading whitespace removed.
@@ -59,25 +90,17 @@ public class TestCaseSourceFile extends CoveragePage
 		if(line.startsWith("BRDA:"))
 		{
 			// BRDA:<line number>,<block number>,<branch number>,<taken>
-			String[] data = JGenHtmlUtils.extractLineValues(line);  // can't get as ints because "taken" can be '-' if it was not taken, anywho we need strings for attributes
+			String[] data = JGenHtmlUtils.extractLineValues(line);
 			if(data != null && data.length == 4)
 			{
-				String block = data[1];
-				String number = data[2];
-				int taken = Integer.parseInt(data[3]);
-
-				Line lineItem = getLineAt(data[0]);
-				Branch branch = getBranch(lineItem, block, number, !isBaseline);
-				if (branch != null)
+				try
 				{
-					if (isBaseline)
-					{
-						branch.setHits(testCaseName, branch.getHits(testCaseName) - taken);
-					}
-					else
-					{
-						branch.setHits(testCaseName, branch.getHits(testCaseName) + taken);
-					}
+					int taken = "-".equals(data[3])? 0 : Integer.parseInt(data[3]);  // "-" if the branch was never evaluated
+					addBranchData(testNames.getId(testCaseName), Integer.parseInt(data[0]), Integer.parseInt(data[1]), Integer.parseInt(data[2]), taken, isBaseline);
+				}
+				catch(NumberFormatException ex)
+				{
+					LOGGER.log(Level.FINE, "Skipping branch with non numeric values: {0}", line);
 				}
 			}
 			else
@@ -87,14 +110,32 @@ public class TestCaseSourceFile extends CoveragePage
 		}
 	}
 
-	private Branch getBranch(Line line, String block, String number, boolean create)
+	/**
+	 * Adds the data from a single "BRDA" line.
+	 * @param testCaseId The id of the test case to add branch data to.
+	 * @param lineNo The line the branch is on, ignored if it is not greater than zero.
+	 * @param block The block number.
+	 * @param number The branch number.
+	 * @param taken The number of times the branch was taken.
+	 * @param isBaseline true if this is coming from a baseline file.
+	 */
+	void addBranchData(final int testCaseId, final int lineNo, final int block, final int number, final int taken, final boolean isBaseline)
+	{
+		Line lineItem = getLineAt(lineNo);
+		Branch branch = (lineItem == null)? null : getBranch(lineItem, block, number, !isBaseline);
+		if (branch != null)
+		{
+			summarized = false;
+			branch.addHits(testCaseId, isBaseline? -taken : taken);
+		}
+	}
+
+	private Branch getBranch(final Line line, final int block, final int number, final boolean create)
 	{
 		Branch branch = line.getBranch(block, number);
 		if(branch == null && create)
 		{
-			branch = new Branch();
-			branch.setBlock(block);
-			branch.setNumber(number);
+			branch = new Branch(block, number, testNames);
 			line.addBranch(branch);
 		}
 		return branch;
@@ -109,20 +150,7 @@ public class TestCaseSourceFile extends CoveragePage
 		int[] counters = JGenHtmlUtils.getLineValues(line);
 		if(counters != null)
 		{
-			int hitCount = counters[1];
-			if(hitCount >= 0)
-			{
-				Line lineItem = getLineAt(counters[0]);
-				lineItem.setExecutable();
-				if(isBaseline)
-				{
-					lineItem.setHits(testCaseName, lineItem.getHits(testCaseName) - hitCount);
-				}
-				else
-				{
-					lineItem.setHits(testCaseName, lineItem.getHits(testCaseName) + hitCount);
-				}
-			}
+			addLineData(testNames.getId(testCaseName), counters[0], counters[1], isBaseline);
 		}
 		else
 		{
@@ -130,6 +158,44 @@ public class TestCaseSourceFile extends CoveragePage
 		}
 	}
 
+	/**
+	 * Adds the data from a single "DA" line.
+	 * @param testCaseId The id of the test case to add line data to.
+	 * @param lineNo The BASE ONE line number, ignored if it is not greater than zero.
+	 * @param hitCount The execution count, ignored if negative.
+	 * @param isBaseline true if this is coming from a baseline file.
+	 */
+	void addLineData(final int testCaseId, final int lineNo, final int hitCount, final boolean isBaseline)
+	{
+		if(hitCount >= 0 && lineNo > 0)
+		{
+			summarized = false;
+			getLineAt(lineNo).addHits(testCaseId, isBaseline? -hitCount : hitCount);
+		}
+	}
+
+	/**
+	 * Adds the data from a single "FN" line.
+	 * @param name The function name.
+	 * @param lineNo The line the function starts on.
+	 */
+	void addFunctionLine(final String name, final int lineNo)
+	{
+		functionPage.addFunctionLine(name, String.valueOf(lineNo));
+	}
+
+	/**
+	 * Adds the data from a single "FNDA" line.
+	 * @param testCaseId The id of the test case to add function data to.
+	 * @param name The function name.
+	 * @param hits The execution count.
+	 * @param isBaseline true if this is coming from a baseline file.
+	 */
+	void addFunctionHits(final int testCaseId, final String name, final int hits, final boolean isBaseline)
+	{
+		functionPage.addFunctionHits(testCaseId, name, hits, isBaseline);
+	}
+
 	/**
 	 * Set the source line.
 	 * Will replace any existing line at this position.
@@ -138,40 +204,26 @@ public class TestCaseSourceFile extends CoveragePage
 	 */
 	private void setLineAt(final int lineNo, final Line line)
 	{
+		summarized = false;
 		lineItems.put(lineNo, line);
 	}
 
 	/**
 	 * Retrieve the source line.
 	 * @param lineNo The BASE ONE index, 1 is line 1, 2 is line 2 etc.
-	 * @return The line item at the given line number.
+	 * @return The line item at the given line number, null if the line number is not greater than zero.
 	 */
 	private Line getLineAt(final int lineNo)
 	{
-		Line result;
-		if(lineItems.containsKey(lineNo))
+		Line result = lineItems.get(lineNo);
+		if(result == null && lineNo > 0)
 		{
-			result = lineItems.get(lineNo);
-		}
-		else
-		{
-			result = new Line(lineNo);
+			result = new Line(lineNo, testNames);
 			lineItems.put(lineNo, result);
 		}
 		return result;
 	}
 
-	/**
-	 * Retrieve the source line.
-	 * @param lineNo The BASE ONE index, 1 is line 1, 2 is line 2 etc.
-	 * @return The line item at the given line number.
-	 */
-	private Line getLineAt(final String lineNo)
-	{
-		return getLineAt(Integer.parseInt(lineNo));
-	}
-
-
 	/**
 	 * Add more information about this source file.
 	 * @param testCaseName The name of the test case to process the line for.
@@ -196,84 +248,174 @@ public class TestCaseSourceFile extends CoveragePage
 	}
 
 	@Override
-	public void writeToFileSystem() throws TransformerException, IOException
+	void writeToFileSystem(final Config config, final ReportMetrics metrics) throws TransformerException, IOException
+	{
+		if(!config.isNoSource())
+		{
+			boolean streamed = config.getHtmlEngine() == Config.HtmlEngine.STREAM;
+			if(streamed)
+			{
+				SourcePageRenderer.write(this, getPageLines(), config, metrics);
+			}
+			if(!streamed || !config.isHtmlOnly())
+			{
+				super.writeToFileSystem(config, metrics, !streamed);
+			}
+			if(this.functionPage.getFuncCount() > 0)
+			{
+				this.functionPage.writeToFileSystem(config, metrics);
+			}
+		}
+	}
+
+	@Override
+	void appendContent(final Document document, final Element root)
 	{
-		Document document = this.getDoc();
 		Element lines = document.createElement("lines");
-		Element root = document.getDocumentElement();
 		root.appendChild(lines);
-		if(!CoverageReport.getConfig().isNoSource())
+		for(Line line : getPageLines())
 		{
+			lines.appendChild(line.toXml(document));
+		}
+	}
+
+	@Override
+	void digest(final PageDigest digest)
+	{
+		super.digest(digest);
+		digest.add(hasSource).add(lineItems.size());
+		for(Line line : lineItems)
+		{
+			line.digest(digest);
+		}
+		List<Function> functions = new ArrayList<>(functionPage.getFunctions());
+		Collections.sort(functions, new Comparator<Function>()
+		{
+			@Override
+			public int compare(final Function a, final Function b)
+			{
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		digest.add(functions.size());
+		for(Function function : functions)
+		{
+			function.digest(digest);
+		}
+	}
+
+	@Override
+	boolean isWritten(final Config config)
+	{
+		return super.isWritten(config) && (functionPage.getFuncCount() == 0 || functionPage.isWritten(config));
+	}
+
+	/**
+	 * Gets the lines to show on the source page.
+	 * If the source file could not be read every line in the page is a placeholder, including the gaps between
+	 * the lines in the tracefile.
+	 * @return The lines in line number order.
+	 */
+	private Iterable<Line> getPageLines()
+	{
+		Iterable<Line> result = lineItems;
+		if(!hasSource)
+		{
+			List<Line> lines = new ArrayList<>(lineItems.size());
 			int prevLineNo = 0;
-			for(Line line : lineItems.values())
+			for(Line line : lineItems)
 			{
-				if(!hasSource)
+				int lineNo = line.getLineNumber();
+				while(++prevLineNo < lineNo)
 				{
-					int lineNo = line.getLineNumber();
-					while(++prevLineNo < lineNo)
-					{
-						Line dummyLine = new Line(prevLineNo);
-						dummyLine.setCode(NO_SOURCE_CODE);
-						lines.appendChild(dummyLine.toXml(document));
-					}
-					prevLineNo = lineNo;
-					line.setCode(NO_SOURCE_CODE);
+					Line dummyLine = new Line(prevLineNo, testNames);
+					dummyLine.setCode(NO_SOURCE_CODE, null);
+					lines.add(dummyLine);
 				}
-				Element lineElement = line.toXml(document);
-				lines.appendChild(lineElement);
-			}
-			super.writeToFileSystem();
-			if(this.functionPage.getFuncCount() > 0)
-			{
-				this.functionPage.writeToFileSystem();
+				prevLineNo = lineNo;
+				line.setCode(NO_SOURCE_CODE, null);
+				lines.add(line);
 			}
+			result = lines;
 		}
+		return result;
+	}
+
+	/**
+	 * @return The number of lines on the source page, executable or not.
+	 */
+	int getPageLineCount()
+	{
+		return lineItems.size();
 	}
 
 	@Override
 	public int getLineCount()
 	{
-		return getExecutableLineCount(false);
+		summarize();
+		return lineCount;
 	}
 
 	@Override
 	public int getLineHit()
 	{
-		return getExecutableLineCount(true);
+		summarize();
+		return lineHit;
 	}
 
 	@Override
 	public int getBranchCount()
 	{
-		int result = 0;
-		for(Line line : lineItems.values())
-		{
-			result += line.getBranches().size();
-		}
-		return result;
+		summarize();
+		return branchCount;
 	}
 
 	@Override
 	public int getBranchHit()
 	{
-		int result = 0;
-		for(Line line : lineItems.values())
+		summarize();
+		return branchHit;
+	}
+
+	/**
+	 * Counts the executable and executed lines and branches in a single pass.
+	 * The counts are kept until coverage data is next added to this source file.
+	 */
+	private void summarize()
+	{
+		if(!summarized)
 		{
-			for(Branch branch : line.getBranches())
+			lineCount = 0;
+			lineHit = 0;
+			branchCount = 0;
+			branchHit = 0;
+			for(Line line : lineItems)
 			{
-				if(branch.getTotalHits() > 0)
+				if(line.isExecutable())
 				{
-					result++;
+					lineCount++;
+					if(line.getTotalHits() > 0)
+					{
+						lineHit++;
+					}
+				}
+				for(Branch branch : line.getBranches())
+				{
+					branchCount++;
+					if(branch.getTotalHits() > 0)
+					{
+						branchHit++;
+					}
 				}
 			}
+			summarized = true;
 		}
-		return result;
 	}
 
 	public Collection<String> getTestCaseNames()
 	{
 		Collection<String> result = new HashSet<>();
-		for(Line line : lineItems.values())
+		for(Line line : lineItems)
 		{
 			result.addAll(line.getTestCaseNames(true));
 			for(Branch branch : line.getBranches())
@@ -288,15 +430,54 @@ public class TestCaseSourceFile extends CoveragePage
 		return result;
 	}
 
+	/**
+	 * Counts the lines, branches and functions hit by each test case in a single pass over this source file.
+	 * Gives the same numbers as calling getLineHit, getBranchHit and getFuncHit for each of getTestCaseNames
+	 * without rescanning the whole file for every test case.
+	 * @return The counts for every test case which hit anything in this file, sorted by test case name.
+	 */
+	public Collection<TestCaseHits> getTestCaseHits()
+	{
+		int[] lines = new int[0];
+		int[] branches = new int[0];
+		int[] functions = new int[0];
+		for(Line line : lineItems)
+		{
+			lines = line.countHitTests(lines);
+			for(Branch branch : line.getBranches())
+			{
+				branches = branch.countHitTests(branches);
+			}
+		}
+		for(Function function : functionPage.getFunctions())
+		{
+			functions = function.countHitTests(functions);
+		}
+		Map<String, TestCaseHits> result = new TreeMap<>();  // in name order, whatever order the ids were given in
+		int ids = Math.max(lines.length, Math.max(branches.length, functions.length));
+		for(int id = 0; id < ids; id++)
+		{
+			int lineHit = (id < lines.length)? lines[id] : 0;
+			int branchHit = (id < branches.length)? branches[id] : 0;
+			int funcHit = (id < functions.length)? functions[id] : 0;
+			if(lineHit > 0 || branchHit > 0 || funcHit > 0)
+			{
+				String name = testNames.getName(id);
+				result.put(name, new TestCaseHits(name, lineHit, branchHit, funcHit));
+			}
+		}
+		return result.values();
+	}
+
 	public int getLineHit(final String testCaseName)
 	{
-		return getHitByTestCase(lineItems.values(), testCaseName);
+		return getHitByTestCase(lineItems, testCaseName);
 	}
 
 	public int getBranchHit(final String testCaseName)
 	{
 		int result = 0;
-		for(Line line : lineItems.values())
+		for(Line line : lineItems)
 		{
 			result += getHitByTestCase(line.getBranches(), testCaseName);
 		}
@@ -308,7 +489,7 @@ public class TestCaseSourceFile extends CoveragePage
 		return getHitByTestCase(functionPage.getFunctions(), testCaseName);
 	}
 
-	private static int getHitByTestCase(Collection<? extends SourceCode> items, String testCaseName)
+	private static int getHitByTestCase(Iterable<? extends SourceCode> items, String testCaseName)
 	{
 		int result = 0;
 		for(SourceCode item : items)
@@ -348,37 +529,34 @@ public class TestCaseSourceFile extends CoveragePage
 	}
 
 	/**
-	 * Gets the total number of executable functions.
-	 * That is, the number of functionsRoot excluding comments etc.
-	 * @param hitOnly If true will only count functionsRoot that were executed at least once.
-	 * @return The count of executable or executed functionsRoot.
+	 * Provide the source code file.
+	 * @param sourceFile The file on the file system.
+	 * @throws IOException If bad stuff happens with the sourceFile.
 	 */
-	private int getExecutableLineCount(final boolean hitOnly)
+	protected void setSourceFile(final File sourceFile) throws IOException
 	{
-		int result = 0;
-		for(Line line : lineItems.values())
-		{
-			if(hitOnly)
-			{
-				if(line.isExecutable() && line.getTotalHits() > 0)
-				{
-					result++;
-				}
-			}
-			else if(line.isExecutable())
-			{
-				result++;
-			}
-		}
-		return result;
+		setSourceFile(sourceFile, true);
 	}
 
 	/**
 	 * Provide the source code file.
 	 * @param sourceFile The file on the file system.
+	 * @param loadSource If false the source code is not read, for example when this only holds part of the coverage data.
 	 * @throws IOException If bad stuff happens with the sourceFile.
 	 */
-	protected void setSourceFile(final File sourceFile) throws IOException
+	void setSourceFile(final File sourceFile, final boolean loadSource) throws IOException
+	{
+		setSourceFile(sourceFile, loadSource, null);
+	}
+
+	/**
+	 * Provide the source code file.
+	 * @param sourceFile The file on the file system.
+	 * @param loadSource If false the source code is not read, for example when this only holds part of the coverage data.
+	 * @param tabExpander The string to replace tabs in the source code with or null to leave tabs alone.
+	 * @throws IOException If bad stuff happens with the sourceFile.
+	 */
+	void setSourceFile(final File sourceFile, final boolean loadSource, final String tabExpander) throws IOException
 	{
 		super.setPageName(sourceFile.getName());
 
@@ -386,10 +564,14 @@ public class TestCaseSourceFile extends CoveragePage
 		if(parentDir != null)
 		{
 			this.setPath(parentDir.getAbsolutePath());  // absolute path is definitely needed here
-			if(sourceFile.exists())
+			if(!loadSource)
+			{
+				LOGGER.log(Level.FINEST, "Not loading source for partial data: {0}", sourceFile.getAbsolutePath());
+			}
+			else if(sourceFile.exists())
 			{
 				hasSource = true;
-				loadSourceFile(sourceFile);
+				loadSourceFile(sourceFile, tabExpander);
 			}
 			else
 			{
@@ -402,12 +584,81 @@ public class TestCaseSourceFile extends CoveragePage
 		}
 	}
 
+	/**
+	 * Adds the coverage data from another instance for the same source file, summing hits per test case.
+	 * @param other Coverage data for this source file parsed from another tracefile.
+	 */
+	void merge(final TestCaseSourceFile other)
+	{
+		summarized = false;
+		for(Line otherLine : other.lineItems)
+		{
+			Line lineItem = getLineAt(otherLine.getLineNumber());
+			lineItem.merge(otherLine);
+			for(Branch otherBranch : otherLine.getBranches())
+			{
+				getBranch(lineItem, otherBranch.getBlockNumber(), otherBranch.getBranchNumber(), true).merge(otherBranch);
+			}
+		}
+		functionPage.merge(other.functionPage);
+	}
+
+	/**
+	 * Writes the coverage data (but not the source code) to a parse cache entry.
+	 * @param out The entry being written.
+	 * @throws IOException If the entry could not be written.
+	 */
+	void writeCoverage(final DataOutput out) throws IOException
+	{
+		out.writeInt(lineItems.size());
+		for(Line line : lineItems)
+		{
+			List<Branch> branches = line.getBranches();
+			out.writeInt(line.getLineNumber());
+			line.writeHits(out);
+			out.writeInt(branches.size());
+			for(Branch branch : branches)
+			{
+				out.writeInt(branch.getBlockNumber());
+				out.writeInt(branch.getBranchNumber());
+				branch.writeHits(out);
+			}
+		}
+		functionPage.writeCoverage(out);
+	}
+
+	/**
+	 * Reads coverage data written by writeCoverage, this instance should not hold any coverage data yet.
+	 * @param in The entry being read.
+	 * @param testIds Maps the test ids in the entry to the ids from getTestNames.
+	 * @throws IOException If the entry could not be read.
+	 */
+	void readCoverage(final DataInput in, final int[] testIds) throws IOException
+	{
+		summarized = false;
+		int lines = in.readInt();
+		for(int i = 0; i < lines; i++)
+		{
+			Line lineItem = getLineAt(in.readInt());
+			lineItem.readHits(in, testIds);
+			int branches = in.readInt();
+			for(int j = 0; j < branches; j++)
+			{
+				int block = in.readInt();
+				Branch branch = getBranch(lineItem, block, in.readInt(), true);
+				branch.readHits(in, testIds);
+			}
+		}
+		functionPage.readCoverage(in, testIds);
+	}
+
 	/**
 	 * Loads the source code for this source file.
 	 * @param sourceFile The source file represented by this instance.
+	 * @param tabExpander The string to replace tabs with or null to leave tabs alone.
 	 * @throws IOException
 	 */
-	private void loadSourceFile(final File sourceFile) throws IOException
+	private void loadSourceFile(final File sourceFile, final String tabExpander) throws IOException
 	{
 		try (BufferedReader br = new BufferedReader(new FileReader(sourceFile)))
 		{
@@ -415,11 +666,49 @@ public class TestCaseSourceFile extends CoveragePage
 			int i = 1;
 			while ((line = br.readLine()) != null)
 			{
-				Line lineItem = new Line(i);
-				lineItem.setCode(line);
+				Line lineItem = new Line(i, testNames);
+				lineItem.setCode(line, tabExpander);
 				setLineAt(i++, lineItem);
 			}
 		}
 	}
 
+	/**
+	 * The number of lines, branches and functions in a source file hit by one test case.
+	 */
+	public static final class TestCaseHits
+	{
+		private final String testCaseName;
+		private final int lineHit;
+		private final int branchHit;
+		private final int funcHit;
+
+		TestCaseHits(final String testCaseName, final int lineHit, final int branchHit, final int funcHit)
+		{
+			this.testCaseName = testCaseName;
+			this.lineHit = lineHit;
+			this.branchHit = branchHit;
+			this.funcHit = funcHit;
+		}
+
+		public String getTestCaseName()
+		{
+			return testCaseName;
+		}
+
+		public int getLineHit()
+		{
+			return lineHit;
+		}
+
+		public int getBranchHit()
+		{
+			return branchHit;
+		}
+
+		public int getFuncHit()
+		{
+			return funcHit;
+		}
+	}
 }
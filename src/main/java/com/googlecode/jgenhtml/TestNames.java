@@ -0,0 +1,110 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of test case names which gives each name a small, dense int id.
+ * Hit counts are stored against these ids so each counter does not need its own map of names.
+ * Each report has its own registry, shared by everything parsed for it, so the ids (and names) go when the report
+ * does. Ids are never reused or removed and the registry is thread safe.
+ * @author Rick Brown
+ */
+final class TestNames
+{
+	/**
+	 * Returned by find when a name has not been registered.
+	 */
+	static final int NOT_FOUND = -1;
+	private final ConcurrentMap<String, Integer> ids;
+	private final Object lock;
+	private volatile String[] names;
+	private int count;
+
+	TestNames()
+	{
+		this.ids = new ConcurrentHashMap<>();
+		this.lock = new Object();
+		this.names = new String[16];
+		this.count = 0;
+	}
+
+	/**
+	 * Gets the id of a test case name, registering the name if it has not been seen before.
+	 * @param name The test case name.
+	 * @return The id of the name.
+	 */
+	int getId(final String name)
+	{
+		Integer result = ids.get(name);
+		if(result == null)
+		{
+			synchronized(lock)
+			{
+				result = ids.get(name);
+				if(result == null)
+				{
+					result = count;
+					String[] current = names;
+					if(count == current.length)
+					{
+						current = Arrays.copyOf(current, count * 2);
+					}
+					current[count++] = name;
+					names = current;  // publish the name before the id
+					ids.put(name, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the id of a test case name without registering it.
+	 * @param name The test case name.
+	 * @return The id of the name or NOT_FOUND if it has not been registered.
+	 */
+	int find(final String name)
+	{
+		Integer result = ids.get(name);
+		return (result == null)? NOT_FOUND : result;
+	}
+
+	/**
+	 * Gets every name registered so far.
+	 * @return The names, indexed by id.
+	 */
+	String[] getNames()
+	{
+		synchronized(lock)
+		{
+			return Arrays.copyOf(names, count);
+		}
+	}
+
+	/**
+	 * Gets the name with the given id.
+	 * @param id An id returned by getId.
+	 * @return The test case name.
+	 */
+	String getName(final int id)
+	{
+		return names[id];
+	}
+}
@@ -0,0 +1,416 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Parses lcov tracefiles straight from the bytes read, without creating a String for every line.
+ * Numbers are decoded in place, Strings are only created for file, function and test names.
+ * I used the info from here: http://manpages.ubuntu.com/manpages/precise/man1/geninfo.1.html
+ * @author Rick Brown
+ */
+final class TraceFileParser
+{
+	private static final Logger LOGGER = Logger.getLogger(TraceFileParser.class.getName());
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int LINE_SIZE = 1 << 10;
+	private static final byte[] SF = ascii("SF:");
+	private static final byte[] KF = ascii("KF:");
+	private static final byte[] END_OF_RECORD = ascii("end_of_record");
+	private static final byte[] TN = ascii("TN:");
+	private static final byte[] DA = ascii("DA:");
+	private static final byte[] BRDA = ascii("BRDA:");
+	private static final byte[] FN = ascii("FN:");
+	private static final byte[] FNDA = ascii("FNDA:");
+	private final ParsedFiles parsedFiles;
+	private final TestNames testNameIds;
+	private final String testTitle;
+	private final boolean isBaseline;
+	private final Charset charset;
+	private Set<String> testNames;
+	private TestCaseSourceFile testCaseSourceFile;
+	private String testCaseName;
+	private int testCaseId;
+	private int value;
+	private long records;
+
+	/**
+	 * @param parsedFiles The registry to add the parsed data to.
+	 * @param testTitle The test name to give source files created by this parser.
+	 * @param isBaseline true if the tracefile is a baseline file.
+	 */
+	TraceFileParser(final ParsedFiles parsedFiles, final String testTitle, final boolean isBaseline)
+	{
+		this.parsedFiles = parsedFiles;
+		this.testNameIds = parsedFiles.getTestNames();
+		this.testTitle = testTitle;
+		this.isBaseline = isBaseline;
+		this.charset = Charset.defaultCharset();
+		this.testNames = null;
+		this.testCaseSourceFile = null;
+		this.testCaseName = CoverageReport.DEFAULT_TEST_NAME;
+		this.testCaseId = testNameIds.getId(testCaseName);
+		this.records = 0;
+	}
+
+	private static byte[] ascii(final String tag)
+	{
+		return tag.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * The (non empty) test names found so far.
+	 * @return The test names or null if no test names have been found.
+	 */
+	Set<String> getTestNames()
+	{
+		return testNames;
+	}
+
+	/**
+	 * The number of DA, BRDA, FN and FNDA records parsed so far.
+	 * @return The number of records.
+	 */
+	long getRecords()
+	{
+		return records;
+	}
+
+	/**
+	 * Parses a tracefile, the stream is read to the end but not closed.
+	 * @param in The (uncompressed) tracefile content.
+	 * @throws IOException If the stream can not be read.
+	 * @throws ParserConfigurationException If a source file could not be created.
+	 */
+	void parse(final InputStream in) throws IOException, ParserConfigurationException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int start = 0;
+		int scan = 0;
+		int limit = 0;
+		int read;
+		while((read = in.read(buffer, limit, buffer.length - limit)) >= 0)
+		{
+			limit += read;
+			for(; scan < limit; scan++)
+			{
+				if(buffer[scan] == '\n')
+				{
+					parseLine(buffer, start, scan);
+					start = scan + 1;
+				}
+			}
+			if(start > 0)
+			{
+				System.arraycopy(buffer, start, buffer, 0, limit - start);
+				limit -= start;
+				scan -= start;
+				start = 0;
+			}
+			else if(limit == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);  // a line longer than the buffer
+			}
+		}
+		if(start < limit)
+		{
+			parseLine(buffer, start, limit);
+		}
+	}
+
+	/**
+	 * Parses tracefile content held in a buffer, for example a memory mapped chunk of a tracefile.
+	 * Each line is copied into a scratch array before it is parsed.
+	 * @param buffer The (uncompressed) tracefile content from its position to its limit.
+	 * @throws IOException If a source file could not be read.
+	 * @throws ParserConfigurationException If a source file could not be created.
+	 */
+	void parse(final ByteBuffer buffer) throws IOException, ParserConfigurationException
+	{
+		byte[] line = new byte[LINE_SIZE];
+		int limit = buffer.limit();
+		int start = buffer.position();
+		for(int i = start; i <= limit; i++)
+		{
+			if(i == limit || buffer.get(i) == '\n')
+			{
+				int length = i - start;
+				if(length > line.length)
+				{
+					line = new byte[Math.max(length, line.length * 2)];
+				}
+				buffer.position(start);
+				buffer.get(line, 0, length);
+				parseLine(line, 0, length);
+				start = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Parses a single line from a tracefile.
+	 * @param buffer Holds the line.
+	 * @param from The index of the first byte of the line.
+	 * @param to The index after the last byte of the line (excluding the line terminator).
+	 * @throws IOException If a source file could not be read.
+	 * @throws ParserConfigurationException If a source file could not be created.
+	 */
+	void parseLine(final byte[] buffer, final int from, final int to) throws IOException, ParserConfigurationException
+	{
+		int start = from;
+		int end = to;
+		while(start < end && (buffer[start] & 0xFF) <= ' ')
+		{
+			start++;
+		}
+		while(end > start && (buffer[end - 1] & 0xFF) <= ' ')
+		{
+			end--;
+		}
+		if(startsWith(buffer, start, end, SF) || startsWith(buffer, start, end, KF))
+		{
+			File sourceFile = JGenHtmlUtils.processFilePath(new String(buffer, start + SF.length, end - start - SF.length, charset));
+			testCaseSourceFile = parsedFiles.get(sourceFile, testTitle, !isBaseline);
+		}
+		else if(startsWith(buffer, start, end, END_OF_RECORD))
+		{
+			if(testCaseSourceFile != null)
+			{
+				testCaseName = CoverageReport.DEFAULT_TEST_NAME;
+				testCaseId = testNameIds.getId(testCaseName);
+				testCaseSourceFile = null;
+			}
+			else
+			{
+				LOGGER.log(Level.FINE, "Unexpected end of record");
+			}
+		}
+		else if(testCaseSourceFile != null)
+		{
+			parseRecordLine(buffer, start, end);
+		}
+		else if(startsWith(buffer, start, end, TN))
+		{
+			parseTestName(buffer, start + TN.length, end);
+		}
+		else if(start < end && LOGGER.isLoggable(Level.FINE))
+		{
+			LOGGER.log(Level.FINE, "Unexpected line: {0}", new String(buffer, start, end - start, charset));
+		}
+	}
+
+	/**
+	 * Parses a line inside a record, that is after SF and before end_of_record.
+	 */
+	private void parseRecordLine(final byte[] buffer, final int start, final int end)
+	{
+		boolean parsed = true;
+		if(startsWith(buffer, start, end, DA))
+		{
+			// DA:<line number>,<execution count>[,<checksum>]
+			int pos = nextField(buffer, parseInt(buffer, start + DA.length, end), end);
+			if(pos >= 0 && value > 0)
+			{
+				int lineNo = value;
+				pos = parseInt(buffer, pos, end);
+				parsed = pos >= 0 && (pos == end || buffer[pos] == ',');
+				if(parsed)
+				{
+					testCaseSourceFile.addLineData(testCaseId, lineNo, value, isBaseline);
+					records++;
+				}
+			}
+			else
+			{
+				parsed = false;
+			}
+		}
+		else if(startsWith(buffer, start, end, BRDA))
+		{
+			// BRDA:<line number>,<block number>,<branch number>,<taken>
+			parsed = parseBranchData(buffer, start + BRDA.length, end);
+		}
+		else if(startsWith(buffer, start, end, FNDA))
+		{
+			// FNDA:<execution count>,<function name>
+			int pos = nextField(buffer, parseInt(buffer, start + FNDA.length, end), end);
+			parsed = pos >= 0 && isName(buffer, pos, end);
+			if(parsed)
+			{
+				testCaseSourceFile.addFunctionHits(testCaseId, new String(buffer, pos, end - pos, charset), value, isBaseline);
+				records++;
+			}
+		}
+		else if(startsWith(buffer, start, end, FN))
+		{
+			// FN:<line number of function start>,<function name>
+			if(!isBaseline)
+			{
+				int pos = nextField(buffer, parseInt(buffer, start + FN.length, end), end);
+				parsed = pos >= 0 && isName(buffer, pos, end);
+				if(parsed)
+				{
+					testCaseSourceFile.addFunctionLine(new String(buffer, pos, end - pos, charset), value);
+					records++;
+				}
+			}
+		}
+		if(!parsed && LOGGER.isLoggable(Level.FINE))
+		{
+			LOGGER.log(Level.FINE, "Could not parse line: {0}", new String(buffer, start, end - start, charset));
+		}
+	}
+
+	/**
+	 * Parses the values of a BRDA line.
+	 * @return false if the line is not well formed.
+	 */
+	private boolean parseBranchData(final byte[] buffer, final int start, final int end)
+	{
+		boolean result = false;
+		int pos = nextField(buffer, parseInt(buffer, start, end), end);
+		if(pos >= 0 && value > 0)
+		{
+			int lineNo = value;
+			pos = nextField(buffer, parseInt(buffer, pos, end), end);
+			if(pos >= 0)
+			{
+				int block = value;
+				pos = nextField(buffer, parseInt(buffer, pos, end), end);
+				if(pos >= 0)
+				{
+					int number = value;
+					if(pos == end - 1 && buffer[pos] == '-')
+					{
+						value = 0;  // the branch was never evaluated
+						result = true;
+					}
+					else
+					{
+						result = parseInt(buffer, pos, end) == end;
+					}
+					if(result)
+					{
+						testCaseSourceFile.addBranchData(testCaseId, lineNo, block, number, value, isBaseline);
+						records++;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the value of a TN line.
+	 * A TN line with no value leaves the current test name as it is.
+	 */
+	private void parseTestName(final byte[] buffer, final int start, final int end)
+	{
+		if(start < end)
+		{
+			int nameEnd = start;
+			while(nameEnd < end && buffer[nameEnd] != ',')
+			{
+				nameEnd++;
+			}
+			testCaseName = new String(buffer, start, nameEnd - start, charset).trim();
+			testCaseId = testNameIds.getId(testCaseName);
+		}
+		if(!testCaseName.isEmpty())
+		{
+			if(testNames == null)
+			{
+				testNames = new HashSet<>();
+			}
+			testNames.add(testCaseName);
+		}
+	}
+
+	/**
+	 * Decodes a decimal integer in place, the result is stored in "value".
+	 * @param buffer Holds the number.
+	 * @param start The index the number starts at.
+	 * @param end The index after the last byte which may be read.
+	 * @return The index after the last digit or -1 if there is no valid number at start.
+	 */
+	private int parseInt(final byte[] buffer, final int start, final int end)
+	{
+		int result = -1;
+		int pos = start;
+		boolean negative = pos < end && buffer[pos] == '-';
+		if(negative)
+		{
+			pos++;
+		}
+		int digits = pos;
+		long number = 0;
+		while(pos < end && buffer[pos] >= '0' && buffer[pos] <= '9' && number <= Integer.MAX_VALUE)
+		{
+			number = number * 10 + (buffer[pos++] - '0');
+		}
+		if(pos > digits && number <= Integer.MAX_VALUE)
+		{
+			value = (int)(negative? -number : number);
+			result = pos;
+		}
+		return result;
+	}
+
+	/**
+	 * Steps over the comma separating two values.
+	 * @param pos The index which should hold a comma, may be -1 if the previous value could not be parsed.
+	 * @return The index of the next value or -1 if there is no next value.
+	 */
+	private static int nextField(final byte[] buffer, final int pos, final int end)
+	{
+		return (pos >= 0 && pos < end - 1 && buffer[pos] == ',')? pos + 1 : -1;
+	}
+
+	/**
+	 * A name is the (non empty) remainder of the line and must not contain a comma.
+	 */
+	private static boolean isName(final byte[] buffer, final int start, final int end)
+	{
+		boolean result = start < end;
+		for(int i = start; result && i < end; i++)
+		{
+			result = buffer[i] != ',';
+		}
+		return result;
+	}
+
+	private static boolean startsWith(final byte[] buffer, final int start, final int end, final byte[] tag)
+	{
+		boolean result = end - start >= tag.length;
+		for(int i = 0; result && i < tag.length; i++)
+		{
+			result = buffer[start + i] == tag[i];
+		}
+		return result;
+	}
+}
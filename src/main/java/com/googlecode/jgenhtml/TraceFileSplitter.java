@@ -0,0 +1,222 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Splits a large uncompressed tracefile into chunks which can be parsed concurrently.
+ * A chunk only ever ends straight after an end_of_record line which closes a record (that is, one that follows an SF line).
+ * At that point the test name has been reset and no source file is open, so each chunk can be parsed from a
+ * fresh state and the merged result is the same as parsing the whole file in one go.
+ * @author Rick Brown
+ */
+final class TraceFileSplitter
+{
+	private static final Logger LOGGER = Logger.getLogger(TraceFileSplitter.class.getName());
+	/**
+	 * Files smaller than twice this are not worth splitting.
+	 */
+	static final long MIN_CHUNK_SIZE = 4L << 20;
+	private static final long MAX_CHUNK_SIZE = 1L << 30;  // must fit in a single mapping
+	private static final int CHUNKS_PER_THREAD = 4;  // more chunks than threads evens out the load
+	private static final int SEARCH_WINDOW = 1 << 20;
+	private static final byte[] SF = ascii("SF:");
+	private static final byte[] KF = ascii("KF:");
+	private static final byte[] END_OF_RECORD = ascii("end_of_record");
+
+	private TraceFileSplitter()
+	{
+	}
+
+	private static byte[] ascii(final String tag)
+	{
+		return tag.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Decide where to split a tracefile.
+	 * @param traceFile The tracefile to split.
+	 * @param threads The number of threads which will parse the chunks.
+	 * @return The offsets of the chunks, starting with 0 and ending with the file length,
+	 * or null if the tracefile is compressed or too small to be worth splitting.
+	 * @throws IOException If the tracefile can not be read.
+	 */
+	static long[] split(final File traceFile, final int threads) throws IOException
+	{
+		long[] result = null;
+		long length = traceFile.length();
+		if(!traceFile.getName().endsWith(".gz") && length >= 2 * MIN_CHUNK_SIZE)
+		{
+			long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, length / ((long)threads * CHUNKS_PER_THREAD)));
+			result = split(traceFile, chunkSize);
+		}
+		return result;
+	}
+
+	/**
+	 * Split a tracefile into chunks of roughly the given size.
+	 * @param traceFile The tracefile to split.
+	 * @param chunkSize The size to aim for, chunks are extended to the next record boundary.
+	 * @return The offsets of the chunks, starting with 0 and ending with the file length.
+	 * @throws IOException If the tracefile can not be read.
+	 */
+	static long[] split(final File traceFile, final long chunkSize) throws IOException
+	{
+		List<Long> offsets = new ArrayList<>();
+		offsets.add(0L);
+		try (RandomAccessFile file = new RandomAccessFile(traceFile, "r"); FileChannel channel = file.getChannel())
+		{
+			long length = channel.size();
+			long offset = 0;
+			while((offset = findBoundary(channel, offset + chunkSize, length)) < length)
+			{
+				offsets.add(offset);
+			}
+			offsets.add(length);
+		}
+		long[] result = new long[offsets.size()];
+		for(int i = 0; i < result.length; i++)
+		{
+			result[i] = offsets.get(i);
+		}
+		LOGGER.log(Level.FINE, "Split {0} into {1} chunks", new Object[]{traceFile.getName(), result.length - 1});
+		return result;
+	}
+
+	/**
+	 * Find the first record boundary at or after the given offset.
+	 * @param channel The tracefile.
+	 * @param from The offset to start searching at.
+	 * @param length The length of the tracefile.
+	 * @return The offset straight after a closing end_of_record line or the length of the file if there is none.
+	 */
+	private static long findBoundary(final FileChannel channel, final long from, final long length) throws IOException
+	{
+		long result = length;
+		if(from < length)
+		{
+			long start = from - 1;  // include the previous byte in case "from" is the start of a line
+			long window = SEARCH_WINDOW;
+			boolean searched = false;
+			while(!searched)
+			{
+				long size = Math.min(Math.min(window, length - start), Integer.MAX_VALUE);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+				boolean complete = start + size == length;
+				int boundary = findBoundary(buffer, complete);
+				if(boundary >= 0)
+				{
+					result = start + boundary;
+					searched = true;
+				}
+				else if(complete || size == Integer.MAX_VALUE)
+				{
+					searched = true;  // no boundary in the rest of the file, it is the last chunk
+				}
+				window *= 2;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the first record boundary in a buffer which starts partway through a line.
+	 * @param buffer The buffer to search.
+	 * @param complete true if the buffer runs to the end of the file.
+	 * @return The index straight after a closing end_of_record line or -1 if there is none in this buffer.
+	 */
+	private static int findBoundary(final MappedByteBuffer buffer, final boolean complete)
+	{
+		int result = -1;
+		int limit = buffer.limit();
+		int pos = skipLine(buffer, 0, limit);  // the first line is only partly in the buffer
+		boolean inRecord = false;
+		while(result < 0 && pos < limit)
+		{
+			int end = skipLine(buffer, pos, limit);
+			if(end == limit && !complete && buffer.get(limit - 1) != '\n')
+			{
+				break;  // the line is not complete, need a bigger buffer
+			}
+			int start = pos;
+			while(start < end && buffer.get(start) != '\n' && (buffer.get(start) & 0xFF) <= ' ')
+			{
+				start++;
+			}
+			if(startsWith(buffer, start, end, SF) || startsWith(buffer, start, end, KF))
+			{
+				inRecord = true;
+			}
+			else if(inRecord && startsWith(buffer, start, end, END_OF_RECORD))
+			{
+				result = end;
+			}
+			pos = end;
+		}
+		return result;
+	}
+
+	/**
+	 * @return The index after the next line feed or limit if there is none.
+	 */
+	private static int skipLine(final MappedByteBuffer buffer, final int from, final int limit)
+	{
+		int result = from;
+		while(result < limit && buffer.get(result++) != '\n')
+		{
+			// keep looking
+		}
+		return result;
+	}
+
+	private static boolean startsWith(final MappedByteBuffer buffer, final int start, final int end, final byte[] tag)
+	{
+		boolean result = end - start >= tag.length;
+		for(int i = 0; result && i < tag.length; i++)
+		{
+			result = buffer.get(start + i) == tag[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Parse one chunk of a tracefile.
+	 * @param traceFile The tracefile.
+	 * @param start The offset the chunk starts at.
+	 * @param end The offset the chunk ends at.
+	 * @param parser The parser, which should be in its initial state.
+	 * @throws IOException If the tracefile can not be read.
+	 * @throws ParserConfigurationException If a source file could not be created.
+	 */
+	static void parse(final File traceFile, final long start, final long end, final TraceFileParser parser) throws IOException, ParserConfigurationException
+	{
+		try (RandomAccessFile file = new RandomAccessFile(traceFile, "r"); FileChannel channel = file.getChannel())
+		{
+			parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+		}
+	}
+}
@@ -75,6 +75,34 @@ public class JGenHtmlTask extends Task
 		executor.setConfig(config);
 	}
 
+	/**
+	 *
+	 * @param failUnder The minimum overall coverage, for example "line=80,function=75,branch=50".
+	 * The build fails if coverage is lower.
+	 */
+	public void setFailUnder(final String failUnder)
+	{
+		executor.setFailUnder(failUnder);
+	}
+
+	/**
+	 *
+	 * @param failUnderDir The minimum coverage of each directory, in the same form as failUnder.
+	 */
+	public void setFailUnderDir(final String failUnderDir)
+	{
+		executor.setFailUnderDir(failUnderDir);
+	}
+
+	/**
+	 *
+	 * @param failFast true to skip generating the report when coverage is below the thresholds.
+	 */
+	public void setFailFast(final boolean failFast)
+	{
+		executor.setFailFast(failFast);
+	}
+
 	/**
 	 * Run jgenhtml with the provided attributes.
 	 * Note that if both "in" and nested path are present then both will be used.
@@ -52,6 +52,24 @@ public class JGenHtmlMojo extends AbstractMojo
 	@Parameter(property = "jgenhtml.config")
 	private String config = null;
 
+	/**
+	 * The minimum overall coverage, for example "line=80,function=75,branch=50".
+	 */
+	@Parameter(property = "jgenhtml.failUnder")
+	private String failUnder = null;
+
+	/**
+	 * The minimum coverage of each directory, in the same form as failUnder.
+	 */
+	@Parameter(property = "jgenhtml.failUnderDir")
+	private String failUnderDir = null;
+
+	/**
+	 * Skip generating the report when coverage is below the thresholds.
+	 */
+	@Parameter(property = "jgenhtml.failFast", defaultValue = "false")
+	private boolean failFast = false;
+
 	public void setTracefiles(String[] tracefiles)
 	{
 		this.tracefiles = tracefiles;
@@ -67,6 +85,9 @@ public class JGenHtmlMojo extends AbstractMojo
 			executor.addTracefile(in);
 			executor.setOutdir(outdir);
 			executor.setConfig(config);
+			executor.setFailUnder(failUnder);
+			executor.setFailUnderDir(failUnderDir);
+			executor.setFailFast(failFast);
 			executor.execute();
 		}
 		catch(IllegalStateException ex)
@@ -31,6 +31,9 @@ public class JGenHtmlExecutor
 	private final Set<String> tracefiles;
 	private String outdir = null;
 	private String config = null;
+	private String failUnder = null;
+	private String failUnderDir = null;
+	private boolean failFast = false;
 
 	public JGenHtmlExecutor()
 	{
@@ -81,6 +84,32 @@ public class JGenHtmlExecutor
 		this.config = config;
 	}
 
+	/**
+	 * @param failUnder The minimum overall coverage, for example "line=80,function=75,branch=50".
+	 * Execution fails if coverage is lower.
+	 */
+	public void setFailUnder(String failUnder)
+	{
+		this.failUnder = failUnder;
+	}
+
+	/**
+	 * @param failUnderDir The minimum coverage of each directory, in the same form as failUnder.
+	 * Execution fails if the coverage of any directory is lower.
+	 */
+	public void setFailUnderDir(String failUnderDir)
+	{
+		this.failUnderDir = failUnderDir;
+	}
+
+	/**
+	 * @param failFast true to skip generating the report when coverage is below the thresholds.
+	 */
+	public void setFailFast(boolean failFast)
+	{
+		this.failFast = failFast;
+	}
+
 	/**
 	 * Check that the mandatory properties have been set.
 	 */
@@ -110,18 +139,35 @@ public class JGenHtmlExecutor
 			args.add("--config-file");
 			args.add(config);
 		}
+		if(failUnder != null && !failUnder.isEmpty())
+		{
+			args.add("--fail-under");
+			args.add(failUnder);
+		}
+		if(failUnderDir != null && !failUnderDir.isEmpty())
+		{
+			args.add("--fail-under-dir");
+			args.add(failUnderDir);
+		}
+		if(failFast)
+		{
+			args.add("--fail-fast");
+		}
 		args.addAll(tracefiles);
 		return args.toArray(result);
 	}
 
 	/**
 	 * Run jgenhtml with the provided properties.
-	 * @throws IllegalStateException If mandatory properties have not been set.
+	 * @throws IllegalStateException If mandatory properties have not been set or coverage is below the thresholds.
 	 */
 	public void execute() throws IllegalStateException
 	{
 		validate();
 		String[] args = buildArgs();
-		JGenHtml.main(args);
+		if(JGenHtml.run(args) == JGenHtml.STATUS_BELOW_THRESHOLD)
+		{
+			throw new IllegalStateException("Coverage is below the thresholds");
+		}
 	}
 }
@@ -16,7 +16,9 @@
 package com.googlecode.jgenhtml;
 
 import java.io.File;
+import java.util.zip.Deflater;
 import junit.framework.TestCase;
+import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -343,6 +345,151 @@ public class ConfigTest extends TestCase
 		assertEquals("invalid number should have no side effects", DEFAULT_NUMSPACES, result);
 	}
 
+	/**
+	 * Test of getThreads method, of class Config.
+	 */
+	public void testGetThreads()
+	{
+		System.out.println("getThreads");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertEquals("threads should default to 1", 1, instance.getThreads());
+	}
+
+	/**
+	 * Test of setThreads method, of class Config.
+	 */
+	public void testSetThreads()
+	{
+		System.out.println("setThreads");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--threads", "4"});
+		assertEquals(4, instance.getThreads());
+	}
+
+	/**
+	 * Test of setThreads method, of class Config.
+	 */
+	public void testSetThreadsZero()
+	{
+		System.out.println("testSetThreadsZero");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--threads", "0"});
+		assertEquals("zero should mean one per processor", Runtime.getRuntime().availableProcessors(), instance.getThreads());
+	}
+
+	/**
+	 * Test of getHtmlEngine method, of class Config.
+	 */
+	public void testGetHtmlEngine()
+	{
+		System.out.println("getHtmlEngine");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertEquals("html engine should default to xslt", Config.HtmlEngine.XSLT, instance.getHtmlEngine());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-engine", "stream"});
+		assertEquals(Config.HtmlEngine.STREAM, instance.getHtmlEngine());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-engine", "bogus"});
+		assertEquals("unknown engines should be ignored", Config.HtmlEngine.XSLT, instance.getHtmlEngine());
+	}
+
+	/**
+	 * Test of getGzipLevel method, of class Config.
+	 */
+	public void testGetGzipLevel()
+	{
+		System.out.println("getGzipLevel");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertEquals(Deflater.DEFAULT_COMPRESSION, instance.getGzipLevel());
+		assertFalse(instance.isGzipStatic());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-gzip-level", "1", "--html-gzip-static"});
+		assertEquals(1, instance.getGzipLevel());
+		assertTrue(instance.isGzipStatic());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-gzip-level", "10"});
+		assertEquals("levels above 9 should be ignored", Deflater.DEFAULT_COMPRESSION, instance.getGzipLevel());
+	}
+
+	/**
+	 * Test of isIncremental method, of class Config.
+	 */
+	public void testIsIncremental()
+	{
+		System.out.println("isIncremental");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertFalse(instance.isIncremental());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--incremental"});
+		assertTrue(instance.isIncremental());
+	}
+
+	/**
+	 * Test of getParseCacheDir method, of class Config.
+	 */
+	public void testGetParseCacheDir()
+	{
+		System.out.println("getParseCacheDir");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertNull(instance.getParseCacheDir());
+		assertEquals(256, instance.getParseCacheSize());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--parse-cache", "/tmp/cache", "--parse-cache-size", "10"});
+		assertEquals(new File("/tmp/cache"), instance.getParseCacheDir());
+		assertEquals(10, instance.getParseCacheSize());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--parse-cache-size", "-1"});
+		assertEquals("negative sizes should be ignored", 256, instance.getParseCacheSize());
+	}
+
+	/**
+	 * Test of isSummaryOnly method, of class Config.
+	 */
+	public void testIsSummaryOnly()
+	{
+		System.out.println("isSummaryOnly");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertFalse(instance.isSummaryOnly());
+		assertFalse(instance.isSummaryJson());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--summary-only", "--summary-json"});
+		assertTrue(instance.isSummaryOnly());
+		assertTrue(instance.isSummaryJson());
+	}
+
+	/**
+	 * Test of getThreshold, getDirThreshold and isFailFast methods, of class Config.
+	 */
+	public void testGetThreshold()
+	{
+		System.out.println("getThreshold");
+		Config instance = JGenHtmlTestUtils.getDummyConfig(new String[]{});
+		assertNull(instance.getThreshold());
+		assertNull(instance.getDirThreshold());
+		assertFalse(instance.isFailFast());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--fail-under", "line=80,function=75.5", "--fail-under-dir", "branch=10", "--fail-fast"});
+		assertEquals(80f, instance.getThreshold().getLine());
+		assertEquals(75.5f, instance.getThreshold().getFunction());
+		assertTrue(Float.isNaN(instance.getThreshold().getBranch()));
+		assertEquals(10f, instance.getDirThreshold().getBranch());
+		assertTrue(instance.isFailFast());
+		instance = JGenHtmlTestUtils.getDummyConfig(new String[]{"--fail-under", "line=120"});
+		assertNull(instance.getThreshold());
+	}
+
+	/**
+	 * Test of initializeUserPrefs method with a working directory, of class Config.
+	 * Relative paths are resolved against the working directory, absolute paths are left alone.
+	 */
+	public void testInitializeUserPrefsWorkingDir() throws ParseException
+	{
+		System.out.println("initializeUserPrefsWorkingDir");
+		File workingDir = new File(JGenHtmlTestUtils.getTestDir(), "workingdir");
+		File absolute = new File(JGenHtmlTestUtils.getTestDir(), "absolute.info").getAbsoluteFile();
+		Config instance = new Config();
+		instance.initializeUserPrefs(new String[]{"a.info", absolute.getPath()}, workingDir);
+		assertEquals(workingDir, instance.getOutRootDir());
+		assertEquals(new File(workingDir, "a.info").getPath(), instance.getTraceFiles()[0]);
+		assertEquals(absolute.getPath(), instance.getTraceFiles()[1]);
+		instance = new Config();
+		instance.initializeUserPrefs(new String[]{"-o", "out", "--parse-cache", "cache", "a.info"}, workingDir);
+		assertEquals(new File(workingDir, "out"), instance.getOutRootDir());
+		assertEquals(new File(workingDir, "cache"), instance.getParseCacheDir());
+		assertFalse(instance.isDaemon());
+		assertTrue(JGenHtmlTestUtils.getDummyConfig(new String[]{"--daemon"}).isDaemon());
+		assertTrue(JGenHtmlTestUtils.getDummyConfig(new String[]{"--daemon-stop"}).isDaemonStop());
+	}
+
 	/**
 	 * Test of loadConfigFile method, of class Config.
 	 */
@@ -15,8 +15,10 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.io.File;
 import javax.xml.parsers.ParserConfigurationException;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 import org.w3c.dom.Document;
 
 /**
@@ -231,7 +233,30 @@ public class CoveragePageTest extends TestCase
 
 	/**
 	 * Test of writeToFileSystem method, of class CoveragePage.
+	 * The document must be released once the page is written and rebuilt from scratch if it is written again.
 	 */
+	public void testWriteToFileSystemReleasesDoc() throws Exception
+	{
+		System.out.println("testWriteToFileSystemReleasesDoc");
+		File outDir = new File(JGenHtmlTestUtils.getTestDir(), "releasedoc");
+		Config config = JGenHtmlTestUtils.getDummyConfig(new String[]{"-o", outDir.getAbsolutePath()});
+		TestCaseSourceFile sourceFile = new TestCaseSourceFile(TEST_NAME, "released.js");
+		sourceFile.setPath("release/doc");
+		sourceFile.addLineData(sourceFile.getTestNames().getId(TEST_NAME), 1, 3, false);
+		TestCaseIndexPage instance = new TestCaseIndexPage(TEST_NAME, "release/doc");
+		instance.addSourceFile(sourceFile);
+		Document before = instance.getDoc();
+		instance.writeToFileSystem(config);
+		File xml = instance.getTargetFile(config, true);
+		String written = FileUtils.readFileToString(xml);
+		assertNotSame(before, instance.getDoc());
+		assertFalse(instance.getDoc().getDocumentElement().hasChildNodes());
+		instance.writeToFileSystem(config);
+		assertEquals(written, FileUtils.readFileToString(xml));
+		assertEquals(1, written.split("<source ").length - 1);
+		assertEquals(1, instance.getLineHit());
+	}
+
 	/*
 	public void testWriteToFileSystem() throws Exception
 	{
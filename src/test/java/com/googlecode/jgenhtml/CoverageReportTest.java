@@ -15,10 +15,25 @@
  */
 package com.googlecode.jgenhtml;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import javax.xml.parsers.ParserConfigurationException;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 
 /**
  *
@@ -85,6 +100,251 @@ public class CoverageReportTest extends TestCase
 		processTraceFileHelper(traceFiles);
 	}
 
+	/**
+	 * Test of processTraceFiles method, of class CoverageReport.
+	 * Parsing tracefiles concurrently must give exactly the same data as parsing them one after the other.
+	 */
+	public void testProcessTraceFilesThreads() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testProcessTraceFilesThreads");
+		String[] split = JGenHtmlTestUtils.getJstdTraceFiles(false, true);
+		String[] traceFiles = new String[]{split[0], split[1], JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData()[0], split[0]};
+		try
+		{
+			CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"-b", split[1]}));
+			Map<String, TestCaseSourceFile> expected = getParsedFiles(new CoverageReport(traceFiles));
+			CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"-b", split[1], "--threads", "4"}));
+			Map<String, TestCaseSourceFile> actual = getParsedFiles(new CoverageReport(traceFiles));
+			assertEquals(expected.keySet(), actual.keySet());
+			for(Map.Entry<String, TestCaseSourceFile> entry : expected.entrySet())
+			{
+				TestCaseSourceFile expectedFile = entry.getValue();
+				TestCaseSourceFile actualFile = actual.get(entry.getKey());
+				assertEquals(expectedFile.getLineCount(), actualFile.getLineCount());
+				assertEquals(expectedFile.getLineHit(), actualFile.getLineHit());
+				assertEquals(expectedFile.getBranchCount(), actualFile.getBranchCount());
+				assertEquals(expectedFile.getBranchHit(), actualFile.getBranchHit());
+				assertEquals(expectedFile.getFuncCount(), actualFile.getFuncCount());
+				assertEquals(expectedFile.getFuncHit(), actualFile.getFuncHit());
+				assertEquals(expectedFile.getTestCaseNames(), actualFile.getTestCaseNames());
+				for(String testCaseName : expectedFile.getTestCaseNames())
+				{
+					assertEquals(expectedFile.getLineHit(testCaseName), actualFile.getLineHit(testCaseName));
+					assertEquals(expectedFile.getBranchHit(testCaseName), actualFile.getBranchHit(testCaseName));
+					assertEquals(expectedFile.getFuncHit(testCaseName), actualFile.getFuncHit(testCaseName));
+				}
+			}
+		}
+		finally
+		{
+			CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		}
+	}
+
+	/**
+	 * Test of build method, of class CoverageReport.Builder.
+	 * Reports with different configs generated at the same time must be the same as reports generated one at a time.
+	 */
+	public void testBuilderConcurrent() throws Exception
+	{
+		System.out.println("testBuilderConcurrent");
+		File testDir = new File(JGenHtmlTestUtils.getTestDir(), "builder");
+		FileUtils.deleteDirectory(testDir);
+		File source = new File(testDir, "src/tabs.c");
+		FileUtils.writeStringToFile(source, "int main()\n{\n\treturn 0;\n}\n", "UTF-8");
+		final File traceFile = new File(testDir, "tabs.info");
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + source.getAbsolutePath() + "\nDA:1,1\nDA:3,1\nend_of_record\n", "UTF-8");
+		String[][] options = new String[][]{{"--num-spaces", "2", "--html-engine", "stream"}, {"--threads", "2", "--no-prefix"}};
+		File[] expected = new File[options.length];
+		for(int i = 0; i < options.length; i++)
+		{
+			expected[i] = new File(testDir, "expected" + i);
+			generate(options[i], expected[i], traceFile);
+		}
+		final File[] actual = new File[options.length];
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(options.length);
+		try
+		{
+			List<Future<Void>> results = new ArrayList<>();
+			for(int i = 0; i < options.length; i++)
+			{
+				final String[] argv = options[i];
+				final File outDir = actual[i] = new File(testDir, "actual" + i);
+				results.add(pool.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						start.await();
+						generate(argv, outDir, traceFile);
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for(Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		for(int i = 0; i < options.length; i++)
+		{
+			assertSameFiles(expected[i], actual[i]);
+		}
+		assertTrue("tabs expanded", FileUtils.readFileToString(getSourcePage(actual[0])).contains("  return 0;"));
+		assertTrue("tabs left alone", FileUtils.readFileToString(getSourcePage(actual[1])).contains("\treturn 0;"));
+	}
+
+	/**
+	 * Test of build method, of class CoverageReport.Builder.
+	 * Reports generated at the same time must each log at their own level and keep their own test names.
+	 */
+	public void testBuilderConcurrentLogLevel() throws Exception
+	{
+		System.out.println("testBuilderConcurrentLogLevel");
+		File testDir = new File(JGenHtmlTestUtils.getTestDir(), "builderlog");
+		FileUtils.deleteDirectory(testDir);
+		File source = new File(testDir, "src/level.c");
+		FileUtils.writeStringToFile(source, "int main()\n{\n\treturn 0;\n}\n", "UTF-8");
+		final String[] names = new String[]{"quiet", "loud"};
+		final String[][] options = new String[][]{{"--quiet", "--threads", "2"}, {"--threads", "2"}};
+		final File[] traceFiles = new File[names.length];
+		final File[] outDirs = new File[names.length];
+		for(int i = 0; i < names.length; i++)
+		{
+			traceFiles[i] = new File(testDir, names[i] + ".info");
+			outDirs[i] = new File(testDir, names[i]);
+			FileUtils.writeStringToFile(traceFiles[i], "TN:" + names[i] + "_test\nSF:" + source.getAbsolutePath() + "\nDA:1,1\nDA:3,1\nend_of_record\n", "UTF-8");
+		}
+		final CountDownLatch start = new CountDownLatch(1);
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		PrintStream err = System.err;
+		ExecutorService pool = Executors.newFixedThreadPool(names.length);
+		List<Future<CoverageReport>> results = new ArrayList<>();
+		System.setErr(new PrintStream(log, true, "UTF-8"));
+		try
+		{
+			for(int i = 0; i < names.length; i++)
+			{
+				final int index = i;
+				results.add(pool.submit(new Callable<CoverageReport>()
+				{
+					@Override
+					public CoverageReport call() throws Exception
+					{
+						List<String> argv = new ArrayList<>(Arrays.asList(options[index]));
+						argv.add("-o");
+						argv.add(outDirs[index].getAbsolutePath());
+						Config config = JGenHtmlTestUtils.getDummyConfig(argv.toArray(new String[argv.size()]));
+						start.await();
+						CoverageReport report = new CoverageReport.Builder(config).addTraceFile(traceFiles[index].getAbsolutePath()).build();
+						report.generateReports();
+						return report;
+					}
+				}));
+			}
+			start.countDown();
+			for(Future<CoverageReport> result : results)
+			{
+				result.get();
+			}
+		}
+		finally
+		{
+			System.setErr(err);
+			pool.shutdownNow();
+		}
+		String logged = log.toString("UTF-8");
+		assertFalse(logged, logged.contains("Reading data file: quiet.info"));
+		assertFalse(logged, logged.contains("Generating output at " + outDirs[0].getAbsolutePath()));
+		assertTrue(logged, logged.contains("Reading data file: loud.info"));
+		assertTrue(logged, logged.contains("Generating output at " + outDirs[1].getAbsolutePath()));
+		assertEquals(Level.INFO, ReportLogLevel.get());
+		for(int i = 0; i < names.length; i++)
+		{
+			List<TestCaseSourceFile> parsedFiles = new ArrayList<>(results.get(i).get().getParsedFiles());
+			assertEquals(1, parsedFiles.size());
+			assertEquals(Arrays.asList(names[i] + "_test"), new ArrayList<>(parsedFiles.get(0).getTestCaseNames()));
+			assertTrue(new File(outDirs[i], "index.html").exists());
+		}
+	}
+
+	/**
+	 * Test of generateReports method, of class CoverageReport.
+	 * A report generated on eight threads, from a tracefile big enough to be split, must be the same as one generated on one.
+	 */
+	public void testGenerateReportsThreads() throws Exception
+	{
+		System.out.println("testGenerateReportsThreads");
+		File testDir = new File(JGenHtmlTestUtils.getTestDir(), "threads");
+		FileUtils.deleteDirectory(testDir);
+		File traceFile = new File(testDir, "big.info");
+		new TraceFileGenerator(11).setSourceFiles(60).setLinesPerFile(1000).setTestNames(4).setFilesPerTest(60)
+				.setBranchesPerLine(2).setSourceDir(new File(testDir, "src")).write(traceFile);
+		long[] chunks = TraceFileSplitter.split(traceFile, 8);
+		assertNotNull("tracefile is too small to be split", chunks);
+		assertTrue(chunks.length > 2);
+		File expected = new File(testDir, "threads1");
+		File actual = new File(testDir, "threads8");
+		generate(new String[]{"--quiet", "--threads", "1"}, expected, traceFile);
+		generate(new String[]{"--quiet", "--threads", "8"}, actual, traceFile);
+		assertSameFiles(expected, actual);
+	}
+
+	/**
+	 * Checks two report directories hold the same files with the same content.
+	 * @param expected The directory of the reference report.
+	 * @param actual The directory of the report to check.
+	 */
+	private static void assertSameFiles(final File expected, final File actual) throws IOException
+	{
+		Collection<File> expectedFiles = FileUtils.listFiles(expected, null, true);
+		assertEquals(expectedFiles.size(), FileUtils.listFiles(actual, null, true).size());
+		for(File expectedFile : expectedFiles)
+		{
+			String relativePath = expected.toURI().relativize(expectedFile.toURI()).getPath();
+			assertTrue(relativePath, FileUtils.contentEquals(expectedFile, new File(actual, relativePath)));
+		}
+	}
+
+	private static void generate(final String[] options, final File outDir, final File traceFile) throws IOException, ParserConfigurationException
+	{
+		List<String> argv = new ArrayList<>(Arrays.asList(options));
+		argv.add("-o");
+		argv.add(outDir.getAbsolutePath());
+		Config config = JGenHtmlTestUtils.getDummyConfig(argv.toArray(new String[argv.size()]));
+		new CoverageReport.Builder(config).addTraceFile(traceFile.getAbsolutePath()).build().generateReports();
+	}
+
+	private static File getSourcePage(final File outDir)
+	{
+		File result = null;
+		for(File file : FileUtils.listFiles(outDir, new String[]{"html"}, true))
+		{
+			if(file.getName().equals("tabs.c.gcov.html"))
+			{
+				result = file;
+			}
+		}
+		assertNotNull(result);
+		return result;
+	}
+
+	private static Map<String, TestCaseSourceFile> getParsedFiles(final CoverageReport report)
+	{
+		Map<String, TestCaseSourceFile> result = new HashMap<>();
+		for(TestCaseSourceFile sourceFile : report.getParsedFiles())
+		{
+			result.put(sourceFile.getPath() + File.separatorChar + sourceFile.getPageName(), sourceFile);
+		}
+		return result;
+	}
+
 	private void processTraceFileHelper(String[] traceFiles)
 	{
 		try
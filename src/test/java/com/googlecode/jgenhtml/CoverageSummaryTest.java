@@ -0,0 +1,119 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class CoverageSummaryTest extends TestCase
+{
+	private File testDir;
+
+	public CoverageSummaryTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "summary");
+		FileUtils.deleteDirectory(testDir);
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		super.tearDown();
+	}
+
+	/**
+	 * Test of getSummary method, of class CoverageReport.
+	 * The summary must have the same numbers as the top level index page, with or without the source code.
+	 */
+	public void testGetSummary() throws IOException, ParserConfigurationException
+	{
+		System.out.println("getSummary");
+		String[] traceFiles = JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData();
+		String baseline = JGenHtmlTestUtils.getJstdTraceFiles(false, true)[1];
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"-b", baseline}));
+		CoverageReport report = new CoverageReport(traceFiles);
+		CoverageSummary expected = CoverageSummary.of(report.getParsedFiles());
+		TestCaseIndexPage index = new TestCaseIndexPage("test", "/");
+		for(TestCaseSourceFile sourceFile : report.getParsedFiles())
+		{
+			index.addSourceFile(sourceFile);
+		}
+		assertEquals(index.getLineCount(), expected.getLineCount());
+		assertEquals(index.getLineHit(), expected.getLineHit());
+		assertEquals(index.getFuncCount(), expected.getFuncCount());
+		assertEquals(index.getFuncHit(), expected.getFuncHit());
+		assertEquals(index.getBranchCount(), expected.getBranchCount());
+		assertEquals(index.getBranchHit(), expected.getBranchHit());
+		assertTrue(expected.getBranchCount() > 0);
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"-b", baseline, "--summary-only"}));
+		assertEquals(expected.toJson(), new CoverageReport(traceFiles).getSummary().toJson());
+	}
+
+	/**
+	 * Test of toJson method, of class CoverageSummary.
+	 */
+	public void testToJson() throws ParserConfigurationException
+	{
+		System.out.println("toJson");
+		CoverageSummary instance = new CoverageSummary();
+		assertEquals("{\"lines\":{\"hit\":0,\"found\":0,\"rate\":null},\"functions\":{\"hit\":0,\"found\":0,\"rate\":null},"
+				+ "\"branches\":{\"hit\":0,\"found\":0,\"rate\":null}}", instance.toJson());
+		TestCaseIndexPage page = new TestCaseIndexPageStub(3, 4, 1, 2, 0, 0);
+		instance.add(page);
+		assertEquals("{\"lines\":{\"hit\":3,\"found\":4,\"rate\":0.75},\"functions\":{\"hit\":1,\"found\":2,\"rate\":0.5},"
+				+ "\"branches\":{\"hit\":0,\"found\":0,\"rate\":null}}", instance.toJson());
+	}
+
+	/**
+	 * Summary only mode must not write anything.
+	 */
+	public void testSummaryOnly()
+	{
+		System.out.println("testSummaryOnly");
+		String[] traceFiles = JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData();
+		JGenHtml.main(new String[]{"--summary-only", "-o", testDir.getAbsolutePath(), traceFiles[0]});
+		assertTrue(!testDir.exists() || testDir.list().length == 0);
+	}
+
+	private static final class TestCaseIndexPageStub extends TestCaseIndexPage
+	{
+		TestCaseIndexPageStub(final int lineHit, final int lineCount, final int funcHit, final int funcCount, final int branchHit, final int branchCount) throws ParserConfigurationException
+		{
+			super("test", "/");
+			addToCovered(lineHit);
+			addToLineCount(lineCount);
+			addToFuncHit(funcHit);
+			addToFuncCount(funcCount);
+			addToBranchHit(branchHit);
+			addToBranchCount(branchCount);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class CoverageThresholdTest extends TestCase
+{
+	private File testDir;
+	private File traceFile;
+
+	public CoverageThresholdTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "threshold");
+		FileUtils.deleteDirectory(testDir);
+		traceFile = new File(testDir, "test.info");
+		String good = new File(testDir, "good/x.c").getAbsolutePath();
+		String bad = new File(testDir, "bad/y.c").getAbsolutePath();
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + good + "\nDA:1,1\nDA:2,1\nDA:3,1\nend_of_record\n"
+				+ "SF:" + bad + "\nDA:1,1\nDA:2,0\nDA:3,0\nend_of_record\n", "UTF-8");
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		super.tearDown();
+	}
+
+	/**
+	 * Test of parse method, of class CoverageThreshold.
+	 */
+	public void testParse()
+	{
+		System.out.println("parse");
+		CoverageThreshold instance = CoverageThreshold.parse(" branch = 50, line=80.5");
+		assertEquals(80.5f, instance.getLine());
+		assertTrue(Float.isNaN(instance.getFunction()));
+		assertEquals(50f, instance.getBranch());
+		assertEquals("line=80.5,branch=50.0", instance.toString());
+		String[] invalid = new String[]{"line", "lines=80", "line=-1", "line=100.1", "line=abc", ""};
+		for(String spec : invalid)
+		{
+			try
+			{
+				CoverageThreshold.parse(spec);
+				fail("Expected " + spec + " to be rejected");
+			}
+			catch(IllegalArgumentException ex)
+			{
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Test of check method, of class CoverageThreshold.
+	 * Types with no data are not checked, a rate exactly on the threshold is good enough.
+	 */
+	public void testCheck() throws ParserConfigurationException
+	{
+		System.out.println("check");
+		CoverageSummary summary = new CoverageSummary();
+		assertTrue(CoverageThreshold.parse("line=100,function=100,branch=100").check("Overall", summary).isEmpty());
+		summary.add(new TestCaseIndexPageStub(3, 4));
+		assertTrue(CoverageThreshold.parse("line=75").check("Overall", summary).isEmpty());
+		List<String> failures = CoverageThreshold.parse("line=75.5,function=100").check("Overall", summary);
+		assertEquals(1, failures.size());
+		assertEquals("Overall line coverage 75.0% (3 of 4) is below the minimum of 75.5%", failures.get(0));
+	}
+
+	/**
+	 * Test of checkThresholds method, of class CoverageReport.
+	 */
+	public void testCheckThresholds() throws IOException, ParserConfigurationException
+	{
+		System.out.println("checkThresholds");
+		String[] traceFiles = new String[]{traceFile.getAbsolutePath()};
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		assertTrue(new CoverageReport(traceFiles).checkThresholds().isEmpty());
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"--fail-under", "line=66"}));
+		assertTrue(new CoverageReport(traceFiles).checkThresholds().isEmpty());
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"--fail-under", "line=66", "--fail-under-dir", "line=50"}));
+		List<String> failures = new CoverageReport(traceFiles).checkThresholds();
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0), failures.get(0).startsWith("Directory bad line coverage 33.3%"));
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{"--fail-under", "line=70", "--fail-under-dir", "line=30"}));
+		failures = new CoverageReport(traceFiles).checkThresholds();
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0), failures.get(0).startsWith("Overall line coverage 66.7%"));
+	}
+
+	/**
+	 * With fail fast the report must not be generated when coverage is below the thresholds.
+	 */
+	public void testFailFast()
+	{
+		System.out.println("testFailFast");
+		File outDir = new File(testDir, "out");
+		String[] argv = new String[]{"--fail-under-dir", "line=50", "--fail-fast", "-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_BELOW_THRESHOLD, JGenHtml.run(argv));
+		assertFalse(new File(outDir, "index.html").exists());
+		argv = new String[]{"--fail-under-dir", "line=50", "-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_BELOW_THRESHOLD, JGenHtml.run(argv));
+		assertTrue(new File(outDir, "index.html").exists());
+		argv = new String[]{"--fail-under-dir", "line=30", "--fail-fast", "-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(argv));
+	}
+
+	/**
+	 * A report which could not be generated must not exit as if it had passed.
+	 */
+	public void testRunError()
+	{
+		System.out.println("testRunError");
+		File outDir = new File(testDir, "out");
+		String[] argv = new String[]{"-o", outDir.getAbsolutePath(), new File(testDir, "missing.info").getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_ERROR, JGenHtml.run(argv));
+		argv = new String[]{"--no-such-option", traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_ERROR, JGenHtml.run(argv));
+	}
+
+	private static final class TestCaseIndexPageStub extends TestCaseIndexPage
+	{
+		TestCaseIndexPageStub(final int lineHit, final int lineCount) throws ParserConfigurationException
+		{
+			super("test", "/");
+			addToCovered(lineHit);
+			addToLineCount(lineCount);
+		}
+	}
+}
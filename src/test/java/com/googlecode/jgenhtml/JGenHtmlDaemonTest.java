@@ -0,0 +1,208 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class JGenHtmlDaemonTest extends TestCase
+{
+	private File testDir;
+	private File stateFile;
+	private JGenHtmlDaemon daemon;
+	private Thread serving;
+
+	public JGenHtmlDaemonTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "daemon");
+		FileUtils.deleteDirectory(testDir);
+		String good = new File(testDir, "good/x.c").getAbsolutePath();
+		String bad = new File(testDir, "bad/y.c").getAbsolutePath();
+		FileUtils.writeStringToFile(new File(testDir, "test.info"), "TN:t1\nSF:" + good + "\nDA:1,1\nDA:2,1\nDA:3,1\nend_of_record\n"
+				+ "SF:" + bad + "\nDA:1,1\nDA:2,0\nDA:3,0\nend_of_record\n", "UTF-8");
+		stateFile = new File(testDir, "state/daemon");
+		daemon = new JGenHtmlDaemon(stateFile, 2);
+		serving = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					daemon.serve();
+				}
+				catch(IOException ex)
+				{
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+		serving.start();
+		for(int i = 0; i < 100 && !stateFile.exists(); i++)
+		{
+			Thread.sleep(100);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		daemon.stop();
+		serving.join(10000);
+		super.tearDown();
+	}
+
+	/**
+	 * Test of forward method, of class JGenHtmlDaemon.
+	 * Relative paths are resolved against the client's directory and the output and status go back to the client.
+	 */
+	public void testForward() throws IOException, InterruptedException
+	{
+		System.out.println("forward");
+		if(!System.getProperty("os.name").startsWith("Windows"))
+		{
+			assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(stateFile.toPath())));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		String[] argv = new String[]{"--threads", "2", "--summary-json", "-o", "out", "test.info"};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtmlDaemon.forward(stateFile, testDir, argv, out, err));
+		assertTrue(new File(testDir, "out/index.html").exists());
+		assertTrue(new File(testDir, "out/html/bad/y.c.gcov.html").exists());
+		assertTrue(out.toString("UTF-8"), out.toString("UTF-8").startsWith("{\"lines\":{\"hit\":4,\"found\":6,"));
+		assertTrue(err.toString("UTF-8"), err.toString("UTF-8").contains("Found 2 entries."));
+		out.reset();
+		err.reset();
+		argv = new String[]{"--fail-under", "line=99", "--fail-fast", "-o", "out2", "test.info"};
+		assertEquals(JGenHtml.STATUS_BELOW_THRESHOLD, JGenHtmlDaemon.forward(stateFile, testDir, argv, out, err));
+		assertTrue(err.toString("UTF-8"), err.toString("UTF-8").contains("is below the minimum of 99.0%"));
+		assertFalse(new File(testDir, "out2/index.html").exists());
+		assertEquals(JGenHtml.STATUS_OK, JGenHtmlDaemon.forward(stateFile, testDir, new String[]{"--daemon-stop"}, out, err));
+		serving.join(10000);
+		assertFalse(serving.isAlive());
+		assertFalse(stateFile.exists());
+		assertEquals(JGenHtmlDaemon.NOT_RUNNING, JGenHtmlDaemon.forward(stateFile, testDir, argv, out, err));
+	}
+
+	/**
+	 * Test of forward method, of class JGenHtmlDaemon.
+	 * Requests served at the same time must each log at their own level, --quiet only quietens its own client.
+	 */
+	public void testForwardQuiet() throws Exception
+	{
+		System.out.println("testForwardQuiet");
+		final String[][] argvs = new String[][]{{"--quiet", "--threads", "2", "-o", "quiet", "test.info"}, {"--threads", "2", "-o", "loud", "test.info"}};
+		final ByteArrayOutputStream[] errs = new ByteArrayOutputStream[argvs.length];
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(argvs.length);
+		try
+		{
+			List<Future<Integer>> results = new ArrayList<>();
+			for(int i = 0; i < argvs.length; i++)
+			{
+				final String[] argv = argvs[i];
+				final ByteArrayOutputStream err = errs[i] = new ByteArrayOutputStream();
+				results.add(pool.submit(new Callable<Integer>()
+				{
+					@Override
+					public Integer call() throws Exception
+					{
+						start.await();
+						return JGenHtmlDaemon.forward(stateFile, testDir, argv, new ByteArrayOutputStream(), err);
+					}
+				}));
+			}
+			start.countDown();
+			for(Future<Integer> result : results)
+			{
+				assertEquals(Integer.valueOf(JGenHtml.STATUS_OK), result.get());
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		String quiet = errs[0].toString("UTF-8");
+		String loud = errs[1].toString("UTF-8");
+		assertFalse(quiet, quiet.contains("Found 2 entries."));
+		assertFalse(quiet, quiet.contains("Writing report for"));
+		assertTrue(loud, loud.contains("Found 2 entries."));
+		assertTrue(loud, loud.contains("Writing report for"));
+		assertTrue(new File(testDir, "quiet/index.html").exists());
+		assertTrue(new File(testDir, "loud/index.html").exists());
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		String[] argv = new String[]{"-o", "after", "test.info"};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtmlDaemon.forward(stateFile, testDir, argv, new ByteArrayOutputStream(), err));
+		assertTrue(err.toString("UTF-8"), err.toString("UTF-8").contains("Found 2 entries."));
+	}
+
+	/**
+	 * Test of forward method, of class JGenHtmlDaemon.
+	 * Relative source files in the tracefile are read from the client's directory, as they would be without the daemon.
+	 */
+	public void testForwardRelativeSource() throws IOException
+	{
+		System.out.println("testForwardRelativeSource");
+		FileUtils.writeStringToFile(new File(testDir, "rel/z.c"), "int relativeSource()\n{\n\treturn 0;\n}\n", "UTF-8");
+		FileUtils.writeStringToFile(new File(testDir, "relative.info"), "TN:t1\nSF:rel/z.c\nDA:1,1\nDA:3,0\nend_of_record\n", "UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		String[] argv = new String[]{"-o", "daemon", "relative.info"};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtmlDaemon.forward(stateFile, testDir, argv, out, out));
+		argv = new String[]{"-o", new File(testDir, "direct").getAbsolutePath(), "relative.info"};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(argv, testDir, null));
+		File daemonPage = new File(testDir, "daemon/html/rel/z.c.gcov.html");
+		String page = FileUtils.readFileToString(daemonPage, "UTF-8");
+		assertTrue(page, page.contains("int relativeSource()"));
+		assertEquals(page, FileUtils.readFileToString(new File(testDir, "direct/html/rel/z.c.gcov.html"), "UTF-8"));
+	}
+
+	/**
+	 * A request without the token from the state file must be refused.
+	 */
+	public void testWrongToken() throws IOException
+	{
+		System.out.println("testWrongToken");
+		File forged = new File(testDir, "forged");
+		FileUtils.writeStringToFile(forged, daemon.getPort() + "\nnot-the-token\n", "UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		String[] argv = new String[]{"-o", "out", "test.info"};
+		assertEquals(JGenHtml.STATUS_ERROR, JGenHtmlDaemon.forward(forged, testDir, argv, out, out));
+		assertFalse(new File(testDir, "out").exists());
+	}
+}
@@ -0,0 +1,260 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class JGenHtmlUtilsTest extends TestCase
+{
+	public JGenHtmlUtilsTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of openTraceFile method, of class JGenHtmlUtils.
+	 */
+	public void testOpenTraceFile() throws IOException
+	{
+		System.out.println("openTraceFile");
+		File traceFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(false, false)[0]);
+		byte[] expected = FileUtils.readFileToByteArray(traceFile);
+		assertTrue(Arrays.equals(expected, readTraceFile(traceFile, false)));
+	}
+
+	/**
+	 * Test of openTraceFile method, of class JGenHtmlUtils.
+	 */
+	public void testOpenTraceFileGzipped() throws IOException
+	{
+		System.out.println("testOpenTraceFileGzipped");
+		File traceFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(false, false)[0]);
+		File gzippedFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(true, false)[0]);
+		byte[] expected = FileUtils.readFileToByteArray(traceFile);
+		assertTrue(Arrays.equals(expected, readTraceFile(gzippedFile, false)));
+	}
+
+	/**
+	 * Test of openTraceFile method, of class JGenHtmlUtils.
+	 */
+	public void testOpenTraceFileGzippedReadAhead() throws IOException
+	{
+		System.out.println("testOpenTraceFileGzippedReadAhead");
+		File traceFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(false, false)[0]);
+		File gzippedFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(true, false)[0]);
+		byte[] expected = FileUtils.readFileToByteArray(traceFile);
+		assertTrue(Arrays.equals(expected, readTraceFile(gzippedFile, true)));
+	}
+
+	/**
+	 * Test of the deprecated gunzip method, of class JGenHtmlUtils.
+	 */
+	@SuppressWarnings("deprecation")
+	public void testGunzip() throws IOException
+	{
+		System.out.println("gunzip");
+		File traceFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(false, false)[0]);
+		File gzippedFile = new File(JGenHtmlTestUtils.getJstdTraceFiles(true, false)[0]);
+		File gunzippedFile = JGenHtmlUtils.gunzip(gzippedFile);
+		assertFalse(gunzippedFile.getName().endsWith(".gz"));
+		assertTrue(FileUtils.contentEquals(traceFile, gunzippedFile));
+	}
+
+	/**
+	 * Test of openTraceFile method, of class JGenHtmlUtils.
+	 * Uses a tracefile big enough to span several read ahead buffers.
+	 */
+	public void testOpenTraceFileGzippedReadAheadLarge() throws IOException
+	{
+		System.out.println("testOpenTraceFileGzippedReadAheadLarge");
+		StringBuilder sb = new StringBuilder("TN:large\nSF:/foo/bar.js\n");
+		for(int i = 1; i < 100000; i++)
+		{
+			sb.append("DA:").append(i).append(',').append(i % 7).append('\n');
+		}
+		sb.append("end_of_record\n");
+		byte[] expected = sb.toString().getBytes("UTF-8");
+		File gzippedFile = new File(JGenHtmlTestUtils.getTestDir(), "large.dat.gz");
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzippedFile)))
+		{
+			out.write(expected);
+		}
+		assertTrue(Arrays.equals(expected, readTraceFile(gzippedFile, true)));
+	}
+
+	/**
+	 * Test of read method, of class ReadAheadInputStream.
+	 * A source which fails with a runtime exception must fail the read, not leave it waiting for data.
+	 */
+	public void testReadAheadRuntimeException() throws Exception
+	{
+		System.out.println("testReadAheadRuntimeException");
+		final InputStream source = new InputStream()
+		{
+			@Override
+			public int read()
+			{
+				throw new IllegalStateException("Inflater has been closed");
+			}
+		};
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try
+		{
+			Future<Throwable> result = pool.submit(new Callable<Throwable>()
+			{
+				@Override
+				public Throwable call() throws Exception
+				{
+					Throwable thrown = null;
+					try (InputStream in = new ReadAheadInputStream(source, 16))
+					{
+						in.read();
+					}
+					catch(IOException ex)
+					{
+						thrown = ex.getCause();
+					}
+					return thrown;
+				}
+			});
+			assertTrue(result.get(10, TimeUnit.SECONDS) instanceof IllegalStateException);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test of close method, of class ReadAheadInputStream.
+	 * The source must not be closed while the background thread is still reading it.
+	 */
+	public void testReadAheadClose() throws IOException
+	{
+		System.out.println("testReadAheadClose");
+		final AtomicBoolean reading = new AtomicBoolean();
+		final AtomicBoolean closedWhileReading = new AtomicBoolean();
+		InputStream source = new InputStream()
+		{
+			@Override
+			public int read()
+			{
+				reading.set(true);
+				long until = System.nanoTime() + 2000000L;
+				while(System.nanoTime() < until)
+				{
+					Thread.yield();  // like inflating, not interrupted
+				}
+				reading.set(false);
+				return 'x';
+			}
+
+			@Override
+			public void close()
+			{
+				closedWhileReading.compareAndSet(false, reading.get());
+			}
+		};
+		InputStream in = new ReadAheadInputStream(source, 16);
+		assertEquals('x', in.read());
+		in.close();
+		assertFalse(closedWhileReading.get());
+	}
+
+	/**
+	 * Test of openPageStream method, of class JGenHtmlUtils, with html-gzip.
+	 */
+	public void testOpenPageStreamGzip() throws IOException
+	{
+		System.out.println("testOpenPageStreamGzip");
+		Config config = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-gzip", "--html-gzip-level", "9"});
+		File page = new File(JGenHtmlTestUtils.getTestDir(), "gzipped.html");
+		byte[] expected = writePage(page, config);
+		try (InputStream in = new GZIPInputStream(new FileInputStream(page)))
+		{
+			assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+		}
+	}
+
+	/**
+	 * Test of openPageStream and writeGzipCopy methods, of class JGenHtmlUtils, with gzip_static copies.
+	 */
+	public void testOpenPageStreamGzipStatic() throws IOException
+	{
+		System.out.println("testOpenPageStreamGzipStatic");
+		Config config = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-gzip-static"});
+		File page = new File(JGenHtmlTestUtils.getTestDir(), "plain.html");
+		File copy = new File(page.getParentFile(), "plain.html.gz");
+		byte[] expected = writePage(page, config);
+		assertTrue(Arrays.equals(expected, FileUtils.readFileToByteArray(page)));
+		try (InputStream in = new GZIPInputStream(new FileInputStream(copy)))
+		{
+			assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+		}
+		copy.delete();
+		JGenHtmlUtils.writeGzipCopy(page, config, null);
+		try (InputStream in = new GZIPInputStream(new FileInputStream(copy)))
+		{
+			assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+		}
+		config = JGenHtmlTestUtils.getDummyConfig(new String[]{"--html-gzip-static", "--html-gzip"});
+		assertFalse("gzipped pages must not get a gzipped copy", config.isGzipStatic());
+	}
+
+	private static byte[] writePage(final File page, final Config config) throws IOException
+	{
+		StringBuilder content = new StringBuilder();
+		for(int i = 0; i < 10000; i++)
+		{
+			content.append("<tr><td>").append(i).append("</td></tr>\n");
+		}
+		byte[] result = content.toString().getBytes("UTF-8");
+		try (OutputStream out = JGenHtmlUtils.openPageStream(page, config, null))
+		{
+			out.write(result);
+		}
+		return result;
+	}
+
+	private static byte[] readTraceFile(final File traceFile, final boolean readAhead) throws IOException
+	{
+		try (InputStream in = JGenHtmlUtils.openTraceFile(traceFile, readAhead))
+		{
+			return IOUtils.toByteArray(in);
+		}
+	}
+}
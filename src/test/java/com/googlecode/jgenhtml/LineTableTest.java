@@ -0,0 +1,106 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class LineTableTest extends TestCase
+{
+	public LineTableTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of get and put methods, of class LineTable.
+	 */
+	public void testPutGet()
+	{
+		System.out.println("put");
+		LineTable table = new LineTable();
+		assertNull(table.get(1));
+		assertNull(table.get(0));
+		assertNull(table.get(-1));
+		Line line = new Line(1000);
+		table.put(1000, line);
+		assertSame(line, table.get(1000));
+		assertNull(table.get(999));
+		table.put(1000, new Line(1000));
+		assertNotSame(line, table.get(1000));
+		assertEquals(1, table.size());
+		Line huge = new Line(Integer.MAX_VALUE);
+		table.put(Integer.MAX_VALUE, huge);
+		assertSame(huge, table.get(Integer.MAX_VALUE));
+		assertEquals(2, table.size());
+	}
+
+	/**
+	 * Line numbers which are not greater than zero can only come from a broken tracefile and must be ignored.
+	 */
+	public void testPutNotPositive() throws Exception
+	{
+		System.out.println("putNotPositive");
+		LineTable table = new LineTable();
+		table.put(0, new Line(1));
+		table.put(-1, new Line(1));
+		assertNull(table.get(0));
+		assertNull(table.get(-1));
+		assertEquals(0, table.size());
+		assertFalse(table.iterator().hasNext());
+		TestCaseSourceFile sourceFile = new TestCaseSourceFile("test", "test.js");
+		sourceFile.processLine("t", "DA:0,1", false);
+		sourceFile.processLine("t", "DA:-3,1", false);
+		sourceFile.processLine("t", "BRDA:0,0,0,1", false);
+		sourceFile.processLine("t", "DA:2,1", false);
+		assertEquals(1, sourceFile.getPageLineCount());
+		assertEquals(1, sourceFile.getLineCount());
+		assertEquals(0, sourceFile.getBranchCount());
+	}
+
+	/**
+	 * Test of iterator method, of class LineTable.
+	 * Lines must come back in line number order no matter what order they were added in.
+	 */
+	public void testIterator()
+	{
+		System.out.println("iterator");
+		LineTable table = new LineTable();
+		assertFalse(table.iterator().hasNext());
+		int[] lineNumbers = new int[]{50000, 3, Integer.MAX_VALUE, 1, 70, 2};
+		for(int lineNo : lineNumbers)
+		{
+			table.put(lineNo, new Line(lineNo));
+		}
+		List<Integer> actual = new ArrayList<>();
+		for(Line line : table)
+		{
+			actual.add(line.getLineNumber());
+		}
+		assertEquals(6, actual.size());
+		assertEquals(Integer.valueOf(1), actual.get(0));
+		assertEquals(Integer.valueOf(2), actual.get(1));
+		assertEquals(Integer.valueOf(3), actual.get(2));
+		assertEquals(Integer.valueOf(70), actual.get(3));
+		assertEquals(Integer.valueOf(50000), actual.get(4));
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), actual.get(5));
+	}
+}
@@ -0,0 +1,97 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class LineTest extends TestCase
+{
+	public LineTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of getBranch method, of class Line, with few enough branches to be searched.
+	 */
+	public void testGetBranch()
+	{
+		System.out.println("getBranch");
+		Line line = new Line(1);
+		Branch branch = new Branch(0, 1);
+		line.addBranch(new Branch(0, 0));
+		line.addBranch(branch);
+		assertSame(branch, line.getBranch(0, 1));
+		assertSame(branch, line.getBranch("0", "1"));
+		assertNull(line.getBranch(1, 0));
+		assertNull(line.getBranch("0", "(0) true"));
+	}
+
+	/**
+	 * Test of getBranch method, of class Line, with enough branches to be indexed.
+	 * The branches must still come back in the order they were added.
+	 */
+	public void testGetBranchIndexed()
+	{
+		System.out.println("testGetBranchIndexed");
+		Line line = new Line(1);
+		for(int block = 0; block < 50; block++)
+		{
+			for(int number = 0; number < 20; number++)
+			{
+				line.addBranch(new Branch(block, number));
+			}
+		}
+		for(int block = 0; block < 50; block++)
+		{
+			for(int number = 0; number < 20; number++)
+			{
+				Branch branch = line.getBranch(block, number);
+				assertEquals(block, branch.getBlockNumber());
+				assertEquals(number, branch.getBranchNumber());
+			}
+		}
+		assertNull(line.getBranch(50, 0));
+		assertNull(line.getBranch(0, 20));
+		List<Branch> branches = line.getBranches();
+		assertEquals(1000, branches.size());
+		for(int i = 0; i < branches.size(); i++)
+		{
+			assertEquals(i / 20, branches.get(i).getBlockNumber());
+			assertEquals(i % 20, branches.get(i).getBranchNumber());
+		}
+	}
+
+	/**
+	 * Test of the deprecated setTabExpand method, of class Line.
+	 */
+	@SuppressWarnings("deprecation")
+	public void testSetTabExpand()
+	{
+		System.out.println("setTabExpand");
+		Line line = new Line(1);
+		Line.setTabExpand(2);
+		line.setCode("\tfoo();\t ");
+		assertEquals("  foo();", line.getCode());
+		line.setCode("\tfoo();", null);
+		assertEquals("\tfoo();", line.getCode());
+	}
+}
@@ -0,0 +1,217 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Data loaded from the parse cache must be exactly the same as data parsed from the tracefile.
+ * @author Rick Brown
+ */
+public class ParseCacheTest extends TestCase
+{
+	private static final String ENCODING = "UTF-8";
+	private static final long OLD = 1000000000000L;
+	private File testDir;
+	private File cacheDir;
+
+	public ParseCacheTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "parsecache");
+		if(testDir.exists())
+		{
+			FileUtils.cleanDirectory(testDir);
+		}
+		else
+		{
+			testDir.mkdirs();
+		}
+		cacheDir = new File(testDir, "cache");
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		super.tearDown();
+	}
+
+	/**
+	 * Test of load method, of class ParseCache.Entry.
+	 * Tracefiles are parsed and cached on the first run and loaded on the second, with and without threads.
+	 */
+	public void testLoad() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testLoad");
+		String[] split = JGenHtmlTestUtils.getJstdTraceFiles(false, true);
+		String[] traceFiles = new String[]{split[0], split[1], JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData()[0]};
+		String cache = cacheDir.getAbsolutePath();
+		Map<String, String> expected = getDigests(traceFiles, "-b", split[1]);
+		assertEquals("parsed and cached", expected, getDigests(traceFiles, "-b", split[1], "--parse-cache", cache));
+		assertEquals(traceFiles.length, getEntries().length);
+		assertEquals("loaded", expected, getDigests(traceFiles, "-b", split[1], "--parse-cache", cache));
+		assertEquals("loaded on threads", expected, getDigests(traceFiles, "-b", split[1], "--parse-cache", cache, "--threads", "4"));
+	}
+
+	/**
+	 * A tracefile which has changed must be parsed again, even if its size and last modified time are the same.
+	 */
+	public void testChangedTraceFile() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testChangedTraceFile");
+		File traceFile = new File(testDir, "changed.info");
+		String sourceFile = new File(testDir, "x.c").getAbsolutePath();
+		String cache = cacheDir.getAbsolutePath();
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + sourceFile + "\nDA:1,1\nDA:2,0\nend_of_record\n", ENCODING);
+		assertTrue(traceFile.setLastModified(OLD));
+		assertEquals(1, getLineHit(traceFile, "--parse-cache", cache));
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + sourceFile + "\nDA:1,1\nDA:2,5\nend_of_record\n", ENCODING);
+		assertTrue(traceFile.setLastModified(OLD));
+		assertEquals(2, getLineHit(traceFile, "--parse-cache", cache));
+		assertEquals(2, getLineHit(traceFile, "--parse-cache", cache));
+		assertEquals(1, getEntries().length);
+	}
+
+	/**
+	 * Test of load method, of class ParseCache.Entry.
+	 * The test ids in an entry must be mapped to the test names of the report loading it, whatever ids they had
+	 * when the entry was stored.
+	 */
+	public void testLoadTestNames() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testLoadTestNames");
+		File traceFile = new File(testDir, "names.info");
+		String sourceFile = new File(testDir, "x.c").getAbsolutePath();
+		FileUtils.writeStringToFile(traceFile, "TN:a\nSF:" + sourceFile + "\nDA:1,1\nDA:2,0\nend_of_record\nTN:b\nSF:" + sourceFile + "\nDA:2,3\nend_of_record\n", ENCODING);
+		ParseCache cache = new ParseCache(cacheDir, Long.MAX_VALUE);
+		store(cache, traceFile);
+		ParsedFiles report = new ParsedFiles(false);
+		report.getTestNames().getId("b");  // already has ids of its own
+		report.getTestNames().getId("other");
+		ParsedFiles into = report.createPartial();
+		assertTrue(cache.getEntry(traceFile).load(into, "t"));
+		TestCaseSourceFile parsed = into.get(new File(sourceFile), "t", false);
+		assertEquals(1, parsed.getLineHit("a"));
+		assertEquals(1, parsed.getLineHit("b"));
+		assertEquals(0, parsed.getLineHit("other"));
+		assertEquals(0, report.getTestNames().find("b"));
+		assertTrue(report.getTestNames().find("a") > 1);
+		assertSame(report.getTestNames(), parsed.getTestNames());
+	}
+
+	/**
+	 * Test of store method, of class ParseCache.Entry.
+	 * The least recently used entries are deleted to keep the cache under its size limit.
+	 */
+	public void testEviction() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testEviction");
+		String[] names = new String[]{"a", "b", "c", "d"};
+		File[] traceFiles = new File[names.length];
+		for(int i = 0; i < names.length; i++)
+		{
+			traceFiles[i] = new File(testDir, names[i] + ".info");
+			FileUtils.writeStringToFile(traceFiles[i], "TN:t1\nSF:/src/x.c\nDA:1,1\nend_of_record\n", ENCODING);
+		}
+		ParseCache unbounded = new ParseCache(cacheDir, Long.MAX_VALUE);
+		for(int i = 0; i < 3; i++)
+		{
+			store(unbounded, traceFiles[i]);
+		}
+		File[] entries = getEntries();
+		assertEquals(3, entries.length);
+		long entrySize = entries[0].length();
+		File a = findEntry(traceFiles[0]);
+		File b = findEntry(traceFiles[1]);
+		File c = findEntry(traceFiles[2]);
+		assertTrue(a.setLastModified(OLD));
+		assertTrue(b.setLastModified(OLD + 2000));
+		assertTrue(c.setLastModified(OLD + 1000));
+		store(new ParseCache(cacheDir, entrySize * 3), traceFiles[3]);
+		assertFalse("least recently used", a.exists());
+		assertTrue(b.exists());
+		assertTrue(c.exists());
+		assertTrue(findEntry(traceFiles[3]).exists());
+		store(new ParseCache(cacheDir, 0), traceFiles[0]);
+		assertEquals(0, getEntries().length);
+	}
+
+	/**
+	 * Finds the entry file of a tracefile, by storing it in a cache on its own and comparing file names.
+	 */
+	private File findEntry(final File traceFile) throws IOException, ParserConfigurationException
+	{
+		File otherDir = new File(testDir, "other");
+		FileUtils.deleteDirectory(otherDir);
+		store(new ParseCache(otherDir, Long.MAX_VALUE), traceFile);
+		return new File(cacheDir, otherDir.listFiles()[0].getName());
+	}
+
+	private static void store(final ParseCache cache, final File traceFile) throws IOException, ParserConfigurationException
+	{
+		ParsedFiles partial = new ParsedFiles(false);
+		TraceFileParser parser = new TraceFileParser(partial, "t", false);
+		try (InputStream in = new FileInputStream(traceFile))
+		{
+			parser.parse(in);
+		}
+		cache.getEntry(traceFile).store(partial, parser.getTestNames());
+	}
+
+	private File[] getEntries()
+	{
+		File[] result = cacheDir.listFiles();
+		return (result == null)? new File[0] : result;
+	}
+
+	private static int getLineHit(final File traceFile, final String... argv) throws IOException, ParserConfigurationException
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(argv));
+		CoverageReport report = new CoverageReport(new String[]{traceFile.getAbsolutePath()});
+		return report.getParsedFiles().iterator().next().getLineHit();
+	}
+
+	/**
+	 * Parses tracefiles and hashes everything about each source file which shows up in the report.
+	 */
+	private static Map<String, String> getDigests(final String[] traceFiles, final String... argv) throws IOException, ParserConfigurationException
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(argv));
+		Map<String, String> result = new HashMap<>();
+		for(TestCaseSourceFile sourceFile : new CoverageReport(traceFiles).getParsedFiles())
+		{
+			PageDigest digest = new PageDigest();
+			sourceFile.digest(digest);
+			result.put(sourceFile.getPath() + File.separatorChar + sourceFile.getPageName(), digest.toHex());
+		}
+		return result;
+	}
+}
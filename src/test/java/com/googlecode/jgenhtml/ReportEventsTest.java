@@ -0,0 +1,126 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class ReportEventsTest extends TestCase
+{
+	private File testDir;
+	private File traceFile;
+
+	public ReportEventsTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "events");
+		FileUtils.deleteDirectory(testDir);
+		traceFile = new File(testDir, "test.info");
+		String good = new File(testDir, "good/x.c").getAbsolutePath();
+		String bad = new File(testDir, "bad/y.c").getAbsolutePath();
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + good + "\nDA:1,1\nDA:2,1\nDA:3,1\nend_of_record\n"
+				+ "SF:" + bad + "\nDA:1,1\nDA:2,0\nDA:3,0\nend_of_record\n", "UTF-8");
+	}
+
+	/**
+	 * Events must not be created when no recording is running.
+	 */
+	public void testNotRecording()
+	{
+		System.out.println("testNotRecording");
+		ReportEvents instance = ReportEvents.getInstance();
+		assertNull(instance.beginTraceFile());
+		assertNull(instance.beginPage());
+		assertNull(instance.beginTransform());
+		instance.endPage(null, null, null);  // does nothing
+	}
+
+	/**
+	 * A recording must get an event for the tracefile, each page and each transform.
+	 */
+	public void testRecording() throws IOException
+	{
+		System.out.println("testRecording");
+		assertTrue(ReportEvents.getInstance() instanceof JfrReportEvents);
+		File outDir = new File(testDir, "out");
+		File dump = new File(testDir, "report.jfr");
+		List<RecordedEvent> events;
+		try(Recording recording = new Recording())
+		{
+			recording.enable("com.googlecode.jgenhtml.TraceFile");
+			recording.enable("com.googlecode.jgenhtml.Page");
+			recording.enable("com.googlecode.jgenhtml.Transform");
+			recording.start();
+			assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(new String[]{"-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()}));
+			recording.stop();
+			recording.dump(dump.toPath());
+			events = RecordingFile.readAllEvents(dump.toPath());
+		}
+		List<RecordedEvent> traceFiles = getEvents(events, "com.googlecode.jgenhtml.TraceFile");
+		assertEquals(1, traceFiles.size());
+		assertEquals(traceFile.getAbsolutePath(), traceFiles.get(0).getString("path"));
+		assertEquals(6, traceFiles.get(0).getLong("records"));
+		assertEquals(traceFile.length(), traceFiles.get(0).getLong("size"));
+		assertFalse(traceFiles.get(0).getBoolean("cached"));
+		RecordedEvent page = null;
+		for(RecordedEvent event : getEvents(events, "com.googlecode.jgenhtml.Page"))
+		{
+			if(event.getString("path").endsWith("y.c.gcov.html"))
+			{
+				page = event;
+			}
+		}
+		assertNotNull(page);
+		assertEquals(3, page.getInt("lines"));
+		assertEquals(new File(outDir, "html/bad/y.c.gcov.html").length() + new File(outDir, "xml/bad/y.c.gcov.xml").length(), page.getLong("bytes"));
+		List<RecordedEvent> transforms = getEvents(events, "com.googlecode.jgenhtml.Transform");
+		assertTrue(transforms.size() >= 4);  // each source page as HTML and XML
+		for(RecordedEvent transform : transforms)
+		{
+			assertEquals(new File(transform.getString("path")).length(), transform.getLong("bytes"));
+		}
+	}
+
+	private static List<RecordedEvent> getEvents(final List<RecordedEvent> events, final String name)
+	{
+		List<RecordedEvent> result = new ArrayList<>();
+		for(RecordedEvent event : events)
+		{
+			if(name.equals(event.getEventType().getName()))
+			{
+				result.add(event);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Incremental runs must only rewrite the pages which have changed.
+ * @author Rick Brown
+ */
+public class ReportManifestTest extends TestCase
+{
+	private static final String ENCODING = "UTF-8";
+	private static final long OLD = 1000000000000L;
+	private File testDir;
+	private File outDir;
+	private File traceFile;
+
+	public ReportManifestTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "incremental");
+		if(testDir.exists())
+		{
+			FileUtils.cleanDirectory(testDir);
+		}
+		else
+		{
+			testDir.mkdirs();
+		}
+		outDir = new File(testDir, "out");
+		traceFile = new File(testDir, "incremental.info");
+	}
+
+	/**
+	 * Only the changed source page and the index pages above it should be written on the second run.
+	 */
+	public void testChangedPagesOnly() throws IOException
+	{
+		System.out.println("testChangedPagesOnly");
+		writeTraceFile(0);
+		generate("--incremental");
+		File manifest = new File(outDir, ReportManifest.FILE_NAME);
+		assertTrue(manifest.exists());
+		File[] pages = getPages();
+		for(File page : pages)
+		{
+			assertTrue(page.getPath(), page.exists());
+			assertTrue(page.setLastModified(OLD));
+		}
+		writeTraceFile(1);
+		generate("--incremental");
+		assertTrue(manifest.exists());
+		assertFalse("changed source page", pages[0].lastModified() == OLD);
+		assertFalse("changed directory", pages[1].lastModified() == OLD);
+		assertEquals("unchanged source page", OLD, pages[2].lastModified());
+		assertEquals("unchanged directory", OLD, pages[3].lastModified());
+		assertFalse("top level index", pages[4].lastModified() == OLD);
+	}
+
+	/**
+	 * Nothing should be skipped if a page has been deleted, the preferences have changed or incremental is off.
+	 */
+	public void testRewrite() throws IOException
+	{
+		System.out.println("testRewrite");
+		writeTraceFile(1);
+		generate("--incremental");
+		File[] pages = getPages();
+		for(File page : pages)
+		{
+			assertTrue(page.setLastModified(OLD));
+		}
+		assertTrue(pages[2].delete());
+		generate("--incremental");
+		assertTrue("deleted page", pages[2].exists());
+		assertEquals(OLD, pages[0].lastModified());
+		generate("--incremental", "--title", "changed");
+		assertFalse("changed preferences", pages[0].lastModified() == OLD);
+		assertTrue(pages[0].setLastModified(OLD));
+		generate();
+		assertFalse("not incremental", pages[0].lastModified() == OLD);
+	}
+
+	/**
+	 * A run which is not incremental must not leave the manifest of an earlier run for a later incremental run.
+	 */
+	public void testFullRunBetween() throws IOException
+	{
+		System.out.println("testFullRunBetween");
+		File manifest = new File(outDir, ReportManifest.FILE_NAME);
+		File[] pages = getPages();
+		writeTraceFile(1);
+		generate("--incremental");
+		assertTrue(manifest.exists());
+		String covered = FileUtils.readFileToString(pages[0], ENCODING);
+		writeTraceFile(0);
+		generate();
+		assertFalse(manifest.exists());
+		assertFalse(covered.equals(FileUtils.readFileToString(pages[0], ENCODING)));
+		writeTraceFile(1);
+		generate("--incremental");
+		assertTrue(manifest.exists());
+		assertEquals(covered, FileUtils.readFileToString(pages[0], ENCODING));
+	}
+
+	/**
+	 * --quiet must quieten the manifest and the parse cache too, which are logged through the package logger.
+	 */
+	public void testQuiet() throws IOException
+	{
+		System.out.println("testQuiet");
+		final List<LogRecord> rootRecords = new ArrayList<>();
+		Handler rootHandler = new Handler()
+		{
+			@Override
+			public void publish(final LogRecord record)
+			{
+				if(record.getLoggerName() != null && record.getLoggerName().startsWith("com.googlecode.jgenhtml"))
+				{
+					synchronized(rootRecords)
+					{
+						rootRecords.add(record);
+					}
+				}
+			}
+
+			@Override
+			public void flush()
+			{
+			}
+
+			@Override
+			public void close()
+			{
+			}
+		};
+		String cacheDir = new File(testDir, "cache").getAbsolutePath();
+		writeTraceFile(1);
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		PrintStream err = System.err;
+		Logger.getLogger("").addHandler(rootHandler);
+		System.setErr(new PrintStream(log, true, ENCODING));
+		try
+		{
+			generate("--quiet", "--incremental", "--parse-cache", cacheDir);
+			generate("--quiet", "--incremental", "--parse-cache", cacheDir);
+			assertEquals("", log.toString(ENCODING));
+			generate("--incremental", "--parse-cache", cacheDir);
+		}
+		finally
+		{
+			System.setErr(err);
+			Logger.getLogger("").removeHandler(rootHandler);
+		}
+		assertTrue(rootRecords.toString(), rootRecords.isEmpty());
+		String logged = log.toString(ENCODING);
+		assertTrue(logged, logged.contains("from the parse cache"));
+		assertTrue(logged, logged.contains("unchanged pages."));
+	}
+
+	/**
+	 * @return The source page and index in the first directory, the same in the second directory, and the top level index.
+	 */
+	private File[] getPages()
+	{
+		File htmlDir = new File(outDir, "html");
+		File dirA = new File(htmlDir, "a");
+		File dirB = new File(htmlDir, "b");
+		return new File[]{new File(dirA, "x.c.gcov.html"), new File(dirA, "index.html"),
+			new File(dirB, "y.c.gcov.html"), new File(dirB, "index.html"), new File(htmlDir, "index.html")};
+	}
+
+	private void writeTraceFile(final int hits) throws IOException
+	{
+		String trace = "TN:\nSF:" + new File(testDir, "src/a/x.c").getAbsolutePath() + "\nDA:1,1\nDA:2," + hits + "\nend_of_record\n"
+				+ "TN:\nSF:" + new File(testDir, "src/b/y.c").getAbsolutePath() + "\nDA:1,1\nDA:2,0\nend_of_record\n";
+		FileUtils.writeStringToFile(traceFile, trace, ENCODING);
+	}
+
+	private void generate(final String... options)
+	{
+		String[] argv = new String[options.length + 3];
+		System.arraycopy(options, 0, argv, 0, options.length);
+		argv[options.length] = "-o";
+		argv[options.length + 1] = outDir.getAbsolutePath();
+		argv[options.length + 2] = traceFile.getAbsolutePath();
+		JGenHtml.main(argv);
+	}
+}
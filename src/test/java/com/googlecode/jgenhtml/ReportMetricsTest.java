@@ -0,0 +1,140 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class ReportMetricsTest extends TestCase
+{
+	private static final String[] PHASES = new String[]{"processTraceFiles", "processBaseline", "generateDescriptions", "removePrefix",
+		"generateCoverageReports", "generateIndexFiles", "generateResources", "generateDescriptionPage", "generateTopLevelIndex"};
+	private File testDir;
+	private File traceFile;
+
+	public ReportMetricsTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "metrics");
+		FileUtils.deleteDirectory(testDir);
+		traceFile = new File(testDir, "test.info");
+		String good = new File(testDir, "good/x.c").getAbsolutePath();
+		String bad = new File(testDir, "bad/y.c").getAbsolutePath();
+		FileUtils.writeStringToFile(traceFile, "TN:t1\nSF:" + good + "\nFN:1,main\nFNDA:1,main\nDA:1,1\nDA:2,1\nDA:3,1\nLF:3\nLH:3\nend_of_record\n"
+				+ "SF:" + bad + "\nBRDA:2,0,0,1\nBRDA:2,0,1,-\nDA:1,1\nDA:2,0\nDA:3,0\nend_of_record\n", "UTF-8");
+	}
+
+	/**
+	 * Test of toJson method, of class ReportMetrics.
+	 */
+	public void testToJson()
+	{
+		System.out.println("toJson");
+		ReportMetrics instance = new ReportMetrics();
+		instance.start("first");
+		instance.addRecords(10);
+		instance.start("second");
+		instance.addPage();
+		instance.addBytes(100);
+		instance.end();
+		instance.addRecords(1);  // between phases, only in the totals
+		String json = instance.toJson();
+		assertTrue(json, json.startsWith("{\"version\":\"" + JGenHtml.VERSION + "\",\"started\":\""));
+		assertTrue(json, json.contains("\"totals\":{\"wallMillis\":"));
+		assertTrue(json, json.contains(",\"records\":11,\"pages\":1,\"bytes\":100,\"peakHeapBytes\":"));
+		assertTrue(json, json.contains("{\"name\":\"first\",\"wallMillis\":"));
+		assertTrue(json, json.contains(",\"records\":10,\"pages\":0,\"bytes\":0,"));
+		assertTrue(json, json.contains("{\"name\":\"second\",\"wallMillis\":"));
+		assertTrue(json, json.contains(",\"records\":0,\"pages\":1,\"bytes\":100,"));
+		assertTrue(json, json.endsWith("}]}"));
+	}
+
+	/**
+	 * The metrics file must only be written when asked for, with every phase of the report.
+	 */
+	public void testReport() throws IOException
+	{
+		System.out.println("testReport");
+		File outDir = new File(testDir, "out");
+		File metricsFile = new File(outDir, ReportMetrics.FILE_NAME);
+		String[] argv = new String[]{"-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(argv));
+		assertFalse(metricsFile.exists());
+		argv = new String[]{"--metrics", "--threads", "2", "--html-gzip-static", "-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(argv));
+		String json = FileUtils.readFileToString(metricsFile, "UTF-8");
+		int from = 0;
+		for(String phase : PHASES)
+		{
+			int index = json.indexOf("{\"name\":\"" + phase + "\",", from);
+			assertTrue(phase + " in " + json, index > from);
+			from = index;
+		}
+		assertEquals(10, getMetric(json, "processTraceFiles", "records"));
+		assertEquals(0, getMetric(json, "processTraceFiles", "pages"));
+		assertTrue(json, getMetric(json, "generateCoverageReports", "pages") >= 4);  // the source pages as HTML and XML
+		assertTrue(json, getMetric(json, "generateCoverageReports", "bytes") > 0);
+		assertTrue(json, getMetric(json, "generateIndexFiles", "pages") >= 2);
+		assertTrue(json, getMetric(json, "generateResources", "bytes") > 0);
+		assertEquals(0, getMetric(json, "generateResources", "pages"));
+		assertTrue(json, getMetric(json, "processTraceFiles", "peakHeapBytes") > 0);
+	}
+
+	/**
+	 * Test of start method, of class ReportMetrics.
+	 * A phase starting in another report must not lose the peak heap of a phase which is running.
+	 */
+	public void testPeakHeapConcurrent() throws InterruptedException
+	{
+		System.out.println("testPeakHeapConcurrent");
+		final int size = 32 << 20;
+		ReportMetrics first = new ReportMetrics();
+		first.start("allocate");
+		byte[] held = new byte[size];
+		held[size - 1] = 1;
+		Thread.sleep(100);  // several samples
+		assertEquals(1, held[size - 1]);
+		held = null;
+		System.gc();
+		ReportMetrics second = new ReportMetrics();
+		second.start("other");
+		second.end();
+		first.end();
+		assertTrue(getMetric(first.toJson(), "allocate", "peakHeapBytes") >= size);
+		assertTrue(getMetric(second.toJson(), "other", "peakHeapBytes") > 0);
+	}
+
+	private static long getMetric(final String json, final String phase, final String name)
+	{
+		Matcher matcher = Pattern.compile("\\{\"name\":\"" + phase + "\",[^}]*\"" + name + "\":(\\d+)").matcher(json);
+		assertTrue(phase + '.' + name + " in " + json, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates a full report from a large synthetic tracefile. Too slow for every build, so surefire leaves it out
+ * unless asked for: mvn test -Dtest=ScaleTest -Djgenhtml.scale.files=50000
+ * The sizes are the system properties jgenhtml.scale.files, .lines, .tests and .filesPerTest.
+ * @author Rick Brown
+ */
+public class ScaleTest extends TestCase
+{
+	private File testDir;
+
+	public ScaleTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "scale");
+		FileUtils.deleteDirectory(testDir);
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		FileUtils.deleteDirectory(testDir);
+		super.tearDown();
+	}
+
+	/**
+	 * Every source file must get a page and the report must finish without running out of memory.
+	 */
+	public void testLargeReport() throws IOException
+	{
+		System.out.println("testLargeReport");
+		int files = Integer.getInteger("jgenhtml.scale.files", 20000);
+		int lines = Integer.getInteger("jgenhtml.scale.lines", 200);
+		int tests = Integer.getInteger("jgenhtml.scale.tests", 20);
+		int filesPerTest = Integer.getInteger("jgenhtml.scale.filesPerTest", files / 10);
+		File traceFile = new File(testDir, "scale.info.gz");
+		File outDir = new File(testDir, "out");
+		long start = System.nanoTime();
+		TraceFileGenerator generator = new TraceFileGenerator(1).setMix(TraceFileGenerator.Mix.BRANCHES)
+				.setSourceFiles(files).setLinesPerFile(lines).setTestNames(tests).setFilesPerTest(filesPerTest)
+				.setSourceDir(new File(testDir, "src"));
+		generator.write(traceFile);
+		System.out.println("Generated " + generator.getRecords() + " records in " + ((System.nanoTime() - start) / 1000000) + "ms");
+		start = System.nanoTime();
+		String[] argv = new String[]{"--quiet", "--threads", "0", "-o", outDir.getAbsolutePath(), traceFile.getAbsolutePath()};
+		assertEquals(JGenHtml.STATUS_OK, JGenHtml.run(argv));
+		Runtime runtime = Runtime.getRuntime();
+		System.out.println("Reported in " + ((System.nanoTime() - start) / 1000000) + "ms, heap in use "
+				+ ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + "MB");
+		int covered = Math.min(files, tests * Math.max(filesPerTest, 1));
+		assertTrue(new File(outDir, "index.html").exists());
+		assertTrue(new File(outDir, "html/dir0/file0.c.gcov.html").exists());
+		assertTrue(new File(outDir, "html/dir" + ((covered - 1) / 50) + "/file" + (covered - 1) + ".c.gcov.html").exists());
+	}
+}
@@ -0,0 +1,136 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.Collection;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class SourceCodeTest extends TestCase
+{
+	public SourceCodeTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of getHits and setHits methods, of class SourceCode, with a single test case.
+	 */
+	public void testSetHitsSingle()
+	{
+		System.out.println("setHits");
+		Line line = new Line(1);
+		assertEquals(SourceCode.NON_EXECUTABLE, line.getHits("single"));
+		assertEquals(SourceCode.NON_EXECUTABLE, line.getTotalHits());
+		line.setHits("single", 3);
+		assertTrue(line.isExecutable());
+		assertEquals(3, line.getHits("single"));
+		assertEquals(0, line.getHits("neverRegistered" + System.nanoTime()));
+		line.setHits("single", -5);
+		assertEquals(0, line.getHits("single"));
+		assertEquals(0, line.getTotalHits());
+		assertEquals(1, line.getTestCaseNames(false).size());
+		assertTrue(line.getTestCaseNames(true).isEmpty());
+	}
+
+	/**
+	 * Test of getHits, setHits and getTotalHits, of class SourceCode, as storage grows from single to sparse to dense.
+	 */
+	public void testSetHitsMany()
+	{
+		System.out.println("testSetHitsMany");
+		Branch branch = new Branch();
+		int expectedTotal = 0;
+		for(int i = 40; i >= 0; i--)  // descending so the sparse storage has to insert in the middle
+		{
+			branch.setHits("many" + i, i);
+			expectedTotal += i;
+			assertEquals(expectedTotal, branch.getTotalHits());
+		}
+		for(int i = 0; i <= 40; i++)
+		{
+			assertEquals(i, branch.getHits("many" + i));
+		}
+		branch.setHits("many7", 0);
+		assertEquals(expectedTotal - 7, branch.getTotalHits());
+		Collection<String> names = branch.getTestCaseNames(false);
+		assertEquals(41, names.size());
+		Collection<String> hit = branch.getTestCaseNames(true);
+		assertEquals(39, hit.size());
+		assertFalse(hit.contains("many0"));
+		assertFalse(hit.contains("many7"));
+		assertTrue(hit.contains("many40"));
+	}
+
+	/**
+	 * Test of addHits method, of class SourceCode.
+	 */
+	public void testAddHits()
+	{
+		System.out.println("addHits");
+		Function function = new Function("foo");
+		int id = function.getTestNames().getId("addHits");
+		function.addHits(id, 5);
+		function.addHits(id, 2);
+		assertEquals(7, function.getHits("addHits"));
+		assertEquals(7, function.getTotalHits());
+		function.addHits(id, -10);
+		assertEquals(0, function.getHits("addHits"));
+		assertEquals(0, function.getTotalHits());
+	}
+
+	/**
+	 * Test of merge method, of class SourceCode.
+	 */
+	public void testMerge()
+	{
+		System.out.println("merge");
+		Line line = new Line(1);
+		Line other = new Line(1);
+		line.setHits("mergeA", 1);
+		other.setHits("mergeB", 0);  // the lines have their own test names so the ids of mergeA differ
+		other.setHits("mergeA", 2);
+		line.merge(other);
+		assertEquals(3, line.getHits("mergeA"));
+		assertEquals(0, line.getHits("mergeB"));
+		assertEquals(2, line.getTestCaseNames(false).size());
+		Line notExecutable = new Line(1);
+		notExecutable.merge(new Line(1));
+		assertFalse(notExecutable.isExecutable());
+	}
+
+	/**
+	 * Test of getId method, of class TestNames.
+	 * Each report has its own test names, so names registered for one are not found in another.
+	 */
+	public void testTestNames()
+	{
+		System.out.println("testTestNames");
+		TestNames testNames = new TestNames();
+		int id = testNames.getId("testNames");
+		assertEquals(id, testNames.getId("testNames"));
+		assertEquals(id, testNames.find("testNames"));
+		assertEquals("testNames", testNames.getName(id));
+		assertEquals(TestNames.NOT_FOUND, testNames.find("notRegistered"));
+		assertEquals(1, testNames.getNames().length);
+		TestNames other = new TestNames();
+		assertEquals(TestNames.NOT_FOUND, other.find("testNames"));
+		assertEquals(0, other.getNames().length);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The stream engine must write exactly the same source pages as the XSLT engine.
+ * Each test generates the same report with both engines and compares every file in the output.
+ * @author Rick Brown
+ */
+public class SourcePageRendererTest extends TestCase
+{
+	private static final String ENCODING = "UTF-8";
+	private File testDir;
+
+	public SourcePageRendererTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "engines");
+		if(testDir.exists())
+		{
+			FileUtils.cleanDirectory(testDir);
+		}
+		else
+		{
+			testDir.mkdirs();
+		}
+	}
+
+	/**
+	 * Lines only, as produced by JSTD.
+	 */
+	public void testLineCoverage() throws IOException
+	{
+		System.out.println("testLineCoverage");
+		assertSameOutput(new String[0], JGenHtmlTestUtils.getJstdTraceFiles(false, false)[0]);
+	}
+
+	/**
+	 * Functions and branches, with source files which do not exist.
+	 */
+	public void testMissingSource() throws IOException
+	{
+		System.out.println("testMissingSource");
+		assertSameOutput(new String[0], JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData()[0]);
+	}
+
+	/**
+	 * A baseline, descriptions, legend and gzip.
+	 */
+	public void testOptions() throws IOException
+	{
+		System.out.println("testOptions");
+		JGenHtmlUtils.writeResource("cov.gcda.desc", testDir);
+		String[] options = new String[]{"-b", JGenHtmlTestUtils.getBaselineFile(), "-d", new File(testDir, "cov.gcda.desc").getAbsolutePath(),
+			"--legend", "--html-gzip", "--html-extension", "htm"};
+		assertSameOutput(options, JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData()[0]);
+	}
+
+	/**
+	 * Source code and names full of characters which need escaping, with branch and function coverage turned off.
+	 */
+	public void testEscaping() throws IOException
+	{
+		System.out.println("testEscaping");
+		File sourceDir = new File(testDir, "a b&c");
+		File source = new File(sourceDir, "x&y'#%.c");
+		String code = "int a = b < c && d > e; // \"quoted\" 'single'\n"
+				+ "caf\u00e9 \u00a0nbsp \u20ac euro \ud83d\ude00 emoji \u0152 \u03b1\n"
+				+ "ctrl\u0001x \u000bvt \u0085nel \u2028ls \u007fdel \u009f\n"
+				+ "&amp; &lt; ]]> <![CDATA[ x ]]> <!-- c --> <script>\n"
+				+ "\tindented\t\n";
+		FileUtils.writeStringToFile(source, code, ENCODING);
+		File traceFile = new File(testDir, "escaping.info");
+		String trace = "TN:t1\nSF:" + source.getAbsolutePath() + "\nFN:1,main\nFNDA:1,main\n"
+				+ "DA:1,1\nDA:2,0\nBRDA:1,0,0,1\nBRDA:1,0,1,-\nBRDA:3,0,0,0\nDA:3,2\nDA:12,1\nend_of_record\n"
+				+ "TN:t1\nSF:" + new File(sourceDir, "gone.c").getAbsolutePath() + "\nDA:3,1\nDA:7,0\nend_of_record\n";
+		FileUtils.writeStringToFile(traceFile, trace, ENCODING);
+		String[] options = new String[]{"--title", "T<i>&\"\u00e9\u20ac x", "--no-branch-coverage", "--no-function-coverage"};
+		assertSameOutput(options, traceFile.getAbsolutePath());
+	}
+
+	/**
+	 * Branches taken "-", 0 and more times, in several blocks, by two tests, on a source file which exists.
+	 * One line has enough branches to be indexed.
+	 */
+	public void testBranches() throws IOException
+	{
+		System.out.println("testBranches");
+		File source = new File(testDir, "src/branches.c");
+		StringBuilder code = new StringBuilder();
+		for(int i = 1; i <= 12; i++)
+		{
+			code.append("\tif(a").append(i).append(" && b").append(i).append(") { c(); }\n");
+		}
+		FileUtils.writeStringToFile(source, code.toString(), ENCODING);
+		StringBuilder wide = new StringBuilder();
+		for(int block = 0; block < 5; block++)
+		{
+			wide.append("BRDA:8,").append(block).append(",0,").append(block).append('\n');
+			wide.append("BRDA:8,").append(block).append(",1,").append((block % 2 == 0)? "-" : "0").append('\n');
+		}
+		File traceFile = new File(testDir, "branches.info");
+		String trace = "TN:t1\nSF:" + source.getAbsolutePath() + "\nFN:1,main\nFNDA:2,main\n"
+				+ "DA:1,2\nDA:2,2\nDA:5,1\nDA:8,1\nDA:11,0\n"
+				+ "BRDA:2,0,0,-\nBRDA:2,0,1,0\nBRDA:2,1,0,3\nBRDA:2,1,1,1\n"
+				+ "BRDA:5,0,0,2\nBRDA:5,0,1,0\nBRDA:5,2,0,-\n" + wide
+				+ "BRDA:11,0,0,0\nBRDA:11,0,1,-\nend_of_record\n"
+				+ "TN:t2\nSF:" + source.getAbsolutePath() + "\nFN:1,main\nFNDA:1,main\n"
+				+ "DA:1,1\nDA:2,1\nDA:5,0\nDA:8,0\nDA:11,1\n"
+				+ "BRDA:2,0,0,4\nBRDA:2,0,1,0\nBRDA:2,1,0,-\nBRDA:2,1,1,1\n"
+				+ "BRDA:5,0,0,-\nBRDA:5,0,1,0\nBRDA:5,2,0,-\n" + wide
+				+ "BRDA:11,0,0,7\nBRDA:11,0,1,-\nend_of_record\n";
+		FileUtils.writeStringToFile(traceFile, trace, ENCODING);
+		assertSameOutput(new String[]{"--show-details"}, traceFile.getAbsolutePath());
+		String page = FileUtils.readFileToString(new File(testDir, "stream/html/src/branches.c.gcov.html"), ENCODING);
+		assertTrue(page.contains("class=\"branch taken\""));
+		assertTrue(page.contains("class=\"branch noTaken\""));
+		assertEquals(4 + 3 + 10 + 2, page.split("class=\"branch ").length - 1);  // each branch once, both tests merged
+	}
+
+	/**
+	 * Generates a report with each engine and checks the output is identical.
+	 * @param options Command line options for both reports.
+	 * @param traceFile The tracefile to report on.
+	 */
+	private void assertSameOutput(final String[] options, final String traceFile) throws IOException
+	{
+		File xsltDir = new File(testDir, "xslt");
+		File streamDir = new File(testDir, "stream");
+		generate(xsltDir, Config.HtmlEngine.XSLT, options, traceFile);
+		generate(streamDir, Config.HtmlEngine.STREAM, options, traceFile);
+		Collection<File> expectedFiles = FileUtils.listFiles(xsltDir, null, true);
+		Collection<File> actualFiles = FileUtils.listFiles(streamDir, null, true);
+		assertEquals(expectedFiles.size(), actualFiles.size());
+		int sourcePages = 0;
+		for(File expected : expectedFiles)
+		{
+			String relativePath = xsltDir.toURI().relativize(expected.toURI()).getPath();
+			File actual = new File(streamDir, relativePath);
+			assertTrue(relativePath, actual.exists());
+			assertTrue(relativePath, FileUtils.contentEquals(expected, actual));
+			if(relativePath.contains(".gcov."))
+			{
+				sourcePages++;
+			}
+		}
+		assertTrue(sourcePages > 0);
+	}
+
+	private static void generate(final File outDir, final Config.HtmlEngine engine, final String[] options, final String traceFile)
+	{
+		List<String> argv = new ArrayList<>(Arrays.asList(options));
+		argv.add("-o");
+		argv.add(outDir.getAbsolutePath());
+		argv.add("--html-engine");
+		argv.add(engine.toString());
+		argv.add(traceFile);
+		String[] args = argv.toArray(new String[argv.size()]);
+		JGenHtml.main(args);
+		assertEquals(engine, JGenHtmlTestUtils.getDummyConfig(args).getHtmlEngine());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.util.concurrent.atomic.AtomicReference;
+import javax.xml.transform.Transformer;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class StylesheetCacheTest extends TestCase
+{
+	public StylesheetCacheTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * The stylesheet should only ever be compiled once.
+	 */
+	public void testGetTemplates()
+	{
+		System.out.println("getTemplates");
+		assertNotNull(StylesheetCache.getTemplates());
+		assertSame(StylesheetCache.getTemplates(), StylesheetCache.getTemplates());
+	}
+
+	/**
+	 * A thread should get the same transformer back every time, with parameters cleared.
+	 */
+	public void testGetTransformerSameThread()
+	{
+		System.out.println("testGetTransformerSameThread");
+		Transformer transformer = StylesheetCache.getTransformer(false);
+		assertNotNull(transformer);
+		transformer.setParameter("ext", ".foo");
+		Transformer next = StylesheetCache.getTransformer(false);
+		assertSame(transformer, next);
+		assertNull(next.getParameter("ext"));
+		assertNotSame(transformer, StylesheetCache.getTransformer(true));
+	}
+
+	/**
+	 * Different threads must not share a transformer.
+	 */
+	public void testGetTransformerOtherThread() throws InterruptedException
+	{
+		System.out.println("testGetTransformerOtherThread");
+		final AtomicReference<Transformer> other = new AtomicReference<>();
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				other.set(StylesheetCache.getTransformer(false));
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(other.get());
+		assertNotSame(StylesheetCache.getTransformer(false), other.get());
+	}
+}
@@ -0,0 +1,365 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Writes synthetic lcov tracefiles, and the source files they describe, for scale tests and the benchmarks.
+ * The same settings and seed always give the same tracefile. A tracefile whose name ends with ".gz" is gzipped.
+ *
+ * Each test (TN: section) covers filesPerTest source files, starting where the previous test left off, so a
+ * thousand tests over fifty thousand files do not mean fifty million records.
+ * @author Rick Brown
+ */
+public final class TraceFileGenerator
+{
+	/**
+	 * Presets for the kind of record a tracefile is mostly made of.
+	 */
+	public enum Mix
+	{
+		LINES,  // DA records
+		BRANCHES,  // BRDA records
+		FUNCTIONS,  // FN and FNDA records
+		TEST_NAMES  // many small TN: sections
+	}
+
+	private final long seed;
+	private int sourceFiles = 100;
+	private int linesPerFile = 500;
+	private int testNames = 1;
+	private int filesPerTest = 0;
+	private int linesPerFunction = 50;
+	private int branchesPerLine = 0;
+	private double hitRate = 0.8;
+	private File sourceDir = null;
+	private long records;
+
+	/**
+	 * @param seed The seed for the hit counts.
+	 */
+	public TraceFileGenerator(final long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the record mix to a preset.
+	 * LINES has no branches and a function every 50 lines, BRANCHES adds 4 branches on every line,
+	 * FUNCTIONS has a function every 3 lines and TEST_NAMES has 200 tests which each cover 10 files.
+	 * @param mix The kind of record the tracefile is mostly made of.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setMix(final Mix mix)
+	{
+		branchesPerLine = (mix == Mix.BRANCHES)? 4 : 0;
+		linesPerFunction = (mix == Mix.FUNCTIONS)? 3 : 50;
+		if(mix == Mix.TEST_NAMES)
+		{
+			testNames = 200;
+			filesPerTest = 10;
+		}
+		return this;
+	}
+
+	/**
+	 * @param sourceFiles The number of source files.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setSourceFiles(final int sourceFiles)
+	{
+		this.sourceFiles = sourceFiles;
+		return this;
+	}
+
+	/**
+	 * @param linesPerFile The number of executable lines in each source file.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setLinesPerFile(final int linesPerFile)
+	{
+		this.linesPerFile = linesPerFile;
+		return this;
+	}
+
+	/**
+	 * @param testNames The number of TN: sections.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setTestNames(final int testNames)
+	{
+		this.testNames = testNames;
+		return this;
+	}
+
+	/**
+	 * @param filesPerTest The number of source files each test covers, 0 for all of them.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setFilesPerTest(final int filesPerTest)
+	{
+		this.filesPerTest = filesPerTest;
+		return this;
+	}
+
+	/**
+	 * @param linesPerFunction A function (FN and FNDA record) starts every this many lines.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setLinesPerFunction(final int linesPerFunction)
+	{
+		this.linesPerFunction = Math.max(linesPerFunction, 1);
+		return this;
+	}
+
+	/**
+	 * @param branchesPerLine The number of BRDA records on every line.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setBranchesPerLine(final int branchesPerLine)
+	{
+		this.branchesPerLine = branchesPerLine;
+		return this;
+	}
+
+	/**
+	 * @param hitRate The chance, from 0 to 1, of a line, branch or function being hit.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setHitRate(final double hitRate)
+	{
+		this.hitRate = hitRate;
+		return this;
+	}
+
+	/**
+	 * @param sourceDir If not null the source files are written here, so that their pages can be rendered.
+	 * @return This generator.
+	 */
+	public TraceFileGenerator setSourceDir(final File sourceDir)
+	{
+		this.sourceDir = sourceDir;
+		return this;
+	}
+
+	/**
+	 * The number of DA, BRDA, FN and FNDA records written by the last call to write.
+	 * @return The number of records.
+	 */
+	public long getRecords()
+	{
+		return records;
+	}
+
+	/**
+	 * Writes a tracefile, and the source files if there is a source directory.
+	 * @param traceFile The tracefile to write, gzipped if the name ends with ".gz".
+	 * @throws IOException If the tracefile could not be written.
+	 */
+	public void write(final File traceFile) throws IOException
+	{
+		records = 0;
+		Random random = new Random(seed);
+		BitSet written = new BitSet(sourceFiles);
+		int files = (filesPerTest > 0)? Math.min(filesPerTest, sourceFiles) : sourceFiles;
+		makeParentDir(traceFile);
+		OutputStream stream = new FileOutputStream(traceFile);
+		if(traceFile.getName().endsWith(".gz"))
+		{
+			stream = new GZIPOutputStream(stream, 64 * 1024);
+		}
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)))
+		{
+			for(int test = 0; test < testNames; test++)
+			{
+				out.write("TN:test_" + test + '\n');
+				for(int i = 0; i < files; i++)
+				{
+					int file = (int)(((long)test * files + i) % sourceFiles);
+					File sourceFile = getSourceFile(file);
+					if(sourceDir != null && !written.get(file))
+					{
+						writeSourceFile(sourceFile);
+						written.set(file);
+					}
+					writeRecord(out, sourceFile, random);
+				}
+			}
+		}
+	}
+
+	private File getSourceFile(final int file)
+	{
+		String path = "dir" + (file / 50) + "/file" + file + ".c";
+		return (sourceDir != null)? new File(sourceDir, path).getAbsoluteFile() : new File("/synthetic/src/" + path);
+	}
+
+	/**
+	 * Writes a source file with a line of code for every line the tracefile has data for.
+	 */
+	private void writeSourceFile(final File sourceFile) throws IOException
+	{
+		makeParentDir(sourceFile);
+		try(Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sourceFile), StandardCharsets.UTF_8)))
+		{
+			for(int line = 1; line <= linesPerFile; line++)
+			{
+				if(line % linesPerFunction == 1 || linesPerFunction == 1)
+				{
+					out.write("int func_" + line + "(int value_" + (line - 1) + ") {\n");
+				}
+				else
+				{
+					out.write("\tint value_" + line + " = compute(value_" + (line - 1) + ", \"" + Integer.toHexString(line * 31) + "\") & 0x" + line + ";\n");
+				}
+			}
+		}
+	}
+
+	private static void makeParentDir(final File file) throws IOException
+	{
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Could not create " + dir.getAbsolutePath());
+		}
+	}
+
+	private void writeRecord(final Writer out, final File sourceFile, final Random random) throws IOException
+	{
+		out.write("SF:" + sourceFile.getPath() + '\n');
+		int funcCount = 0;
+		int funcHit = 0;
+		for(int line = 1; line <= linesPerFile; line += linesPerFunction)
+		{
+			out.write("FN:" + line + ",func_" + line + '\n');
+			funcCount++;
+		}
+		for(int line = 1; line <= linesPerFile; line += linesPerFunction)
+		{
+			int hits = hits(random);
+			out.write("FNDA:" + hits + ",func_" + line + '\n');
+			funcHit += (hits > 0)? 1 : 0;
+		}
+		out.write("FNF:" + funcCount + "\nFNH:" + funcHit + '\n');
+		records += funcCount * 2L;
+		if(branchesPerLine > 0)
+		{
+			int branchCount = 0;
+			int branchHit = 0;
+			for(int line = 1; line <= linesPerFile; line++)
+			{
+				for(int branch = 0; branch < branchesPerLine; branch++)
+				{
+					int hits = hits(random);
+					String taken = (hits == 0 && random.nextBoolean())? "-" : Integer.toString(hits);  // "-" if never evaluated
+					out.write("BRDA:" + line + ",0," + branch + ',' + taken + '\n');
+					branchCount++;
+					branchHit += (hits > 0)? 1 : 0;
+				}
+			}
+			out.write("BRF:" + branchCount + "\nBRH:" + branchHit + '\n');
+			records += branchCount;
+		}
+		int lineHit = 0;
+		for(int line = 1; line <= linesPerFile; line++)
+		{
+			int hits = hits(random);
+			out.write("DA:" + line + ',' + hits + '\n');
+			lineHit += (hits > 0)? 1 : 0;
+		}
+		out.write("LF:" + linesPerFile + "\nLH:" + lineHit + "\nend_of_record\n");
+		records += linesPerFile;
+	}
+
+	/**
+	 * @return A hit count, zero if not hit, otherwise mostly small but now and then large (a hot loop).
+	 */
+	private int hits(final Random random)
+	{
+		int result = 0;
+		if(random.nextDouble() < hitRate)
+		{
+			result = (random.nextInt(10) == 0)? 1 + random.nextInt(100000) : 1 + random.nextInt(8);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a tracefile from the command line, run with --help for the options.
+	 * @param argv Options and the tracefile to write.
+	 * @throws ParseException If the options are wrong.
+	 * @throws IOException If the tracefile could not be written.
+	 */
+	public static void main(final String[] argv) throws ParseException, IOException
+	{
+		Options options = new Options();
+		options.addOption(null, "help", false, "Print this help, then exit");
+		options.addOption(null, "seed", true, "Seed for the hit counts (default 1)");
+		options.addOption(null, "mix", true, "Preset record mix: LINES, BRANCHES, FUNCTIONS or TEST_NAMES");
+		options.addOption(null, "files", true, "Number of source files (default 100)");
+		options.addOption(null, "lines", true, "Lines in each source file (default 500)");
+		options.addOption(null, "tests", true, "Number of TN: sections (default 1)");
+		options.addOption(null, "files-per-test", true, "Source files each test covers (default all)");
+		options.addOption(null, "lines-per-function", true, "A function starts every this many lines (default 50)");
+		options.addOption(null, "branches-per-line", true, "BRDA records on every line (default 0)");
+		options.addOption(null, "hit-rate", true, "Chance of a line, branch or function being hit (default 0.8)");
+		options.addOption(null, "source-dir", true, "Write the source files to this directory");
+		CommandLine cmd = new PosixParser().parse(options, argv);
+		if(cmd.hasOption("help") || cmd.getArgs().length != 1)
+		{
+			new HelpFormatter().printHelp("TraceFileGenerator [option] tracefile[.gz]", options);
+		}
+		else
+		{
+			TraceFileGenerator generator = new TraceFileGenerator(Long.parseLong(cmd.getOptionValue("seed", "1")));
+			if(cmd.hasOption("mix"))
+			{
+				generator.setMix(Mix.valueOf(cmd.getOptionValue("mix").toUpperCase()));
+			}
+			generator.setSourceFiles(Integer.parseInt(cmd.getOptionValue("files", Integer.toString(generator.sourceFiles))));
+			generator.setLinesPerFile(Integer.parseInt(cmd.getOptionValue("lines", Integer.toString(generator.linesPerFile))));
+			generator.setTestNames(Integer.parseInt(cmd.getOptionValue("tests", Integer.toString(generator.testNames))));
+			generator.setFilesPerTest(Integer.parseInt(cmd.getOptionValue("files-per-test", Integer.toString(generator.filesPerTest))));
+			generator.setLinesPerFunction(Integer.parseInt(cmd.getOptionValue("lines-per-function", Integer.toString(generator.linesPerFunction))));
+			generator.setBranchesPerLine(Integer.parseInt(cmd.getOptionValue("branches-per-line", Integer.toString(generator.branchesPerLine))));
+			generator.setHitRate(Double.parseDouble(cmd.getOptionValue("hit-rate", Double.toString(generator.hitRate))));
+			if(cmd.hasOption("source-dir"))
+			{
+				generator.setSourceDir(new File(cmd.getOptionValue("source-dir")));
+			}
+			File traceFile = new File(cmd.getArgs()[0]);
+			generator.write(traceFile);
+			System.out.println("Wrote " + generator.getRecords() + " records to " + traceFile.getAbsolutePath());
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class TraceFileGeneratorTest extends TestCase
+{
+	private File testDir;
+
+	public TraceFileGeneratorTest(String testName)
+	{
+		super(testName);
+	}
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		testDir = new File(JGenHtmlTestUtils.getTestDir(), "generator");
+		FileUtils.deleteDirectory(testDir);
+		testDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		CoverageReport.setConfig(JGenHtmlTestUtils.getDummyConfig(new String[]{}));
+		super.tearDown();
+	}
+
+	/**
+	 * Test of write method, of class TraceFileGenerator.
+	 * The same seed must give the same tracefile, gzipped or not.
+	 */
+	public void testWrite() throws IOException
+	{
+		System.out.println("write");
+		File first = new File(testDir, "first.info");
+		File second = new File(testDir, "second.info");
+		File other = new File(testDir, "other.info");
+		File gzipped = new File(testDir, "first.info.gz");
+		new TraceFileGenerator(7).setMix(TraceFileGenerator.Mix.BRANCHES).setSourceFiles(10).write(first);
+		new TraceFileGenerator(7).setMix(TraceFileGenerator.Mix.BRANCHES).setSourceFiles(10).write(second);
+		new TraceFileGenerator(8).setMix(TraceFileGenerator.Mix.BRANCHES).setSourceFiles(10).write(other);
+		new TraceFileGenerator(7).setMix(TraceFileGenerator.Mix.BRANCHES).setSourceFiles(10).write(gzipped);
+		assertTrue(FileUtils.contentEquals(first, second));
+		assertFalse(FileUtils.contentEquals(first, other));
+		try(InputStream in = new GZIPInputStream(new FileInputStream(gzipped)))
+		{
+			assertTrue(Arrays.equals(FileUtils.readFileToByteArray(first), IOUtils.toByteArray(in)));
+		}
+	}
+
+	/**
+	 * The tracefile must parse to the numbers it was generated with, and the source files must exist.
+	 */
+	public void testParse() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testParse");
+		File traceFile = new File(testDir, "test.info.gz");
+		File sourceDir = new File(testDir, "src");
+		TraceFileGenerator generator = new TraceFileGenerator(7).setSourceFiles(7).setLinesPerFile(30).setTestNames(3)
+				.setFilesPerTest(2).setLinesPerFunction(10).setBranchesPerLine(2).setSourceDir(sourceDir);
+		generator.write(traceFile);
+		assertEquals(6 * (3 * 2 + 30 * 2 + 30), generator.getRecords());  // three tests of two files
+		assertTrue(new File(sourceDir, "dir0/file5.c").exists());
+		assertFalse(new File(sourceDir, "dir0/file6.c").exists());
+		assertEquals(30, FileUtils.readLines(new File(sourceDir, "dir0/file0.c"), "UTF-8").size());
+		Level packageLevel = Logger.getLogger("com.googlecode.jgenhtml").getLevel();
+		Config config = JGenHtmlTestUtils.getDummyConfig(new String[]{"--quiet", traceFile.getAbsolutePath()});
+		CoverageReport report = new CoverageReport.Builder(config).build();
+		assertEquals(packageLevel, Logger.getLogger("com.googlecode.jgenhtml").getLevel());  // quiet must not leak into other tests
+		assertEquals(Level.INFO, ReportLogLevel.get());
+		CoverageSummary summary = report.getSummary();
+		assertEquals(6, report.getParsedFiles().size());
+		assertEquals(6 * 30, summary.getLineCount());
+		assertEquals(6 * 3, summary.getFuncCount());
+		assertEquals(6 * 30 * 2, summary.getBranchCount());
+		assertTrue(summary.getLineHit() > 0 && summary.getLineHit() < summary.getLineCount());
+	}
+}
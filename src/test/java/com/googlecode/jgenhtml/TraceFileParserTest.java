@@ -0,0 +1,285 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class TraceFileParserTest extends TestCase
+{
+	private static final String SOURCE_PATH = new File("/nowhere/foo.js").getPath();
+
+	public TraceFileParserTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of parse method, of class TraceFileParser.
+	 */
+	public void testParse() throws IOException, ParserConfigurationException
+	{
+		System.out.println("parse");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		TraceFileParser parser = parse(parsedFiles, false,
+				"TN:first\n",
+				"SF:/nowhere/foo.js\n",
+				"FN:1,foo\n",
+				"FN:5,bar\n",
+				"FNDA:3,foo\n",
+				"FNDA:0,bar\n",
+				"FNF:2\n",
+				"FNH:1\n",
+				"DA:1,3\n",
+				"DA:2,0\n",
+				"DA:3,7,checksum\n",
+				"BRDA:2,0,0,1\n",
+				"BRDA:2,0,1,-\n",
+				"LF:3\n",
+				"LH:2\n",
+				"end_of_record\n");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		assertNotNull(sourceFile);
+		assertEquals(3, sourceFile.getLineCount());
+		assertEquals(2, sourceFile.getLineHit());
+		assertEquals(2, sourceFile.getFuncCount());
+		assertEquals(1, sourceFile.getFuncHit());
+		assertEquals(2, sourceFile.getBranchCount());
+		assertEquals(1, sourceFile.getBranchHit());
+		assertEquals(2, sourceFile.getLineHit("first"));
+		Set<String> testNames = parser.getTestNames();
+		assertEquals(1, testNames.size());
+		assertTrue(testNames.contains("first"));
+	}
+
+	/**
+	 * Hits from different test cases should be kept apart and the test name should reset at end_of_record.
+	 */
+	public void testParseTestNames() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testParseTestNames");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		TraceFileParser parser = parse(parsedFiles, false,
+				"TN:first\r\n",
+				"SF:/nowhere/foo.js\r\n",
+				"DA:1,1\r\n",
+				"end_of_record\r\n",
+				"TN:second,extra\r\n",
+				"SF:/nowhere/foo.js\r\n",
+				"DA:2,1\r\n",
+				"end_of_record\r\n",
+				"SF:/nowhere/foo.js\r\n",
+				"DA:3,1\r\n",
+				"end_of_record");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		assertEquals(1, parsedFiles.getCount());
+		assertEquals(3, sourceFile.getLineHit());
+		assertEquals(1, sourceFile.getLineHit("first"));
+		assertEquals(1, sourceFile.getLineHit("second"));
+		assertEquals(1, sourceFile.getLineHit(CoverageReport.DEFAULT_TEST_NAME));
+		assertEquals(2, parser.getTestNames().size());
+	}
+
+	/**
+	 * Test of getTestCaseHits method, of class TestCaseSourceFile.
+	 * The single pass counts must agree with counting each test case separately.
+	 */
+	public void testGetTestCaseHits() throws IOException, ParserConfigurationException
+	{
+		System.out.println("getTestCaseHits");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		parse(parsedFiles, false,
+				"TN:hitsA\n",
+				"SF:/nowhere/foo.js\n",
+				"FN:1,foo\n",
+				"FN:5,bar\n",
+				"FNDA:1,foo\n",
+				"DA:1,1\n",
+				"DA:2,0\n",
+				"BRDA:2,0,0,1\n",
+				"BRDA:2,0,1,0\n",
+				"end_of_record\n",
+				"TN:hitsB\n",
+				"SF:/nowhere/foo.js\n",
+				"FNDA:0,foo\n",
+				"FNDA:2,bar\n",
+				"DA:1,3\n",
+				"DA:2,1\n",
+				"DA:5,1\n",
+				"BRDA:2,0,1,-\n",
+				"end_of_record\n",
+				"TN:hitsC\n",
+				"SF:/nowhere/foo.js\n",
+				"DA:3,0\n",
+				"end_of_record\n");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		Collection<String> names = sourceFile.getTestCaseNames();
+		Collection<TestCaseSourceFile.TestCaseHits> actual = sourceFile.getTestCaseHits();
+		assertEquals(2, actual.size());
+		for(TestCaseSourceFile.TestCaseHits hits : actual)
+		{
+			String name = hits.getTestCaseName();
+			assertTrue(names.contains(name));
+			assertEquals(sourceFile.getLineHit(name), hits.getLineHit());
+			assertEquals(sourceFile.getBranchHit(name), hits.getBranchHit());
+			assertEquals(sourceFile.getFuncHit(name), hits.getFuncHit());
+			if("hitsB".equals(name))
+			{
+				assertEquals(3, hits.getLineHit());
+				assertEquals(0, hits.getBranchHit());
+				assertEquals(1, hits.getFuncHit());
+			}
+		}
+	}
+
+	/**
+	 * Test of getTestCaseHits method, of class TestCaseSourceFile.
+	 * The counts are sorted by test case name, not by the order the test cases were first seen.
+	 */
+	public void testGetTestCaseHitsOrder() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testGetTestCaseHitsOrder");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		String[] names = new String[]{"zulu", "Aa", "BB", "mike", "alpha", "C"};  // "Aa" and "BB" have the same hash code
+		List<String> lines = new ArrayList<>();
+		for(String name : names)
+		{
+			lines.addAll(Arrays.asList("TN:" + name + "\n", "SF:/nowhere/foo.js\n", "DA:1,1\n", "end_of_record\n"));
+		}
+		parse(parsedFiles, false, lines.toArray(new String[lines.size()]));
+		List<String> actual = new ArrayList<>();
+		for(TestCaseSourceFile.TestCaseHits hits : parsedFiles.get(SOURCE_PATH).getTestCaseHits())
+		{
+			actual.add(hits.getTestCaseName());
+		}
+		List<String> expected = new ArrayList<>(Arrays.asList(names));
+		Collections.sort(expected);
+		assertEquals(expected, actual);
+	}
+
+	/**
+	 * Lines which can not be parsed should be skipped without affecting the rest of the record.
+	 */
+	public void testParseMalformed() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testParseMalformed");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		TraceFileParser parser = parse(parsedFiles, false,
+				"TN:\n",
+				"DA:1,1\n",
+				"SF:/nowhere/foo.js\n",
+				"DA:\n",
+				"DA:0,1\n",
+				"DA:x,1\n",
+				"DA:4,99999999999\n",
+				"DA:5,-1\n",
+				"BRDA:1,0,0\n",
+				"BRDA:1,0,0,1,2\n",
+				"FN:1\n",
+				"FN:1,foo,bar\n",
+				"FNDA:1,\n",
+				"DA:6,1\n",
+				"end_of_record\n");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		assertEquals(1, sourceFile.getLineCount());
+		assertEquals(1, sourceFile.getLineHit());
+		assertEquals(0, sourceFile.getBranchCount());
+		assertEquals(0, sourceFile.getFuncCount());
+		Set<String> testNames = parser.getTestNames();  // an empty TN keeps the current test name
+		assertEquals(1, testNames.size());
+		assertTrue(testNames.contains(CoverageReport.DEFAULT_TEST_NAME));
+	}
+
+	/**
+	 * Baseline data should be subtracted and must not add new source files.
+	 */
+	public void testParseBaseline() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testParseBaseline");
+		ParsedFiles parsedFiles = new ParsedFiles();
+		parse(parsedFiles, false,
+				"SF:/nowhere/foo.js\n",
+				"FN:1,foo\n",
+				"FNDA:2,foo\n",
+				"DA:1,2\n",
+				"DA:2,1\n",
+				"end_of_record\n");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		assertEquals(2, sourceFile.getLineHit());  // the counts must be recalculated after the baseline is applied
+		assertEquals(1, sourceFile.getFuncHit());
+		parse(parsedFiles, true,
+				"SF:/nowhere/foo.js\n",
+				"FN:1,bar\n",
+				"FNDA:2,foo\n",
+				"DA:1,2\n",
+				"end_of_record\n",
+				"SF:/nowhere/bar.js\n",
+				"DA:1,2\n",
+				"end_of_record\n");
+		assertEquals(1, parsedFiles.getCount());
+		assertEquals(2, sourceFile.getLineCount());
+		assertEquals(1, sourceFile.getLineHit());
+		assertEquals(1, sourceFile.getFuncCount());
+		assertEquals(0, sourceFile.getFuncHit());
+	}
+
+	/**
+	 * A line longer than the read buffer must still be parsed.
+	 */
+	public void testParseLongLine() throws IOException, ParserConfigurationException
+	{
+		System.out.println("testParseLongLine");
+		StringBuilder name = new StringBuilder();
+		for(int i = 0; i < 100000; i++)
+		{
+			name.append('f');
+		}
+		ParsedFiles parsedFiles = new ParsedFiles();
+		parse(parsedFiles, false,
+				"SF:/nowhere/foo.js\n",
+				"FN:1," + name + "\n",
+				"FNDA:1," + name + "\n",
+				"end_of_record\n");
+		TestCaseSourceFile sourceFile = parsedFiles.get(SOURCE_PATH);
+		assertEquals(1, sourceFile.getFuncCount());
+		assertEquals(1, sourceFile.getFuncHit());
+	}
+
+	private static TraceFileParser parse(final ParsedFiles parsedFiles, final boolean isBaseline, final String... lines) throws IOException, ParserConfigurationException
+	{
+		StringBuilder content = new StringBuilder();
+		for(String line : lines)
+		{
+			content.append(line);
+		}
+		TraceFileParser result = new TraceFileParser(parsedFiles, "test", isBaseline);
+		result.parse(new ByteArrayInputStream(content.toString().getBytes("UTF-8")));
+		return result;
+	}
+}
@@ -0,0 +1,144 @@
+/*
+	Copyright (C) 2012  Rick Brown
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package com.googlecode.jgenhtml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+/**
+ *
+ * @author Rick Brown
+ */
+public class TraceFileSplitterTest extends TestCase
+{
+	private static final int FILE_COUNT = 5;
+
+	public TraceFileSplitterTest(String testName)
+	{
+		super(testName);
+	}
+
+	/**
+	 * Test of split method, of class TraceFileSplitter.
+	 * Every chunk but the first must start straight after an end_of_record line.
+	 */
+	public void testSplit() throws IOException
+	{
+		System.out.println("split");
+		File traceFile = createTraceFile();
+		String content = FileUtils.readFileToString(traceFile, "US-ASCII");
+		long[] chunks = TraceFileSplitter.split(traceFile, 500L);
+		assertTrue(chunks.length > 3);
+		assertEquals(0L, chunks[0]);
+		assertEquals(traceFile.length(), chunks[chunks.length - 1]);
+		for(int i = 1; i < chunks.length - 1; i++)
+		{
+			assertTrue(chunks[i] > chunks[i - 1]);
+			assertTrue(content.substring(0, (int)chunks[i]).endsWith("end_of_record\n"));
+		}
+	}
+
+	/**
+	 * Test of split method, of class TraceFileSplitter.
+	 * Small files are not worth splitting.
+	 */
+	public void testSplitSmall() throws IOException
+	{
+		System.out.println("testSplitSmall");
+		assertNull(TraceFileSplitter.split(createTraceFile(), 8));
+	}
+
+	/**
+	 * Test of parse method, of class TraceFileSplitter.
+	 * Parsing the chunks and merging them must give the same result as parsing the whole file.
+	 */
+	public void testParse() throws IOException, ParserConfigurationException
+	{
+		System.out.println("parse");
+		File traceFile = createTraceFile();
+		ParsedFiles expected = new ParsedFiles();
+		TraceFileParser parser = new TraceFileParser(expected, "test", false);
+		try (InputStream in = new FileInputStream(traceFile))
+		{
+			parser.parse(in);
+		}
+		ParsedFiles actual = new ParsedFiles();
+		Set<String> testNames = new HashSet<>();
+		long[] chunks = TraceFileSplitter.split(traceFile, 300L);
+		for(int i = 1; i < chunks.length; i++)
+		{
+			ParsedFiles partial = actual.createPartial();
+			TraceFileParser chunkParser = new TraceFileParser(partial, "test", false);
+			TraceFileSplitter.parse(traceFile, chunks[i - 1], chunks[i], chunkParser);
+			actual.merge(partial, "test");
+			if(chunkParser.getTestNames() != null)
+			{
+				testNames.addAll(chunkParser.getTestNames());
+			}
+		}
+		assertEquals(parser.getTestNames(), testNames);
+		assertEquals(expected.getCount(), actual.getCount());
+		for(int i = 0; i < FILE_COUNT; i++)
+		{
+			String path = new File("/nowhere/file" + i + ".js").getPath();
+			TestCaseSourceFile expectedFile = expected.get(path);
+			TestCaseSourceFile actualFile = actual.get(path);
+			assertEquals(expectedFile.getLineCount(), actualFile.getLineCount());
+			assertEquals(expectedFile.getLineHit(), actualFile.getLineHit());
+			assertEquals(expectedFile.getBranchHit(), actualFile.getBranchHit());
+			assertEquals(expectedFile.getFuncHit(), actualFile.getFuncHit());
+			assertEquals(expectedFile.getTestCaseNames(), actualFile.getTestCaseNames());
+			for(String testCaseName : expectedFile.getTestCaseNames())
+			{
+				assertEquals(expectedFile.getLineHit(testCaseName), actualFile.getLineHit(testCaseName));
+			}
+		}
+	}
+
+	/**
+	 * Creates a tracefile where some records have a test name and some do not.
+	 */
+	private static File createTraceFile() throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 40; i++)
+		{
+			if(i % 3 != 0)
+			{
+				sb.append("TN:test").append(i % 4).append('\n');
+			}
+			sb.append("SF:/nowhere/file").append(i % FILE_COUNT).append(".js\n");
+			sb.append("FN:1,func").append(i % 2).append('\n');
+			sb.append("FNDA:").append(i % 2).append(",func").append(i % 2).append('\n');
+			for(int line = 1; line < 10; line++)
+			{
+				sb.append("DA:").append(line).append(',').append((i + line) % 3).append('\n');
+			}
+			sb.append("BRDA:2,0,0,").append(i % 2).append('\n');
+			sb.append("end_of_record\n");
+		}
+		File result = new File(JGenHtmlTestUtils.getTestDir(), "split.info");
+		FileUtils.writeStringToFile(result, sb.toString(), "US-ASCII");
+		return result;
+	}
+}
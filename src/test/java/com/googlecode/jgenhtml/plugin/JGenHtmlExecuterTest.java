@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.List;
 import junit.framework.TestCase;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 
 /**
@@ -227,6 +228,59 @@ public class JGenHtmlExecuterTest extends TestCase
 		}
 	}
 
+	/**
+	 * Test of setFailUnder, setFailUnderDir and setFailFast methods, of class JGenHtmlExecuter.
+	 */
+	public void testSetFailUnder()
+	{
+		System.out.println("setFailUnder");
+		JGenHtmlExecutor instance = new JGenHtmlExecutor();
+		instance.addTracefile("/foo/bar/test.info");
+		instance.setFailUnder("line=80,branch=50");
+		instance.setFailUnderDir("function=60");
+		instance.setFailFast(true);
+		Config config = new Config();
+		try
+		{
+			config.initializeUserPrefs(instance.buildArgs());
+		}
+		catch (ParseException ex)
+		{
+			fail(ex.getMessage());
+		}
+		assertEquals("line=80.0,branch=50.0", config.getThreshold().toString());
+		assertEquals("function=60.0", config.getDirThreshold().toString());
+		assertTrue(config.isFailFast());
+	}
+
+	/**
+	 * Test of execute method, of class JGenHtmlExecuter.
+	 * Coverage below the thresholds must fail execution, with fail fast nothing is written.
+	 */
+	public void testExecuteBelowThreshold() throws IOException
+	{
+		System.out.println("testExecuteBelowThreshold");
+		File outdir = new File(JGenHtmlTestUtils.getTestDir(), "failunder");
+		FileUtils.deleteDirectory(outdir);
+		JGenHtmlExecutor instance = new JGenHtmlExecutor();
+		instance.addTracefile(JGenHtmlTestUtils.getTraceFilesWithBranchAndFuncData()[0]);
+		instance.setOutdir(outdir.getAbsolutePath());
+		instance.setFailUnder("line=100");
+		instance.setFailFast(true);
+		try
+		{
+			instance.execute();
+			fail("Expected coverage to be below the thresholds");
+		}
+		catch(IllegalStateException ex)
+		{
+			assertFalse(new File(outdir, "index.html").exists());
+		}
+		instance.setFailUnder("line=0");
+		instance.execute();
+		assertTrue(new File(outdir, "index.html").exists());
+	}
+
 	private String getOutdir(String[] args)
 	{
 		String result = null;